@@ -0,0 +1,146 @@
+package com.example.android.popularmovies;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.Debug;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.example.android.popularmovies.data.MovieContract.ReviewEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+/**
+ * Measures the objects allocated per review bind, reading from a cursor as the adapter used to
+ * and reading from the pre-materialised row model.
+ */
+@RunWith(AndroidJUnit4.class)
+public class BindAllocationBenchmark {
+
+    private static final String TAG = BindAllocationBenchmark.class.getSimpleName();
+
+    private static final int REVIEW_COUNT = 200;
+    private static final int BIND_PASSES = 10;
+
+    private static final String[] REVIEW_PROJECTION = {
+            ReviewEntry.COLUMN_REVIEW_ID,
+            ReviewEntry.COLUMN_REVIEW_AUTHOR,
+            ReviewEntry.COLUMN_REVIEW_CONTENT
+    };
+
+    private static final int INDEX_REVIEW_ID = 0;
+    private static final int INDEX_REVIEW_AUTHOR = 1;
+    private static final int INDEX_REVIEW_CONTENT = 2;
+
+    private final Context mContext = InstrumentationRegistry.getTargetContext();
+
+    private SQLiteDatabase mDatabase;
+    private Cursor mCursor;
+
+    /* Written by the binds so they can't be optimised away */
+    private String mAuthorText;
+    private String mContent;
+
+    @Before
+    public void createReviews() {
+        mDatabase = SQLiteDatabase.create(null);
+        mDatabase.execSQL("CREATE TABLE " + ReviewEntry.TABLE_NAME + " (" +
+                ReviewEntry.COLUMN_REVIEW_ID + " TEXT, " +
+                ReviewEntry.COLUMN_REVIEW_AUTHOR + " TEXT, " +
+                ReviewEntry.COLUMN_REVIEW_CONTENT + " TEXT)");
+
+        ContentValues values = new ContentValues();
+        for (int i = 0; i < REVIEW_COUNT; i++) {
+            values.put(ReviewEntry.COLUMN_REVIEW_ID, "review" + i);
+            values.put(ReviewEntry.COLUMN_REVIEW_AUTHOR, "author" + (i % 10));
+            values.put(ReviewEntry.COLUMN_REVIEW_CONTENT, "content of review " + i);
+            mDatabase.insert(ReviewEntry.TABLE_NAME, null, values);
+        }
+
+        mCursor = mDatabase.query(ReviewEntry.TABLE_NAME, REVIEW_PROJECTION,
+                null, null, null, null, null);
+    }
+
+    @After
+    public void closeDatabase() {
+        mCursor.close();
+        mDatabase.close();
+    }
+
+    /* The review bind as it was, straight from the cursor */
+    private void bindFromCursor(int position) {
+        mCursor.moveToPosition(position);
+        mAuthorText = mContext.getString(R.string.review_prefix) + " " +
+                mCursor.getString(INDEX_REVIEW_AUTHOR);
+        mContent = mCursor.getString(INDEX_REVIEW_CONTENT);
+    }
+
+    /* The review rows as the detail reader materialises them */
+    private DetailRows.Reviews readReviews() {
+        String[] ids = new String[REVIEW_COUNT];
+        String[] authorTexts = new String[REVIEW_COUNT];
+        String[] contents = new String[REVIEW_COUNT];
+
+        String reviewPrefix = mContext.getString(R.string.review_prefix) + " ";
+
+        for (int i = 0; mCursor.moveToPosition(i); i++) {
+            ids[i] = mCursor.getString(INDEX_REVIEW_ID);
+            authorTexts[i] = DetailRows.intern(reviewPrefix + mCursor.getString(INDEX_REVIEW_AUTHOR));
+            contents[i] = mCursor.getString(INDEX_REVIEW_CONTENT);
+        }
+        return new DetailRows.Reviews(ids, authorTexts, contents, new boolean[REVIEW_COUNT],
+                REVIEW_COUNT);
+    }
+
+    /* The review bind from the row model */
+    private void bindFromRows(DetailRows.Reviews reviews, int position) {
+        mAuthorText = reviews.authorTexts[position];
+        mContent = reviews.previews[position];
+    }
+
+    /**
+     * Count the objects allocated on this thread by every bind of the list.
+     *
+     * @return the mean allocations per bind
+     */
+    @SuppressWarnings("deprecation")
+    private double allocationsPerBind(DetailRows.Reviews reviews) {
+        /* Warm up so class loading and the cursor window fill are not counted */
+        for (int i = 0; i < REVIEW_COUNT; i++) {
+            if (reviews == null) bindFromCursor(i); else bindFromRows(reviews, i);
+        }
+
+        Debug.resetThreadAllocCount();
+        Debug.startAllocCounting();
+        for (int pass = 0; pass < BIND_PASSES; pass++) {
+            for (int i = 0; i < REVIEW_COUNT; i++) {
+                if (reviews == null) bindFromCursor(i); else bindFromRows(reviews, i);
+            }
+        }
+        Debug.stopAllocCounting();
+
+        return Debug.getThreadAllocCount() / (double) (BIND_PASSES * REVIEW_COUNT);
+    }
+
+    @Test
+    public void compareAllocationsPerBind() {
+        DetailRows.Reviews reviews = readReviews();
+
+        double cursorAllocations = allocationsPerBind(null);
+        double rowAllocations = allocationsPerBind(reviews);
+
+        Log.i(TAG, "Allocations per bind from a cursor: " + cursorAllocations);
+        Log.i(TAG, "Allocations per bind from the row model: " + rowAllocations);
+
+        assertEquals(mContext.getString(R.string.review_prefix) + " author9", mAuthorText);
+        assertTrue(rowAllocations < cursorAllocations);
+    }
+}
@@ -0,0 +1,109 @@
+package com.example.android.popularmovies.data;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.example.android.popularmovies.data.MovieContract.ReviewEntry;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+
+/**
+ * Measures the latency of reads made while a large sync batch is being written, with and
+ * without write ahead logging.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ConcurrentReadBenchmark {
+
+    private static final String TAG = ConcurrentReadBenchmark.class.getSimpleName();
+
+    private static final String DATABASE_NAME = "concurrent_read_benchmark.db";
+
+    private static final int SYNC_REVIEW_COUNT = 20000;
+
+    private final Context mContext = InstrumentationRegistry.getTargetContext();
+
+    @After
+    public void deleteDatabase() {
+        mContext.deleteDatabase(DATABASE_NAME);
+    }
+
+    /**
+     * Write a sync sized batch on a background thread and time reads on this thread until the
+     * write is done.
+     *
+     * @return the worst read latency in milliseconds
+     */
+    private long worstReadLatencyDuringSync(DatabaseTuning tuning) throws Exception {
+        mContext.deleteDatabase(DATABASE_NAME);
+
+        final MovieDbHelper helper = new MovieDbHelper(mContext, DATABASE_NAME, tuning);
+        final MovieSyncBatch batch = new MovieSyncBatch();
+        for (int i = 0; i < SYNC_REVIEW_COUNT; i++) {
+            batch.addReview(i % 20, "review" + i, "author", "content", "url");
+        }
+
+        final CountDownLatch writeStarted = new CountDownLatch(1);
+
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                SQLiteDatabase database = helper.getWritableDatabase();
+                database.beginTransaction();
+                try {
+                    writeStarted.countDown();
+                    batch.getReviews().insertInto(database, ReviewEntry.TABLE_NAME);
+                    database.setTransactionSuccessful();
+                } finally {
+                    database.endTransaction();
+                }
+            }
+        });
+
+        /* Open the database before the write so the reads don't include creating it */
+        SQLiteDatabase readable = helper.getReadableDatabase();
+
+        writer.start();
+        writeStarted.await();
+
+        long worstNanos = 0;
+        int readCount = 0;
+
+        while (writer.isAlive()) {
+            long start = System.nanoTime();
+            Cursor cursor = readable.query(ReviewEntry.TABLE_NAME, null,
+                    ReviewEntry.COLUMN_MOVIE_ID + " = ? ", new String[]{"7"}, null, null, null);
+            cursor.getCount();
+            cursor.close();
+            worstNanos = Math.max(worstNanos, System.nanoTime() - start);
+            readCount++;
+        }
+
+        writer.join();
+        helper.close();
+
+        assertTrue(readCount > 0);
+
+        return worstNanos / 1000000;
+    }
+
+    @Test
+    public void compareReadLatency() throws Exception {
+        long rollbackMillis = worstReadLatencyDuringSync(
+                new DatabaseTuning(false, DatabaseTuning.DEFAULT.writerCacheSizeKib,
+                        DatabaseTuning.SYNCHRONOUS_FULL));
+        long walMillis = worstReadLatencyDuringSync(DatabaseTuning.DEFAULT);
+
+        Log.i(TAG, "Worst read latency during sync, rollback journal: " + rollbackMillis + "ms");
+        Log.i(TAG, "Worst read latency during sync, write ahead log: " + walMillis + "ms");
+    }
+}
@@ -0,0 +1,215 @@
+package com.example.android.popularmovies.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.popularmovies.data.MovieContract.*;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the schema migrations and that every provider query is served by an index rather than
+ * a full table scan. Runs against in memory databases so the app database is never touched.
+ */
+@RunWith(AndroidJUnit4.class)
+public class MovieDbHelperTest {
+
+    private MovieDbHelper mHelper;
+    private SQLiteDatabase mDatabase;
+
+    @Before
+    public void createDatabase() {
+        mHelper = new MovieDbHelper(InstrumentationRegistry.getTargetContext());
+        mDatabase = SQLiteDatabase.create(null);
+        mHelper.onCreate(mDatabase);
+    }
+
+    @After
+    public void closeDatabase() {
+        mDatabase.close();
+    }
+
+    /**
+     * Get the query plan of a query as a single string.
+     */
+    private String queryPlan(String sql, String... selectionArgs) {
+        Cursor cursor = mDatabase.rawQuery("EXPLAIN QUERY PLAN " + sql, selectionArgs);
+        StringBuilder plan = new StringBuilder();
+        try {
+            int detailIndex = cursor.getColumnIndexOrThrow("detail");
+            while (cursor.moveToNext()) {
+                plan.append(cursor.getString(detailIndex)).append('\n');
+            }
+        } finally {
+            cursor.close();
+        }
+        return plan.toString();
+    }
+
+    private void assertMovieIdLookupUsesIndex(String table) {
+        String plan = queryPlan("SELECT * FROM " + table + " WHERE " +
+                MovieContract.GLOBAL_COLUMN_MOVIE_ID + " = ? ", "1");
+
+        assertTrue(plan, plan.contains("USING INDEX") || plan.contains("USING COVERING INDEX"));
+    }
+
+    /**
+     * Check that a plan finds its rows in a table by key or index, never by reading the whole
+     * table. Older SQLite versions name tables as "TABLE name" in plans.
+     */
+    private void assertSearchesTable(String plan, String table) {
+        assertTrue(plan, plan.contains("SEARCH TABLE " + table + " ") ||
+                plan.contains("SEARCH " + table + " "));
+        assertFalse(plan, plan.contains("SCAN TABLE " + table + " ") ||
+                plan.contains("SCAN TABLE " + table + "\n") ||
+                plan.contains("SCAN " + table + " ") ||
+                plan.contains("SCAN " + table + "\n"));
+    }
+
+    private void assertListJoinUsesMoviePrimaryKey(String listTable, String orderByColumn) {
+        String plan = queryPlan(MovieProvider.makeMovieTableJoin(null, listTable, listTable,
+                MovieContract.GLOBAL_COLUMN_MOVIE_ID, orderByColumn));
+
+        /* The list itself is read in full, but each movie must be found by key */
+        assertTrue(plan, plan.contains("SEARCH TABLE " + MovieEntry.TABLE_NAME) ||
+                plan.contains("SEARCH " + MovieEntry.TABLE_NAME));
+
+        /* Ranked lists must be read in index order rather than sorted */
+        assertFalse(plan, plan.contains("TEMP B-TREE"));
+    }
+
+    @Test
+    public void movieWithMovieId_usesPrimaryKey() {
+        String plan = queryPlan("SELECT * FROM " + MovieEntry.TABLE_NAME + " WHERE " +
+                MovieEntry.COLUMN_MOVIE_ID + " = ? ", "1");
+
+        assertTrue(plan, plan.contains("INTEGER PRIMARY KEY"));
+    }
+
+    @Test
+    public void reviewWithMovieId_usesIndex() {
+        assertMovieIdLookupUsesIndex(ReviewEntry.TABLE_NAME);
+    }
+
+    @Test
+    public void trailerWithMovieId_usesIndex() {
+        assertMovieIdLookupUsesIndex(TrailerEntry.TABLE_NAME);
+    }
+
+    @Test
+    public void favoriteWithMovieId_usesIndex() {
+        assertMovieIdLookupUsesIndex(FavoriteEntry.TABLE_NAME);
+    }
+
+    @Test
+    public void popularJoin_searchesMovies() {
+        assertListJoinUsesMoviePrimaryKey(PopularEntry.TABLE_NAME, PopularEntry.COLUMN_LIST_RANK);
+    }
+
+    @Test
+    public void topRatedJoin_searchesMovies() {
+        assertListJoinUsesMoviePrimaryKey(TopRatedEntry.TABLE_NAME,
+                TopRatedEntry.COLUMN_LIST_RANK);
+    }
+
+    @Test
+    public void favoriteJoin_searchesMovies() {
+        assertListJoinUsesMoviePrimaryKey(FavoriteEntry.TABLE_NAME, null);
+    }
+
+    @Test
+    public void movieDetail_searchesEveryTable() {
+        String plan = queryPlan(MovieProvider.makeMovieDetailQuery(null,
+                DetailEntry.REVIEW_PAGE_SIZE), "1");
+
+        /* The movie row, its favorite and review count subqueries, and the trailer and review
+         * rows are each found by key */
+        assertTrue(plan, plan.contains("INTEGER PRIMARY KEY"));
+        assertSearchesTable(plan, MovieEntry.TABLE_NAME);
+        assertSearchesTable(plan, FavoriteEntry.TABLE_NAME);
+        assertSearchesTable(plan, TrailerEntry.TABLE_NAME);
+        assertSearchesTable(plan, ReviewEntry.TABLE_NAME);
+    }
+
+    @Test
+    public void reviewContentWithReviewId_usesIndex() {
+        String plan = queryPlan("SELECT * FROM " + ReviewEntry.TABLE_NAME + " WHERE " +
+                ReviewEntry.COLUMN_REVIEW_ID + " = ? ", "review");
+
+        assertTrue(plan, plan.contains("USING INDEX") || plan.contains("USING COVERING INDEX"));
+        assertSearchesTable(plan, ReviewEntry.TABLE_NAME);
+    }
+
+    @Test
+    public void staleMovieChunk_usesPrimaryKey() {
+        /* The largest chunk the sync queries: the sync time and then the movie ids */
+        int movieIdCount = 998;
+        StringBuilder sql = new StringBuilder("SELECT " + MovieEntry.COLUMN_MOVIE_ID +
+                " FROM " + MovieEntry.TABLE_NAME + " WHERE " +
+                MovieEntry.COLUMN_LAST_SYNCED + " >= ? AND " +
+                MovieEntry.COLUMN_MOVIE_ID + " IN (");
+        String[] selectionArgs = new String[movieIdCount + 1];
+        selectionArgs[0] = "0";
+
+        for (int i = 1; i <= movieIdCount; i++) {
+            sql.append(i == 1 ? "?" : ",?");
+            selectionArgs[i] = String.valueOf(i);
+        }
+        sql.append(")");
+
+        String plan = queryPlan(sql.toString(), selectionArgs);
+
+        assertTrue(plan, plan.contains("INTEGER PRIMARY KEY"));
+        assertSearchesTable(plan, MovieEntry.TABLE_NAME);
+    }
+
+    @Test
+    public void syncState_keepsOneRowPerTarget() {
+        ContentValues state = new ContentValues();
+        state.put(SyncStateEntry.COLUMN_TARGET, PopularEntry.CONTENT_URI.toString());
+        state.put(SyncStateEntry.COLUMN_FAILURE_COUNT, 1);
+        mDatabase.insert(SyncStateEntry.TABLE_NAME, null, state);
+
+        state.put(SyncStateEntry.COLUMN_FAILURE_COUNT, 2);
+        mDatabase.insert(SyncStateEntry.TABLE_NAME, null, state);
+
+        assertEquals(1, DatabaseUtils.queryNumEntries(mDatabase, SyncStateEntry.TABLE_NAME));
+        assertEquals(2, DatabaseUtils.longForQuery(mDatabase, "SELECT " +
+                SyncStateEntry.COLUMN_FAILURE_COUNT + " FROM " + SyncStateEntry.TABLE_NAME, null));
+
+        String plan = queryPlan("SELECT * FROM " + SyncStateEntry.TABLE_NAME + " WHERE " +
+                SyncStateEntry.COLUMN_TARGET + " = ? ", "target");
+        assertTrue(plan, plan.contains("USING INDEX") || plan.contains("USING COVERING INDEX"));
+    }
+
+    @Test
+    public void upgradeFromVersion1_keepsFavoritesAndDropsDuplicates() {
+        SQLiteDatabase version1 = SQLiteDatabase.create(null);
+        try {
+            mHelper.createVersion1Schema(version1);
+
+            ContentValues favorite = new ContentValues();
+            favorite.put(FavoriteEntry.COLUMN_MOVIE_ID, 42);
+            version1.insert(FavoriteEntry.TABLE_NAME, null, favorite);
+            version1.insert(FavoriteEntry.TABLE_NAME, null, favorite);
+
+            mHelper.onUpgrade(version1, 1, MovieDbHelper.DATABASE_VERSION);
+
+            assertEquals(1, DatabaseUtils.queryNumEntries(version1, FavoriteEntry.TABLE_NAME));
+
+            /* The unique index now rejects a second copy */
+            assertEquals(-1, version1.insert(FavoriteEntry.TABLE_NAME, null, favorite));
+        } finally {
+            version1.close();
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package com.example.android.popularmovies.data;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.example.android.popularmovies.data.MovieContract.DetailEntry;
+import com.example.android.popularmovies.data.MovieContract.MovieEntry;
+import com.example.android.popularmovies.data.MovieContract.ReviewEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+/**
+ * Measures reading the reviews of a movie with 200 long reviews, with the full review text as
+ * the detail screen used to, and with the paged previews of the detail query.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ReviewPreviewBenchmark {
+
+    private static final String TAG = ReviewPreviewBenchmark.class.getSimpleName();
+
+    private static final String DATABASE_NAME = "review_preview_benchmark.db";
+
+    private static final long MOVIE_ID = 7;
+
+    private static final int REVIEW_COUNT = 200;
+
+    /* Long TMDB reviews run to tens of kilobytes */
+    private static final int REVIEW_LENGTH = 20000;
+
+    private final Context mContext = InstrumentationRegistry.getTargetContext();
+
+    private MovieDbHelper mHelper;
+
+    @Before
+    public void createReviews() {
+        mContext.deleteDatabase(DATABASE_NAME);
+        mHelper = new MovieDbHelper(mContext, DATABASE_NAME, DatabaseTuning.DEFAULT);
+
+        StringBuilder content = new StringBuilder(REVIEW_LENGTH);
+        while (content.length() < REVIEW_LENGTH) {
+            content.append("A long review of the movie. ");
+        }
+        content.setLength(REVIEW_LENGTH);
+
+        MovieSyncBatch batch = new MovieSyncBatch();
+        batch.addMovie(MOVIE_ID, "title", "/poster.jpg", "overview", 7.5, 0, 120);
+        for (int i = 0; i < REVIEW_COUNT; i++) {
+            batch.addReview(MOVIE_ID, "review" + i, "author" + i, content.toString(), "url");
+        }
+
+        SQLiteDatabase database = mHelper.getWritableDatabase();
+        database.beginTransaction();
+        try {
+            batch.getMovies().insertInto(database, MovieEntry.TABLE_NAME);
+            batch.getReviews().insertInto(database, ReviewEntry.TABLE_NAME);
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+    }
+
+    @After
+    public void deleteDatabase() {
+        mHelper.close();
+        mContext.deleteDatabase(DATABASE_NAME);
+    }
+
+    /**
+     * Read every string of every row of a cursor, then close it.
+     *
+     * @return the number of characters read
+     */
+    private static long readAll(Cursor cursor) {
+        long characters = 0;
+        try {
+            while (cursor.moveToNext()) {
+                for (int column = 0; column < cursor.getColumnCount(); column++) {
+                    String value = cursor.getString(column);
+                    if (value != null) characters += value.length();
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+        return characters;
+    }
+
+    private Cursor queryFullReviews() {
+        return mHelper.getReadableDatabase().query(ReviewEntry.TABLE_NAME,
+                new String[]{ReviewEntry.COLUMN_REVIEW_ID, ReviewEntry.COLUMN_REVIEW_AUTHOR,
+                        ReviewEntry.COLUMN_REVIEW_CONTENT},
+                ReviewEntry.COLUMN_MOVIE_ID + " = ? ",
+                new String[]{String.valueOf(MOVIE_ID)},
+                null, null, null);
+    }
+
+    private Cursor queryDetail(int reviewLimit) {
+        return mHelper.getReadableDatabase().rawQuery(
+                MovieProvider.makeMovieDetailQuery(null, reviewLimit),
+                new String[]{String.valueOf(MOVIE_ID)});
+    }
+
+    @Test
+    public void detailQuery_returnsAPageOfPreviews() {
+        Cursor cursor = queryDetail(DetailEntry.REVIEW_PAGE_SIZE);
+        try {
+            /* The movie row, then a page of review rows */
+            assertEquals(1 + DetailEntry.REVIEW_PAGE_SIZE, cursor.getCount());
+
+            assertTrue(cursor.moveToFirst());
+            assertEquals(REVIEW_COUNT,
+                    cursor.getInt(cursor.getColumnIndex(DetailEntry.COLUMN_REVIEW_COUNT)));
+
+            int previewColumn = cursor.getColumnIndex(DetailEntry.COLUMN_REVIEW_PREVIEW);
+            int lengthColumn = cursor.getColumnIndex(DetailEntry.COLUMN_REVIEW_LENGTH);
+            while (cursor.moveToNext()) {
+                assertEquals(DetailEntry.REVIEW_PREVIEW_LENGTH,
+                        cursor.getString(previewColumn).length());
+                assertEquals(REVIEW_LENGTH, cursor.getInt(lengthColumn));
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void compareReviewReads() {
+        /* Warm up so opening the database and compiling statements are not counted */
+        readAll(queryFullReviews());
+        readAll(queryDetail(REVIEW_COUNT));
+
+        long start = System.nanoTime();
+        long fullCharacters = readAll(queryFullReviews());
+        long fullMicros = (System.nanoTime() - start) / 1000;
+
+        start = System.nanoTime();
+        long previewCharacters = readAll(queryDetail(REVIEW_COUNT));
+        long previewMicros = (System.nanoTime() - start) / 1000;
+
+        start = System.nanoTime();
+        long pageCharacters = readAll(queryDetail(DetailEntry.REVIEW_PAGE_SIZE));
+        long pageMicros = (System.nanoTime() - start) / 1000;
+
+        Log.i(TAG, "Full text of all reviews: " + fullMicros + "us, " +
+                fullCharacters + " characters");
+        Log.i(TAG, "Previews of all reviews: " + previewMicros + "us, " +
+                previewCharacters + " characters");
+        Log.i(TAG, "Previews of the first page: " + pageMicros + "us, " +
+                pageCharacters + " characters");
+
+        assertTrue(previewCharacters < fullCharacters);
+        assertTrue(pageCharacters < previewCharacters);
+    }
+}
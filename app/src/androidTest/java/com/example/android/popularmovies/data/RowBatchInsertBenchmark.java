@@ -0,0 +1,144 @@
+package com.example.android.popularmovies.data;
+
+import android.content.ContentValues;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.example.android.popularmovies.data.MovieContract.ReviewEntry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Compares the rows per second of the ContentValues insert path with the compiled statement
+ * RowBatch path when loading reviews. Every run inserts into its own fresh in memory copy of the
+ * schema, both paths are warmed up first, and the paths alternate which goes first each round.
+ */
+@RunWith(AndroidJUnit4.class)
+public class RowBatchInsertBenchmark {
+
+    private static final String TAG = RowBatchInsertBenchmark.class.getSimpleName();
+
+    private static final int REVIEW_ROW_COUNT = 10000;
+
+    /* Timed rounds of each path after the warm up */
+    private static final int ROUNDS = 5;
+
+    private static final String REVIEW_TEXT =
+            "A long enough review body to be representative of the text the movie db returns.";
+
+    private MovieDbHelper mHelper;
+
+    @Before
+    public void createHelper() {
+        mHelper = new MovieDbHelper(InstrumentationRegistry.getTargetContext());
+    }
+
+    /**
+     * Time one insert of the reviews into an empty review table.
+     *
+     * @param rowBatch true to insert with the RowBatch path, false for ContentValues
+     * @return the time the insert took in nanoseconds
+     */
+    private long timeInsert(boolean rowBatch) {
+        SQLiteDatabase database = SQLiteDatabase.create(null);
+        try {
+            mHelper.onCreate(database);
+
+            long nanos = rowBatch ?
+                    timeRowBatchInsert(database) : timeContentValuesInsert(database);
+
+            assertEquals(REVIEW_ROW_COUNT,
+                    DatabaseUtils.queryNumEntries(database, ReviewEntry.TABLE_NAME));
+            return nanos;
+        } finally {
+            database.close();
+        }
+    }
+
+    private static long timeContentValuesInsert(SQLiteDatabase database) {
+        ContentValues[] rows = new ContentValues[REVIEW_ROW_COUNT];
+        for (int i = 0; i < REVIEW_ROW_COUNT; i++) {
+            ContentValues values = new ContentValues();
+            values.put(ReviewEntry.COLUMN_MOVIE_ID, i % 20);
+            values.put(ReviewEntry.COLUMN_REVIEW_ID, "cv" + i);
+            values.put(ReviewEntry.COLUMN_REVIEW_AUTHOR, "author");
+            values.put(ReviewEntry.COLUMN_REVIEW_CONTENT, REVIEW_TEXT);
+            values.put(ReviewEntry.COLUMN_REVIEW_URL, "http://example.com/" + i);
+            rows[i] = values;
+        }
+
+        long start = System.nanoTime();
+        database.beginTransaction();
+        try {
+            for (ContentValues values : rows) {
+                database.insert(ReviewEntry.TABLE_NAME, null, values);
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static long timeRowBatchInsert(SQLiteDatabase database) {
+        MovieSyncBatch batch = new MovieSyncBatch();
+        for (int i = 0; i < REVIEW_ROW_COUNT; i++) {
+            batch.addReview(i % 20, "rb" + i, "author", REVIEW_TEXT, "http://example.com/" + i);
+        }
+
+        long start = System.nanoTime();
+        database.beginTransaction();
+        try {
+            batch.getReviews().insertInto(database, ReviewEntry.TABLE_NAME);
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static long median(long[] nanos) {
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+
+    private static long rowsPerSecond(long nanos) {
+        return REVIEW_ROW_COUNT * 1000000000L / Math.max(nanos, 1);
+    }
+
+    @Test
+    public void compareReviewInsertPaths() {
+        /* Warm up the code paths and statement caches before anything is timed */
+        timeInsert(false);
+        timeInsert(true);
+
+        long[] contentValuesNanos = new long[ROUNDS];
+        long[] rowBatchNanos = new long[ROUNDS];
+
+        for (int round = 0; round < ROUNDS; round++) {
+            /* Alternate which path goes first so neither always runs on a warmer heap */
+            if (round % 2 == 0) {
+                contentValuesNanos[round] = timeInsert(false);
+                rowBatchNanos[round] = timeInsert(true);
+            } else {
+                rowBatchNanos[round] = timeInsert(true);
+                contentValuesNanos[round] = timeInsert(false);
+            }
+        }
+
+        Log.i(TAG, "ContentValues insert: " + rowsPerSecond(median(contentValuesNanos)) +
+                " rows/sec median of " + ROUNDS);
+        Log.i(TAG, "RowBatch insert: " + rowsPerSecond(median(rowBatchNanos)) +
+                " rows/sec median of " + ROUNDS);
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.android.popularmovies.sync;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.support.test.runner.AndroidJUnit4;
+import android.test.mock.MockContentProvider;
+import android.test.mock.MockContentResolver;
+
+import com.example.android.popularmovies.data.MovieContract;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the stale movie check of a long list never passes SQLite more arguments than it
+ * allows, and still finds the stale movies across every chunk.
+ */
+@RunWith(AndroidJUnit4.class)
+public class StaleMovieQueryTest {
+
+    /* 50 pages of 20 movies, more than SQLite allows arguments */
+    private static final int LIST_LENGTH = 1000;
+
+    /**
+     * Serves the movie id queries, treating the movies with even ids as fresh.
+     */
+    private static class EvenMoviesFreshProvider extends MockContentProvider {
+
+        private final List<Integer> mArgumentCounts = new ArrayList<>();
+
+        @Override
+        public Cursor query(Uri uri, String[] projection, String selection,
+                            String[] selectionArgs, String sortOrder) {
+            mArgumentCounts.add(selectionArgs.length);
+
+            MatrixCursor cursor = new MatrixCursor(projection);
+
+            /* The first argument is the sync time, the rest are movie ids */
+            for (int i = 1; i < selectionArgs.length; i++) {
+                long movieId = Long.parseLong(selectionArgs[i]);
+                if (movieId % 2 == 0) cursor.addRow(new Object[]{movieId});
+            }
+            return cursor;
+        }
+    }
+
+    @Test
+    public void longList_isQueriedInChunks() {
+        EvenMoviesFreshProvider provider = new EvenMoviesFreshProvider();
+
+        MockContentResolver contentResolver = new MockContentResolver();
+        contentResolver.addProvider(MovieContract.MovieEntry.CONTENT_URI.getAuthority(), provider);
+
+        long[] listMovieIds = new long[LIST_LENGTH];
+        for (int i = 0; i < LIST_LENGTH; i++) {
+            listMovieIds[i] = i + 1;
+        }
+
+        long[] staleMovieIds = MovieSyncTask.findStaleMovieIds(contentResolver, listMovieIds);
+
+        assertEquals(2, provider.mArgumentCounts.size());
+        for (int argumentCount : provider.mArgumentCounts) {
+            assertTrue(argumentCount <= MovieSyncTask.MAX_QUERY_ARGUMENTS);
+        }
+
+        /* The odd movies are stale, and kept in list order */
+        assertEquals(LIST_LENGTH / 2, staleMovieIds.length);
+        for (int i = 0; i < staleMovieIds.length; i++) {
+            assertEquals(2 * i + 1, staleMovieIds[i]);
+        }
+    }
+}
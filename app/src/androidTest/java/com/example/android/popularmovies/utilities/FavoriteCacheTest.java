@@ -0,0 +1,142 @@
+package com.example.android.popularmovies.utilities;
+
+import android.app.Instrumentation;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.os.StrictMode;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.popularmovies.data.MovieContract.FavoriteEntry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that favorites are read and toggled on the main thread without disk IO, that queued
+ * toggles are written behind, and that the cache follows changes made directly through the
+ * provider.
+ */
+@RunWith(AndroidJUnit4.class)
+public class FavoriteCacheTest {
+
+    private static final int TEST_MOVIE_ID = 987654321;
+
+    private static final long TIMEOUT_MILLIS = 5000;
+
+    private final Instrumentation mInstrumentation = InstrumentationRegistry.getInstrumentation();
+    private final Context mContext = InstrumentationRegistry.getTargetContext();
+
+    @Before
+    public void loadFavorites() throws Exception {
+        mInstrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                FavoriteCache.initialize(mContext);
+            }
+        });
+
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (!FavoriteCache.isLoaded()) {
+            assertTrue("Favorites not loaded", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Wait for the cache to show the expected favorite state for the test movie.
+     */
+    private void awaitFavorite(boolean favorite) throws Exception {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (FavoriteCache.isFavorite(TEST_MOVIE_ID) != favorite) {
+            assertTrue("Cache didn't follow the provider", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void mainThreadReadsAndToggles_doNoDiskIo() {
+        mInstrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                StrictMode.ThreadPolicy oldPolicy = StrictMode.getThreadPolicy();
+
+                /* Any disk read or write on the main thread kills the test process */
+                StrictMode.setThreadPolicy(new StrictMode.ThreadPolicy.Builder()
+                        .detectDiskReads()
+                        .detectDiskWrites()
+                        .penaltyLog()
+                        .penaltyDeath()
+                        .build());
+                try {
+                    for (int i = 0; i < 1000; i++) {
+                        MovieFavoriteUtils.isFavoriteMovie(TEST_MOVIE_ID + i);
+                    }
+
+                    MovieFavoriteUtils.setFavoriteMovie(TEST_MOVIE_ID, true);
+                    assertTrue(MovieFavoriteUtils.isFavoriteMovie(TEST_MOVIE_ID));
+
+                    MovieFavoriteUtils.setFavoriteMovie(TEST_MOVIE_ID, false);
+                    assertFalse(MovieFavoriteUtils.isFavoriteMovie(TEST_MOVIE_ID));
+                } finally {
+                    StrictMode.setThreadPolicy(oldPolicy);
+                }
+            }
+        });
+    }
+
+    private boolean isStoredFavorite(int movieId) {
+        Cursor cursor = mContext.getContentResolver().query(
+                FavoriteEntry.buildFavoriteUriWithId(movieId), null, null, null, null);
+        assertNotNull(cursor);
+        try {
+            return cursor.getCount() > 0;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void queuedToggles_areCollapsedAndWrittenTogether() throws Exception {
+        final int otherMovieId = TEST_MOVIE_ID + 1;
+
+        mInstrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                MovieFavoriteUtils.setFavoriteMovie(TEST_MOVIE_ID, true);
+
+                /* A toggle pair for the same movie cancels out, so is never written */
+                MovieFavoriteUtils.setFavoriteMovie(otherMovieId, true);
+                MovieFavoriteUtils.setFavoriteMovie(otherMovieId, false);
+            }
+        });
+
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (!isStoredFavorite(TEST_MOVIE_ID)) {
+            assertTrue("Favorite wasn't written", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+        assertFalse(isStoredFavorite(otherMovieId));
+
+        mContext.getContentResolver().delete(
+                FavoriteEntry.buildFavoriteUriWithId(TEST_MOVIE_ID), null, null);
+        awaitFavorite(false);
+    }
+
+    @Test
+    public void providerChanges_reachTheCache() throws Exception {
+        ContentValues values = new ContentValues();
+        values.put(FavoriteEntry.COLUMN_MOVIE_ID, TEST_MOVIE_ID);
+
+        mContext.getContentResolver().insert(FavoriteEntry.CONTENT_URI, values);
+        awaitFavorite(true);
+
+        mContext.getContentResolver().delete(
+                FavoriteEntry.buildFavoriteUriWithId(TEST_MOVIE_ID), null, null);
+        awaitFavorite(false);
+    }
+}
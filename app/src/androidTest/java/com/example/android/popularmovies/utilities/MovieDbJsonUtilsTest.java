@@ -0,0 +1,206 @@
+package com.example.android.popularmovies.utilities;
+
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.popularmovies.data.MovieSyncBatch;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the streaming parsers of list pages and movie details against movie db responses,
+ * including the fields they skip and the results they have to leave out.
+ */
+@RunWith(AndroidJUnit4.class)
+public class MovieDbJsonUtilsTest {
+
+    private static long[] readListPage(String json) throws IOException {
+        InputStream inputStream = new ByteArrayInputStream(json.getBytes("UTF-8"));
+        return MovieDbJsonUtils.readListPageStream(inputStream);
+    }
+
+    @Test
+    public void listPage_readsIdsInOrder() throws Exception {
+        long[] movieIds = readListPage("{\"page\":2,\"total_results\":10000," +
+                "\"total_pages\":500,\"results\":[" +
+                "{\"poster_path\":\"/a.jpg\",\"id\":550,\"title\":\"A\",\"genre_ids\":[18]," +
+                "\"vote_average\":8.3}," +
+                "{\"id\":13,\"title\":\"B\",\"overview\":{\"nested\":[1,2]}}," +
+                "{\"title\":\"C\",\"id\":680}]}");
+
+        assertArrayEquals(new long[]{550, 13, 680}, movieIds);
+    }
+
+    @Test
+    public void resultsWithoutAnId_areLeftOut() throws Exception {
+        long[] movieIds = readListPage("{\"results\":[" +
+                "{\"title\":\"no id\"}," +
+                "{\"id\":null,\"title\":\"null id\"}," +
+                "{\"id\":7}]}");
+
+        assertArrayEquals(new long[]{7}, movieIds);
+    }
+
+    @Test
+    public void missingOrNullResults_giveAnEmptyPage() throws Exception {
+        assertEquals(0, readListPage("{\"page\":501,\"total_pages\":500}").length);
+        assertEquals(0, readListPage("{\"page\":1,\"results\":null}").length);
+        assertEquals(0, readListPage("{\"page\":1,\"results\":[]}").length);
+    }
+
+    @Test
+    public void errorStatus_givesNoPage() throws Exception {
+        assertNull(readListPage("{\"status_code\":7," +
+                "\"status_message\":\"Invalid API key: You must be granted a valid key.\"," +
+                "\"success\":false}"));
+    }
+
+    /* Records the rows the detail parser adds instead of batching them */
+    private static class RecordingBatch extends MovieSyncBatch {
+        final List<Object[]> movies = new ArrayList<>();
+        final List<String[]> reviews = new ArrayList<>();
+        final List<String[]> trailers = new ArrayList<>();
+
+        @Override
+        public synchronized void addMovie(long movieId, String title, String posterPath,
+                                          String overview, double averageRating,
+                                          long releaseDate, long runtime) {
+            movies.add(new Object[]{movieId, title, posterPath, overview, averageRating,
+                    releaseDate, runtime});
+        }
+
+        @Override
+        public synchronized void addReview(long movieId, String reviewId, String author,
+                                           String content, String url) {
+            reviews.add(new String[]{String.valueOf(movieId), reviewId, author, content, url});
+        }
+
+        @Override
+        public synchronized void addTrailer(long movieId, String trailerId, String key,
+                                            String name, String site) {
+            trailers.add(new String[]{String.valueOf(movieId), trailerId, key, name, site});
+        }
+    }
+
+    private static boolean readMovieDetail(String json, MovieSyncBatch batch) throws IOException {
+        InputStream inputStream = new ByteArrayInputStream(json.getBytes("UTF-8"));
+        return MovieDbJsonUtils.readMovieDetailStream(InstrumentationRegistry.getTargetContext(),
+                inputStream, batch);
+    }
+
+    private static String reviewJson(int index) {
+        return "{\"id\":\"r" + index + "\",\"author\":\"author " + index + "\"," +
+                "\"content\":\"review " + index + "\",\"url\":\"http://example.com/" + index +
+                "\"}";
+    }
+
+    @Test
+    public void movieDetail_readsReviewsAndTrailersAroundTheMovieFields() throws Exception {
+        RecordingBatch batch = new RecordingBatch();
+
+        /* The reviews come before the id and the videos after it */
+        assertTrue(readMovieDetail("{\"reviews\":{\"page\":1,\"results\":[" +
+                reviewJson(1) + "," + reviewJson(2) + "],\"total_results\":2}," +
+                "\"original_title\":\"Fight Club\",\"poster_path\":\"/a.jpg\"," +
+                "\"genres\":[{\"id\":18,\"name\":\"Drama\"}],\"id\":550," +
+                "\"overview\":\"An overview\",\"release_date\":\"1999-10-15\"," +
+                "\"runtime\":139,\"vote_average\":8.3," +
+                "\"videos\":{\"results\":[{\"id\":\"v1\",\"key\":\"SUXWAEX2jlg\"," +
+                "\"name\":\"Trailer\",\"site\":\"YouTube\",\"size\":720}]}}", batch));
+
+        assertEquals(1, batch.movies.size());
+        Object[] movie = batch.movies.get(0);
+        assertEquals(550L, movie[0]);
+        assertEquals("Fight Club", movie[1]);
+        assertEquals("/a.jpg", movie[2]);
+        assertEquals("An overview", movie[3]);
+        assertEquals(8.3, (Double) movie[4], 0.0001);
+        assertTrue((Long) movie[5] != 0);
+        assertEquals(139L, movie[6]);
+
+        assertEquals(2, batch.reviews.size());
+        assertArrayEquals(new String[]{"550", "r1", "author 1", "review 1",
+                "http://example.com/1"}, batch.reviews.get(0));
+        assertEquals("r2", batch.reviews.get(1)[1]);
+
+        assertEquals(1, batch.trailers.size());
+        assertArrayEquals(new String[]{"550", "v1", "SUXWAEX2jlg", "Trailer", "YouTube"},
+                batch.trailers.get(0));
+    }
+
+    @Test
+    public void movieDetail_nullFieldsAreStoredAsEmpty() throws Exception {
+        RecordingBatch batch = new RecordingBatch();
+
+        assertTrue(readMovieDetail("{\"id\":7,\"original_title\":\"No details\"," +
+                "\"poster_path\":null,\"overview\":null,\"release_date\":\"\"," +
+                "\"runtime\":null,\"vote_average\":null," +
+                "\"reviews\":{\"results\":[{\"id\":\"r1\",\"author\":null," +
+                "\"content\":\"c\",\"url\":\"u\"}," + reviewJson(2) + "]}," +
+                "\"videos\":null}", batch));
+
+        assertEquals(1, batch.movies.size());
+        assertArrayEquals(new Object[]{7L, "No details", MovieDbJsonUtils.MISSING_TEXT,
+                MovieDbJsonUtils.MISSING_TEXT, 0.0, 0L, 0L}, batch.movies.get(0));
+
+        /* A review with a null field is left out */
+        assertEquals(1, batch.reviews.size());
+        assertEquals("r2", batch.reviews.get(0)[1]);
+        assertEquals(0, batch.trailers.size());
+    }
+
+    @Test
+    public void movieDetail_withoutATitle_isLeftOut() throws Exception {
+        RecordingBatch batch = new RecordingBatch();
+
+        assertFalse(readMovieDetail("{\"id\":7,\"original_title\":null," +
+                "\"reviews\":{\"results\":[" + reviewJson(1) + "]}}", batch));
+
+        assertEquals(0, batch.movies.size());
+        assertEquals(0, batch.reviews.size());
+    }
+
+    @Test
+    public void movieDetail_errorStatus_addsNothing() throws Exception {
+        RecordingBatch batch = new RecordingBatch();
+
+        assertFalse(readMovieDetail("{\"status_code\":34," +
+                "\"status_message\":\"The resource you requested could not be found.\"," +
+                "\"success\":false}", batch));
+
+        assertEquals(0, batch.movies.size());
+        assertEquals(0, batch.reviews.size());
+        assertEquals(0, batch.trailers.size());
+    }
+
+    @Test
+    public void movieDetail_withHundredsOfReviews_keepsThemAllInOrder() throws Exception {
+        final int reviewCount = 600;
+
+        StringBuilder json = new StringBuilder("{\"id\":11,\"original_title\":\"Popular\"," +
+                "\"reviews\":{\"results\":[");
+        for (int i = 0; i < reviewCount; i++) {
+            if (i > 0) json.append(',');
+            json.append(reviewJson(i));
+        }
+        json.append("]}}");
+
+        RecordingBatch batch = new RecordingBatch();
+        assertTrue(readMovieDetail(json.toString(), batch));
+
+        assertEquals(reviewCount, batch.reviews.size());
+        for (int i = 0; i < reviewCount; i++) {
+            assertEquals("r" + i, batch.reviews.get(i)[1]);
+            assertEquals("11", batch.reviews.get(i)[0]);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.android.popularmovies;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.support.annotation.NonNull;
+import android.support.v7.util.DiffUtil;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Calculates the difference between two snapshots of an adapter's rows on a background thread
+ * and hands the result back on the main thread, where the adapter can swap in the new snapshot
+ * and dispatch the minimal set of insert, remove, move and change operations.
+ *
+ * Only the latest diff requested from a differ is delivered - if a newer snapshot arrives while
+ * a diff is being calculated the older result is dropped.
+ */
+class BackgroundDiffer {
+
+    /**
+     * Receives a diff result on the main thread.
+     */
+    interface DiffListener {
+        void onDiffCalculated(DiffUtil.DiffResult diffResult);
+    }
+
+    /* Diffs of every adapter are calculated one at a time, in the order they were requested */
+    private static final ExecutorService sDiffExecutor =
+            Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(@NonNull final Runnable runnable) {
+            return new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }
+            }, "BackgroundDiffer");
+        }
+    });
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    /* Incremented for every diff requested so superseded results can be dropped */
+    private int mGeneration;
+
+    /**
+     * Calculate a diff in the background. Must be called on the main thread.
+     *
+     * @param callback the callback comparing the displayed snapshot with the new one
+     * @param listener receives the result on the main thread, unless it is superseded
+     */
+    void calculateDiff(@NonNull final DiffUtil.Callback callback,
+                       @NonNull final DiffListener listener) {
+        final int generation = ++mGeneration;
+
+        sDiffExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final DiffUtil.DiffResult diffResult = DiffUtil.calculateDiff(callback);
+
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (generation == mGeneration) {
+                            listener.onDiffCalculated(diffResult);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Drop any diff that is still being calculated. Must be called on the main thread.
+     */
+    void cancel() {
+        mGeneration++;
+    }
+}
@@ -1,10 +1,8 @@
 package com.example.android.popularmovies;
 
 import android.content.Intent;
-import android.database.Cursor;
 import android.net.Uri;
 import android.support.v4.app.LoaderManager;
-import android.support.v4.content.CursorLoader;
 import android.support.v4.content.Loader;
 import android.support.v7.app.AppCompatActivity;
 import android.os.Bundle;
@@ -19,54 +17,63 @@ import com.example.android.popularmovies.data.MovieContract;
  * extra identifying the required movie by its movie id.
  */
 public class DetailActivity extends AppCompatActivity implements
-        LoaderManager.LoaderCallbacks<Cursor>{
+        DetailListAdapter.MoreReviewsListener {
 
-    public static final String[] MOVIE_DETAIL_PROJECTION = {
+    /* The columns of the composite detail query - each row sets only the columns of its type */
+    public static final String[] DETAIL_PROJECTION = {
+            MovieContract.DetailEntry.COLUMN_ROW_TYPE,
             MovieContract.MovieEntry.COLUMN_MOVIE_ID,
             MovieContract.MovieEntry.COLUMN_TITLE,
             MovieContract.MovieEntry.COLUMN_POSTER_PATH,
             MovieContract.MovieEntry.COLUMN_RELEASE_DATE,
             MovieContract.MovieEntry.COLUMN_OVERVIEW,
             MovieContract.MovieEntry.COLUMN_RUNTIME,
-            MovieContract.MovieEntry.COLUMN_AVERAGE_RATING
-    };
-
-    public static final int INDEX_MOVIE_ID = 0;
-    public static final int INDEX_MOVIE_TITLE = 1;
-    public static final int INDEX_MOVIE_POSTER_PATH = 2;
-    public static final int INDEX_MOVIE_RELEASE_DATE = 3;
-    public static final int INDEX_MOVIE_COLUMN_OVERVIEW = 4;
-    public static final int INDEX_MOVIE_COLUMN_RUNTIME = 5;
-    public static final int INDEX_MOVIE_AVERAGE_RATING = 6;
-
-    public static final String[] TRAILER_PROJECTION = {
-            MovieContract.TrailerEntry._ID,
+            MovieContract.MovieEntry.COLUMN_AVERAGE_RATING,
+            MovieContract.DetailEntry.COLUMN_IS_FAVORITE,
+            MovieContract.DetailEntry.COLUMN_REVIEW_COUNT,
+            MovieContract.TrailerEntry.COLUMN_TRAILER_ID,
             MovieContract.TrailerEntry.COLUMN_TRAILER_NAME,
             MovieContract.TrailerEntry.COLUMN_TRAILER_SITE,
-            MovieContract.TrailerEntry.COLUMN_TRAILER_KEY
+            MovieContract.TrailerEntry.COLUMN_TRAILER_KEY,
+            MovieContract.ReviewEntry.COLUMN_REVIEW_ID,
+            MovieContract.ReviewEntry.COLUMN_REVIEW_AUTHOR,
+            MovieContract.DetailEntry.COLUMN_REVIEW_PREVIEW,
+            MovieContract.DetailEntry.COLUMN_REVIEW_LENGTH
     };
 
-    public static final int INDEX_TRAILER_NAME = 1;
-    public static final int INDEX_TRAILER_SITE = 2;
-    public static final int INDEX_TRAILER_KEY = 3;
+    public static final int INDEX_DETAIL_ROW_TYPE = 0;
 
-    public static final String[] REVIEW_PROJECTION = {
-            MovieContract.ReviewEntry.COLUMN_REVIEW_AUTHOR,
-            MovieContract.ReviewEntry.COLUMN_REVIEW_CONTENT
-    };
+    public static final int INDEX_MOVIE_ID = 1;
+    public static final int INDEX_MOVIE_TITLE = 2;
+    public static final int INDEX_MOVIE_POSTER_PATH = 3;
+    public static final int INDEX_MOVIE_RELEASE_DATE = 4;
+    public static final int INDEX_MOVIE_COLUMN_OVERVIEW = 5;
+    public static final int INDEX_MOVIE_COLUMN_RUNTIME = 6;
+    public static final int INDEX_MOVIE_AVERAGE_RATING = 7;
+    public static final int INDEX_MOVIE_IS_FAVORITE = 8;
+    public static final int INDEX_MOVIE_REVIEW_COUNT = 9;
 
-    public static final int INDEX_REVIEW_AUTHOR = 0;
-    public static final int INDEX_REVIEW_CONTENT = 1;
+    public static final int INDEX_TRAILER_ID = 10;
+    public static final int INDEX_TRAILER_NAME = 11;
+    public static final int INDEX_TRAILER_SITE = 12;
+    public static final int INDEX_TRAILER_KEY = 13;
+
+    public static final int INDEX_REVIEW_ID = 14;
+    public static final int INDEX_REVIEW_AUTHOR = 15;
+    public static final int INDEX_REVIEW_PREVIEW = 16;
+    public static final int INDEX_REVIEW_LENGTH = 17;
 
     public static final int MOVIE_DETAIL_LOADER = 120;
-    public static final int MOVIE_REVIEW_LOADER = 121;
-    public static final int MOVIE_TRAILER_LOADER = 122;
+
+    /* Saved state key of the number of reviews asked for */
+    private static final String REVIEW_LIMIT_KEY = "review_limit";
 
     private DetailListAdapter mDetailAdapter;
 
-    private Uri mMovieUri;
-    private Uri mReviewUri;
-    private Uri mTrailerUri;
+    private long mMovieId;
+
+    /* The number of reviews the detail loader asks for - grows a page at a time */
+    private int mReviewLimit = MovieContract.DetailEntry.REVIEW_PAGE_SIZE;
 
     /**
      * Activity lifecycle - activity is created. Setup the RecyclerView
@@ -93,7 +100,7 @@ public class DetailActivity extends AppCompatActivity implements
         mDetailRecyclerView.setLayoutManager(layoutManager);
 
         /* Set the specialized adapter for the details */
-        mDetailAdapter = new DetailListAdapter(this, this);
+        mDetailAdapter = new DetailListAdapter(this, this, this);
 
         mDetailRecyclerView.setAdapter(mDetailAdapter);
 
@@ -101,95 +108,74 @@ public class DetailActivity extends AppCompatActivity implements
 
         /* Get the movie that we are display details about */
         if(launchIntent.hasExtra(MainActivity.MOVIE_ID_EXTRA)){
-            long movieId = launchIntent.getLongExtra(MainActivity.MOVIE_ID_EXTRA, 0);
-
-            mMovieUri = MovieContract.MovieEntry.buildMovieUriWithId(movieId);
+            mMovieId = launchIntent.getLongExtra(MainActivity.MOVIE_ID_EXTRA, 0);
 
-            mReviewUri = MovieContract.ReviewEntry.buildReviewUriWithId(movieId);
-
-            mTrailerUri = MovieContract.TrailerEntry.buildTrailerUriWithId(movieId);
+            /* The loader survives a configuration change, so must be asked for as many
+             * reviews as it already has */
+            if (savedInstanceState != null) {
+                mReviewLimit = savedInstanceState.getInt(REVIEW_LIMIT_KEY, mReviewLimit);
+            }
 
-            /* We define three loaders for:
-             *       - the movie details
-             *       - the trailers
-             *       - the reviews
-             * Each cursor is passed to the DetailListAdapter
+            /* A single loader reads the movie details, trailers and reviews together and
+             * passes them to the DetailListAdapter
              */
-            getSupportLoaderManager().initLoader(MOVIE_DETAIL_LOADER, null, this);
-            getSupportLoaderManager().initLoader(MOVIE_TRAILER_LOADER, null, this);
-            getSupportLoaderManager().initLoader(MOVIE_REVIEW_LOADER, null, this);
+            getSupportLoaderManager().initLoader(MOVIE_DETAIL_LOADER, null, mDetailLoaderCallbacks);
         }
     }
 
-    @Override
-    public Loader<Cursor> onCreateLoader(int loaderId, Bundle args) {
-
-        String projection[];
-        Uri contentUri;
-
-        switch (loaderId) {
-            case MOVIE_DETAIL_LOADER: {
-                contentUri = mMovieUri;
-                projection = MOVIE_DETAIL_PROJECTION;
-                break;
-                }
-            case MOVIE_REVIEW_LOADER: {
-                contentUri = mReviewUri;
-                projection = REVIEW_PROJECTION;
-                break;
-            }
-            case MOVIE_TRAILER_LOADER: {
-                contentUri = mTrailerUri;
-                projection = TRAILER_PROJECTION;
-                break;
-            }
-            default: {
-                throw new IllegalArgumentException("Unsupported Loader ID");
-            }
+    private final LoaderManager.LoaderCallbacks<DetailRows> mDetailLoaderCallbacks =
+            new LoaderManager.LoaderCallbacks<DetailRows>() {
+        @Override
+        public Loader<DetailRows> onCreateLoader(int loaderId, Bundle args) {
+            Uri detailUri = MovieContract.DetailEntry.buildDetailUriWithId(mMovieId, mReviewLimit);
+
+            return new RowsLoader<>(DetailActivity.this, detailUri, DETAIL_PROJECTION,
+                    DetailRows.READER);
         }
-        return new CursorLoader(
-                this,
-                contentUri,
-                projection,
-                null,
-                null,
-                null);
-    }
 
-    @Override
-    public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
-        if (data != null && data.moveToFirst()) {
-
-            switch (loader.getId()) {
-                case MOVIE_DETAIL_LOADER: {
-                    mDetailAdapter.swapMovieDetailsCursor(data);
-
-                    /* The Detail adapter doesn't handle the movie title - set it here*/
-                    setDetailMovieTitle(data);
-                    break;
-                }
-                case MOVIE_TRAILER_LOADER: {
-                    mDetailAdapter.swapTrailerCursor(data);
-                    break;
-                }
-                case MOVIE_REVIEW_LOADER: {
-                    mDetailAdapter.swapReviewsCursor(data);
-                    break;
-                }
-            }
+        @Override
+        public void onLoadFinished(Loader<DetailRows> loader, DetailRows rows) {
+            if (rows == null) return;
+
+            mDetailAdapter.swapRows(rows);
+
+            /* The Detail adapter doesn't handle the movie title - set it here*/
+            if (rows.movie != null) setDetailMovieTitle(rows.movie.title);
         }
+
+        @Override
+        public void onLoaderReset(Loader<DetailRows> loader) {}
+    };
+
+    @Override
+    protected void onSaveInstanceState(Bundle outState) {
+        super.onSaveInstanceState(outState);
+
+        outState.putInt(REVIEW_LIMIT_KEY, mReviewLimit);
     }
 
+    /**
+     * Called by the adapter when the last loaded review is shown. Reload with the next page of
+     * reviews, unless that page is already being loaded.
+     *
+     * @param loadedCount the number of reviews loaded so far
+     */
     @Override
-    public void onLoaderReset(Loader<Cursor> loader) {}
+    public void onMoreReviewsWanted(int loadedCount) {
+        if (loadedCount < mReviewLimit) return;
+
+        mReviewLimit = loadedCount + MovieContract.DetailEntry.REVIEW_PAGE_SIZE;
+
+        getSupportLoaderManager().restartLoader(MOVIE_DETAIL_LOADER, null, mDetailLoaderCallbacks);
+    }
 
     /**
      * Sets the movie title text
-     * @param movieCursor the movie cursor
+     * @param title the movie title
      */
-    private void setDetailMovieTitle(Cursor movieCursor) {
+    private void setDetailMovieTitle(String title) {
         TextView titleTextView = (TextView) findViewById(R.id.film_title_tv);
 
-        titleTextView.setText(movieCursor.getString(INDEX_MOVIE_TITLE));
+        titleTextView.setText(title);
     }
 }
@@ -6,70 +6,83 @@ import android.content.Context;
 import android.content.Intent;
 import android.database.Cursor;
 import android.net.Uri;
+import android.os.AsyncTask;
 import android.support.annotation.NonNull;
 import android.support.v4.app.ShareCompat;
+import android.support.v7.util.DiffUtil;
 import android.support.v7.widget.RecyclerView;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.ImageView;
 
+import com.example.android.popularmovies.data.MovieContract;
+import com.example.android.popularmovies.utilities.FavoriteCache;
 import com.example.android.popularmovies.utilities.MovieFavoriteUtils;
-import com.example.android.popularmovies.utilities.MovieDateUtils;
-import com.example.android.popularmovies.utilities.NetworkUtils;
+import com.example.android.popularmovies.utilities.PosterUrls;
 import com.squareup.picasso.Picasso;
 
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
 /*
  * This RecyclerView.Adapter provides the especially arranged ViewHolders for the MovieDetails
- * RecyclerView. Three cursors are maintained, one for each of: the movie details, the trailers
- * and the reviews. Each section has a specialized ViewHolder for the appropriate view type.
+ * RecyclerView. The rows are held as an immutable snapshot made up of the movie details, the
+ * trailers and the reviews. Each section has a specialized ViewHolder for the appropriate view
+ * type. When the rows are reloaded the new snapshot is diffed against the displayed one in the
+ * background, so only the rows that actually changed are rebound.
+ *
+ * Reviews are shown as previews, a page at a time. Reaching the last loaded review asks for the
+ * next page, and clicking a cut short review loads its full text in the background.
  */
 class DetailListAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> implements
         TrailerViewHolder.TrailerPlayClickListener,
         TrailerViewHolder.TrailerShareClickListener,
-        DetailHeaderViewHolder.FavoriteSelectListener
+        DetailHeaderViewHolder.FavoriteSelectListener,
+        ReviewViewHolder.ReviewClickListener,
+        FavoriteCache.FavoritesListener
 {
 
-    /* There is a single details header */
-    private static final int DETAIL_HEADER_COUNT = 1;
-
-    /* The details header is always first by position */
-    private static final int DETAIL_HEADER_POSITION = 0;
+    /**
+     * Asked for the next page of reviews when the last loaded review is shown.
+     */
+    interface MoreReviewsListener {
+        /**
+         * @param loadedCount the number of reviews loaded so far
+         */
+        void onMoreReviewsWanted(int loadedCount);
+    }
 
     /* View types */
-    private static final int VIEW_TYPE_HEADER_DETAILS = 0;
-    private static final int VIEW_TYPE_TRAILER = 1;
-    private static final int VIEW_TYPE_REVIEW = 2;
+    private static final int VIEW_TYPE_HEADER_DETAILS = DetailRows.ITEM_TYPE_HEADER_DETAILS;
+    private static final int VIEW_TYPE_TRAILER = DetailRows.ITEM_TYPE_TRAILER;
+    private static final int VIEW_TYPE_REVIEW = DetailRows.ITEM_TYPE_REVIEW;
 
     private final Context mContext;
 
-    private Cursor mMovieDetailsCursor;
-    private Cursor mTrailersCursor;
-    private Cursor mReviewsCursor;
+    /* The rows on display */
+    private DetailRows mRows = DetailRows.EMPTY;
+
+    private final BackgroundDiffer mDiffer = new BackgroundDiffer();
 
     /* The activity that is the source of the sharing Intent */
     private Activity mIntentLaunchAcitity;
 
-    DetailListAdapter(@NonNull Context context, @NonNull Activity activity) {
-        mContext = context;
-        mIntentLaunchAcitity = activity;
-    }
+    private final MoreReviewsListener mMoreReviewsListener;
 
-    /**
-     * Find the trailer cursor position from the adapter position.
-     * @param adapterPosition the adapter position to calculate from
-     * @return the trailer cursor position
-     */
-    private int calculateTrailerCursorPosition(int adapterPosition) {
-        return adapterPosition - DETAIL_HEADER_COUNT;
-    }
+    /* The full text of the expanded reviews, by review id. Kept across reloads */
+    private final Map<String, String> mFullReviews = new HashMap<>();
 
-    /**
-     * Find the reviews cursor position from the adapter position.
-     * @param adapterPosition the adapter position to calculate from
-     * @return the trailer cursor position
-     */
-    private int calculateReviewCursorPosition(int adapterPosition) {
-        return adapterPosition - DETAIL_HEADER_COUNT - mTrailersCursor.getCount();
+    /* The ids of the reviews whose full text is being loaded */
+    private final Set<String> mLoadingReviews = new HashSet<>();
+
+    DetailListAdapter(@NonNull Context context, @NonNull Activity activity,
+                      @NonNull MoreReviewsListener moreReviewsListener) {
+        mContext = context;
+        mIntentLaunchAcitity = activity;
+        mMoreReviewsListener = moreReviewsListener;
     }
 
     @Override
@@ -98,47 +111,59 @@ class DetailListAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> im
     }
 
     @Override
-    public int getItemCount() {
-        int count = 0;
-
-        if (mMovieDetailsCursor != null) count+=DETAIL_HEADER_COUNT;
-
-        if (mTrailersCursor != null) {
-            count+=mTrailersCursor.getCount();
+    public void onAttachedToRecyclerView(RecyclerView recyclerView) {
+        FavoriteCache.addListener(this);
+    }
 
-            /* Only return review count if trailers are loaded otherwise getItemViewType
-             * could attempt to access a null mTrailersCursor */
-            if (mReviewsCursor != null) {
-                count+=mReviewsCursor.getCount();
-            }
-        }
-        return count;
+    @Override
+    public void onDetachedFromRecyclerView(RecyclerView recyclerView) {
+        FavoriteCache.removeListener(this);
     }
 
+    /**
+     * Called when the favorites change, including when they are first loaded. Rebind the
+     * header so its favorite toggle is current.
+     */
     @Override
-    public int getItemViewType(int position) {
-        if (position == DETAIL_HEADER_POSITION ) {
-            return VIEW_TYPE_HEADER_DETAILS;
-        } else if (position <= mTrailersCursor.getCount()) {
-            return VIEW_TYPE_TRAILER;
-        } else {
-            return VIEW_TYPE_REVIEW;
+    public void onFavoritesChanged() {
+        if (mRows.movie != null) {
+            notifyItemChanged(0);
         }
     }
 
-    void swapMovieDetailsCursor(Cursor newCursor) {
-        mMovieDetailsCursor = newCursor;
-        notifyDataSetChanged();
+    @Override
+    public int getItemCount() {
+        return mRows.getItemCount();
     }
 
-    void swapTrailerCursor(Cursor newCursor) {
-        mTrailersCursor = newCursor;
-        notifyDataSetChanged();
+    @Override
+    public int getItemViewType(int position) {
+        return mRows.getItemType(position);
     }
 
-    void swapReviewsCursor(Cursor newCursor) {
-        mReviewsCursor = newCursor;
-        notifyDataSetChanged();
+    /**
+     * Replace the rows. The new rows are diffed against the displayed rows in the background,
+     * then displayed with just the changes dispatched.
+     *
+     * @param newRows the movie, trailers and reviews read together by the detail loader
+     */
+    void swapRows(@NonNull final DetailRows newRows) {
+        /* There is nothing on display to keep, so there is nothing to diff */
+        if (mRows.getItemCount() == 0) {
+            mDiffer.cancel();
+            mRows = newRows;
+            notifyDataSetChanged();
+            return;
+        }
+
+        mDiffer.calculateDiff(new DetailRows.DiffCallback(mRows, newRows),
+                new BackgroundDiffer.DiffListener() {
+            @Override
+            public void onDiffCalculated(DiffUtil.DiffResult diffResult) {
+                mRows = newRows;
+                diffResult.dispatchUpdatesTo(DetailListAdapter.this);
+            }
+        });
     }
 
     @Override
@@ -160,7 +185,7 @@ class DetailListAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> im
             }
             case VIEW_TYPE_REVIEW: {
                 view = LayoutInflater.from(mContext).inflate(R.layout.review_list_item, parent, false);
-                holder = new ReviewViewHolder(view);
+                holder = new ReviewViewHolder(view, this);
                 break;
             }
             default: {
@@ -174,82 +199,79 @@ class DetailListAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> im
     }
 
     /**
-     * Set the detail header view with the data from the details cursor.
+     * Set the detail header view with the data from the movie details.
      *
      * @param holder The ViewHolder that is to be populated
      */
     private void configureDetailHeaderView(DetailHeaderViewHolder holder){
 
-        /* Ensure we have a valid cursor with data */
-        if (mMovieDetailsCursor == null || mMovieDetailsCursor.getCount() == 0)
-            return;
+        DetailRows.Movie movie = mRows.movie;
+
+        /* Set the various views up - the text was formatted when the movie was loaded */
+        ImageView posterImageView = holder.getPosterImageView();
 
-        /* Set the various views up */
-        String posterPath = NetworkUtils.convertRelativeImagePathToAbsolute(
-                mMovieDetailsCursor.getString(DetailActivity.INDEX_MOVIE_POSTER_PATH)).toString();
+        /* The poster view has a fixed size, so it is known before the view is laid out. The
+         * poster is decoded to that size so the bitmap holds no more pixels than are shown */
+        int posterWidth = posterImageView.getLayoutParams().width;
+        int posterHeight = posterImageView.getLayoutParams().height;
+
+        String posterUrl = PosterUrls.posterUrl(movie.posterPath, posterWidth);
 
         Picasso.with(mContext)
-                .load(posterPath)
+                .load(posterUrl)
+                .resize(posterWidth, posterHeight)
+                .centerCrop()
                 .placeholder(R.color.colorPrimaryLight)
                 .error(R.color.colorPrimaryLight)
-                .into(holder.getPosterImageView());
-
-        holder.getOverviewTextView().setText(mMovieDetailsCursor.getString(DetailActivity.INDEX_MOVIE_COLUMN_OVERVIEW));
-
-        int averageVoteFormatId = R.string.average_vote_format;
-
-        String averageVote =
-                String.format(mContext.getString(averageVoteFormatId),
-                        mMovieDetailsCursor.getDouble(DetailActivity.INDEX_MOVIE_AVERAGE_RATING));
+                .into(posterImageView);
 
-        holder.getAverageScoreTextView().setText(averageVote);
+        holder.getOverviewTextView().setText(movie.overview);
+        holder.getAverageScoreTextView().setText(movie.averageVoteText);
+        holder.getRuntimeTextView().setText(movie.runtimeText);
+        holder.getReleaseYearTextView().setText(movie.releaseYearText);
 
-        holder.getRuntimeTextView()
-                .setText( mMovieDetailsCursor.getInt(DetailActivity.INDEX_MOVIE_COLUMN_RUNTIME) +
-                " " + mContext.getString(R.string.runtime_minutes));
-
-        int releaseYear = MovieDateUtils.yearFromMilliseconds(
-                mMovieDetailsCursor.getLong(DetailActivity.INDEX_MOVIE_RELEASE_DATE));
-
-        holder.getReleaseYearTextView().setText(String.valueOf(releaseYear));
-
-        holder.getFavoriteToggle().setChecked(MovieFavoriteUtils.isFavoriteMovie(mContext,
-                mMovieDetailsCursor.getInt(DetailActivity.INDEX_MOVIE_ID)));
+        /* Read from the favorite cache, so the bind doesn't query the provider. Until the cache
+         * is loaded the flag read with the movie is shown instead */
+        holder.getFavoriteToggle().setChecked(FavoriteCache.isLoaded() ?
+                MovieFavoriteUtils.isFavoriteMovie((int) movie.movieId) : movie.favorite);
     }
 
     /**
-     * Set the trailer header view with the data from the trailer cursor.
+     * Set the trailer header view with the data from the trailers.
      *
      * @param holder the ViewHolder to be populated
      * @param position the adapter position of the ViewHolder
      */
     private void configureTrailerView(TrailerViewHolder holder, int position) {
 
-        mTrailersCursor.moveToPosition(calculateTrailerCursorPosition(position));
-
-        String trailerSiteText = mContext.getString(R.string.trailer_prefix) +
-                " " + mTrailersCursor.getString(DetailActivity.INDEX_TRAILER_SITE);
+        int trailerIndex = mRows.trailerIndex(position);
 
-        holder.getTrailerTitle().setText(mTrailersCursor.getString(DetailActivity.INDEX_TRAILER_NAME));
-        holder.getTrailerSite().setText(trailerSiteText);
+        holder.getTrailerTitle().setText(mRows.trailers.names[trailerIndex]);
+        holder.getTrailerSite().setText(mRows.trailers.siteTexts[trailerIndex]);
 
     }
 
     /**
-     * Set the review header view with the data from the review cursor.
+     * Set the review header view with the data from the reviews.
      *
      * @param holder the ViewHolder to be populated
      * @param position the adapter position of the ViewHolder
      */
     private void configureReviewView(ReviewViewHolder holder, int position) {
 
-        mReviewsCursor.moveToPosition(calculateReviewCursorPosition(position));
+        DetailRows.Reviews reviews = mRows.reviews;
+        int reviewIndex = mRows.reviewIndex(position);
 
-        String reviewAuthorText = mContext.getString(R.string.review_prefix) +
-                " " + mReviewsCursor.getString(DetailActivity.INDEX_REVIEW_AUTHOR);
+        String fullReview = mFullReviews.get(reviews.ids[reviewIndex]);
 
-        holder.getReviewAuthor().setText(reviewAuthorText);
-        holder.getReviewContent().setText(mReviewsCursor.getString(DetailActivity.INDEX_REVIEW_CONTENT));
+        holder.getReviewAuthor().setText(reviews.authorTexts[reviewIndex]);
+        holder.getReviewContent().setText(
+                fullReview != null ? fullReview : reviews.previews[reviewIndex]);
+
+        /* Showing the last loaded review asks for the next page */
+        if (reviewIndex == reviews.size() - 1 && reviews.hasMore()) {
+            mMoreReviewsListener.onMoreReviewsWanted(reviews.size());
+        }
     }
 
     /**
@@ -260,9 +282,7 @@ class DetailListAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> im
     @Override
     public void onPlayClick(int position) {
 
-        mTrailersCursor.moveToPosition(calculateTrailerCursorPosition(position));
-
-        String videoKey = mTrailersCursor.getString(DetailActivity.INDEX_TRAILER_KEY);
+        String videoKey = mRows.trailers.keys[mRows.trailerIndex(position)];
 
         /* We want to launch directly in the youtube app */
         Intent vidAppIntent = new Intent(Intent.ACTION_VIEW,
@@ -287,9 +307,7 @@ class DetailListAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> im
     @Override
     public void onShareClick(int position) {
 
-        mTrailersCursor.moveToPosition(calculateTrailerCursorPosition(position));
-
-        String videoKey = mTrailersCursor.getString(DetailActivity.INDEX_TRAILER_KEY);
+        String videoKey = mRows.trailers.keys[mRows.trailerIndex(position)];
 
         Intent shareIntent = ShareCompat.IntentBuilder.from(mIntentLaunchAcitity)
                 .setType("text/plain")
@@ -305,6 +323,63 @@ class DetailListAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> im
         mContext.startActivity(shareIntent);
     }
 
+    /**
+     * Called when a review is clicked. Expand a cut short review by loading its full text in
+     * the background, or collapse an expanded review back to its preview.
+     *
+     * @param position the ViewHolder position of the review
+     */
+    @Override
+    public void onReviewClick(int position) {
+        int reviewIndex = mRows.reviewIndex(position);
+        final String reviewId = mRows.reviews.ids[reviewIndex];
+
+        if (mFullReviews.remove(reviewId) != null) {
+            notifyItemChanged(position);
+            return;
+        }
+
+        if (!mRows.reviews.truncated[reviewIndex] || !mLoadingReviews.add(reviewId)) return;
+
+        new AsyncTask<Void, Void, String>() {
+            @Override
+            protected String doInBackground(Void... params) {
+                Cursor cursor = mContext.getContentResolver().query(
+                        MovieContract.ReviewEntry.buildReviewContentUriWithReviewId(reviewId),
+                        new String[]{MovieContract.ReviewEntry.COLUMN_REVIEW_CONTENT},
+                        null,
+                        null,
+                        null);
+
+                if (cursor == null) return null;
+
+                try {
+                    return cursor.moveToFirst() ? cursor.getString(0) : null;
+                } finally {
+                    cursor.close();
+                }
+            }
+
+            @Override
+            protected void onPostExecute(String fullReview) {
+                mLoadingReviews.remove(reviewId);
+
+                if (fullReview == null) return;
+
+                mFullReviews.put(reviewId, fullReview);
+
+                /* The review may have moved while its text was loading */
+                DetailRows.Reviews reviews = mRows.reviews;
+                for (int i = 0; i < reviews.size(); i++) {
+                    if (reviewId.equals(reviews.ids[i])) {
+                        notifyItemChanged(mRows.reviewPosition(i));
+                        break;
+                    }
+                }
+            }
+        }.execute();
+    }
+
     /**
      * Called when the favorite selector is pressed. Make the movie a favorite.
      *
@@ -312,9 +387,11 @@ class DetailListAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> im
      */
     @Override
     public void onFavoriteSelect(boolean selected) {
-        int movieId = mMovieDetailsCursor.getInt(DetailActivity.INDEX_MOVIE_ID);
+        if (mRows.movie == null) return;
+
+        int movieId = (int) mRows.movie.movieId;
 
-        MovieFavoriteUtils.setFavoriteMovie(mContext, movieId, selected);
+        MovieFavoriteUtils.setFavoriteMovie(movieId, selected);
     }
 
 }
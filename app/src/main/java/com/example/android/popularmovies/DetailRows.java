@@ -0,0 +1,374 @@
+package com.example.android.popularmovies;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.support.v7.util.DiffUtil;
+
+import com.example.android.popularmovies.data.MovieContract.DetailEntry;
+import com.example.android.popularmovies.utilities.MovieDateUtils;
+
+/**
+ * An immutable snapshot of the rows of the movie detail list: the detail header, followed by
+ * the trailers and then the reviews. The whole snapshot is read on a loader thread from the
+ * single composite detail query, with the displayed text already formatted, so every part is
+ * consistent and the list renders in one pass. Each reload produces a new snapshot that can be
+ * diffed against the one on display.
+ */
+final class DetailRows {
+
+    /* Item types, also used as the adapter view types */
+    static final int ITEM_TYPE_HEADER_DETAILS = 0;
+    static final int ITEM_TYPE_TRAILER = 1;
+    static final int ITEM_TYPE_REVIEW = 2;
+
+    /* Ends a review preview that was cut short */
+    private static final String ELLIPSIS = "\u2026";
+
+    static final DetailRows EMPTY = new DetailRows(null, Trailers.EMPTY, Reviews.EMPTY);
+
+    /**
+     * The movie shown in the detail header. The displayed text is formatted when the movie is
+     * read so binding it is only a matter of setting views.
+     */
+    static final class Movie {
+        final long movieId;
+        final String title;
+        final String posterPath;
+        final String overview;
+        final String averageVoteText;
+        final String runtimeText;
+        final String releaseYearText;
+        /* Whether the movie was a favorite when it was read */
+        final boolean favorite;
+
+        Movie(long movieId, String title, String posterPath, String overview,
+              String averageVoteText, String runtimeText, String releaseYearText,
+              boolean favorite) {
+            this.movieId = movieId;
+            this.title = title;
+            this.posterPath = posterPath;
+            this.overview = overview;
+            this.averageVoteText = averageVoteText;
+            this.runtimeText = runtimeText;
+            this.releaseYearText = releaseYearText;
+            this.favorite = favorite;
+        }
+
+        /**
+         * Read the movie from the current row, a movie row, of a cursor with the detail
+         * projection.
+         */
+        static Movie fromCursor(Context context, Cursor cursor) {
+            String averageVoteText = String.format(
+                    context.getString(R.string.average_vote_format),
+                    cursor.getDouble(DetailActivity.INDEX_MOVIE_AVERAGE_RATING));
+
+            String runtimeText = cursor.getInt(DetailActivity.INDEX_MOVIE_COLUMN_RUNTIME) + " " +
+                    context.getString(R.string.runtime_minutes);
+
+            int releaseYear = MovieDateUtils.yearFromMilliseconds(
+                    cursor.getLong(DetailActivity.INDEX_MOVIE_RELEASE_DATE));
+
+            return new Movie(cursor.getLong(DetailActivity.INDEX_MOVIE_ID),
+                    cursor.getString(DetailActivity.INDEX_MOVIE_TITLE),
+                    cursor.getString(DetailActivity.INDEX_MOVIE_POSTER_PATH),
+                    cursor.getString(DetailActivity.INDEX_MOVIE_COLUMN_OVERVIEW),
+                    intern(averageVoteText),
+                    intern(runtimeText),
+                    intern(String.valueOf(releaseYear)),
+                    cursor.getInt(DetailActivity.INDEX_MOVIE_IS_FAVORITE) != 0);
+        }
+
+        boolean sameContents(Movie other) {
+            return movieId == other.movieId &&
+                    equal(title, other.title) &&
+                    equal(posterPath, other.posterPath) &&
+                    equal(overview, other.overview) &&
+                    equal(averageVoteText, other.averageVoteText) &&
+                    equal(runtimeText, other.runtimeText) &&
+                    equal(releaseYearText, other.releaseYearText) &&
+                    favorite == other.favorite;
+        }
+    }
+
+    /**
+     * The trailers of the movie as parallel arrays, in provider order.
+     */
+    static final class Trailers {
+        static final Trailers EMPTY = new Trailers(new String[0], new String[0], new String[0],
+                new String[0]);
+
+        final String[] ids;
+        final String[] names;
+        /* The site line as displayed, e.g. "Trailer on YouTube" */
+        final String[] siteTexts;
+        final String[] keys;
+
+        Trailers(String[] ids, String[] names, String[] siteTexts, String[] keys) {
+            this.ids = ids;
+            this.names = names;
+            this.siteTexts = siteTexts;
+            this.keys = keys;
+        }
+
+        int size() {
+            return ids.length;
+        }
+    }
+
+    /**
+     * The loaded page of the reviews of the movie as parallel arrays, in provider order. Only a
+     * preview of each review text is held - the full text is loaded when it is asked for.
+     */
+    static final class Reviews {
+        static final Reviews EMPTY = new Reviews(new String[0], new String[0], new String[0],
+                new boolean[0], 0);
+
+        final String[] ids;
+        /* The author line as displayed, e.g. "Review by someone" */
+        final String[] authorTexts;
+        /* The start of the review text as displayed, ending in an ellipsis if cut short */
+        final String[] previews;
+        /* Whether the preview is shorter than the full review text */
+        final boolean[] truncated;
+        /* The number of reviews of the movie, loaded or not */
+        final int totalCount;
+
+        Reviews(String[] ids, String[] authorTexts, String[] previews, boolean[] truncated,
+                int totalCount) {
+            this.ids = ids;
+            this.authorTexts = authorTexts;
+            this.previews = previews;
+            this.truncated = truncated;
+            this.totalCount = totalCount;
+        }
+
+        int size() {
+            return ids.length;
+        }
+
+        /**
+         * Check whether there are reviews that aren't loaded yet.
+         */
+        boolean hasMore() {
+            return ids.length < totalCount;
+        }
+    }
+
+    /* The header movie, or null until it is loaded */
+    final Movie movie;
+    final Trailers trailers;
+    final Reviews reviews;
+
+    DetailRows(Movie movie, Trailers trailers, Reviews reviews) {
+        this.movie = movie;
+        this.trailers = trailers;
+        this.reviews = reviews;
+    }
+
+    /* Reads every row of a cursor with the detail projection */
+    static final RowsLoader.RowReader<DetailRows> READER = new RowsLoader.RowReader<DetailRows>() {
+        @Override
+        public DetailRows readRows(Context context, Cursor cursor) {
+            return fromCursor(context, cursor);
+        }
+    };
+
+    /**
+     * Read the movie, trailer and review rows of a cursor with the detail projection. The
+     * movie is null if its row is missing, e.g. before it is first synced.
+     */
+    static DetailRows fromCursor(Context context, Cursor cursor) {
+        /* Count the rows of each type first so each part is read straight into its arrays */
+        int trailerCount = 0;
+        int reviewCount = 0;
+        while (cursor.moveToNext()) {
+            switch (cursor.getInt(DetailActivity.INDEX_DETAIL_ROW_TYPE)) {
+                case DetailEntry.ROW_TYPE_TRAILER: {
+                    trailerCount++;
+                    break;
+                }
+                case DetailEntry.ROW_TYPE_REVIEW: {
+                    reviewCount++;
+                    break;
+                }
+            }
+        }
+
+        Movie movie = null;
+        int reviewTotalCount = reviewCount;
+
+        String[] trailerIds = new String[trailerCount];
+        String[] trailerNames = new String[trailerCount];
+        String[] trailerSiteTexts = new String[trailerCount];
+        String[] trailerKeys = new String[trailerCount];
+
+        String[] reviewIds = new String[reviewCount];
+        String[] reviewAuthorTexts = new String[reviewCount];
+        String[] reviewPreviews = new String[reviewCount];
+        boolean[] reviewTruncated = new boolean[reviewCount];
+
+        String trailerPrefix = context.getString(R.string.trailer_prefix) + " ";
+        String reviewPrefix = context.getString(R.string.review_prefix) + " ";
+
+        int trailer = 0;
+        int review = 0;
+        for (int i = 0; cursor.moveToPosition(i); i++) {
+            switch (cursor.getInt(DetailActivity.INDEX_DETAIL_ROW_TYPE)) {
+                case DetailEntry.ROW_TYPE_MOVIE: {
+                    movie = Movie.fromCursor(context, cursor);
+                    reviewTotalCount = cursor.getInt(DetailActivity.INDEX_MOVIE_REVIEW_COUNT);
+                    break;
+                }
+                case DetailEntry.ROW_TYPE_TRAILER: {
+                    trailerIds[trailer] = cursor.getString(DetailActivity.INDEX_TRAILER_ID);
+                    trailerNames[trailer] = cursor.getString(DetailActivity.INDEX_TRAILER_NAME);
+                    trailerSiteTexts[trailer] = intern(trailerPrefix +
+                            cursor.getString(DetailActivity.INDEX_TRAILER_SITE));
+                    trailerKeys[trailer] = cursor.getString(DetailActivity.INDEX_TRAILER_KEY);
+                    trailer++;
+                    break;
+                }
+                case DetailEntry.ROW_TYPE_REVIEW: {
+                    reviewIds[review] = cursor.getString(DetailActivity.INDEX_REVIEW_ID);
+                    reviewAuthorTexts[review] = intern(reviewPrefix +
+                            cursor.getString(DetailActivity.INDEX_REVIEW_AUTHOR));
+                    String preview = cursor.getString(DetailActivity.INDEX_REVIEW_PREVIEW);
+                    reviewTruncated[review] = preview != null &&
+                            cursor.getInt(DetailActivity.INDEX_REVIEW_LENGTH) > preview.length();
+                    reviewPreviews[review] = reviewTruncated[review] ?
+                            preview.concat(ELLIPSIS) : preview;
+                    review++;
+                    break;
+                }
+            }
+        }
+
+        return new DetailRows(movie,
+                new Trailers(trailerIds, trailerNames, trailerSiteTexts, trailerKeys),
+                new Reviews(reviewIds, reviewAuthorTexts, reviewPreviews, reviewTruncated,
+                        Math.max(reviewTotalCount, reviewCount)));
+    }
+
+    private int headerCount() {
+        return movie == null ? 0 : 1;
+    }
+
+    int getItemCount() {
+        return headerCount() + trailers.size() + reviews.size();
+    }
+
+    int getItemType(int position) {
+        if (position < headerCount()) {
+            return ITEM_TYPE_HEADER_DETAILS;
+        } else if (position < headerCount() + trailers.size()) {
+            return ITEM_TYPE_TRAILER;
+        } else {
+            return ITEM_TYPE_REVIEW;
+        }
+    }
+
+    /**
+     * Find the trailer index from the adapter position.
+     */
+    int trailerIndex(int position) {
+        return position - headerCount();
+    }
+
+    /**
+     * Find the review index from the adapter position.
+     */
+    int reviewIndex(int position) {
+        return position - headerCount() - trailers.size();
+    }
+
+    /**
+     * Find the adapter position from the review index.
+     */
+    int reviewPosition(int reviewIndex) {
+        return headerCount() + trailers.size() + reviewIndex;
+    }
+
+    private static boolean equal(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    /**
+     * Intern the short strings that repeat across rows and reloads, such as the site and author
+     * lines, so every row shares one copy.
+     */
+    static String intern(String string) {
+        return string == null ? null : string.intern();
+    }
+
+    /**
+     * Diffs two detail snapshots. Items are the same when they are of the same type and have
+     * the same movie id, trailer id or review id.
+     */
+    static final class DiffCallback extends DiffUtil.Callback {
+
+        private final DetailRows mOldRows;
+        private final DetailRows mNewRows;
+
+        DiffCallback(DetailRows oldRows, DetailRows newRows) {
+            mOldRows = oldRows;
+            mNewRows = newRows;
+        }
+
+        @Override
+        public int getOldListSize() {
+            return mOldRows.getItemCount();
+        }
+
+        @Override
+        public int getNewListSize() {
+            return mNewRows.getItemCount();
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+            int itemType = mOldRows.getItemType(oldItemPosition);
+            if (itemType != mNewRows.getItemType(newItemPosition)) return false;
+
+            switch (itemType) {
+                case ITEM_TYPE_HEADER_DETAILS: {
+                    return mOldRows.movie.movieId == mNewRows.movie.movieId;
+                }
+                case ITEM_TYPE_TRAILER: {
+                    return equal(mOldRows.trailers.ids[mOldRows.trailerIndex(oldItemPosition)],
+                            mNewRows.trailers.ids[mNewRows.trailerIndex(newItemPosition)]);
+                }
+                default: {
+                    return equal(mOldRows.reviews.ids[mOldRows.reviewIndex(oldItemPosition)],
+                            mNewRows.reviews.ids[mNewRows.reviewIndex(newItemPosition)]);
+                }
+            }
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+            switch (mOldRows.getItemType(oldItemPosition)) {
+                case ITEM_TYPE_HEADER_DETAILS: {
+                    return mOldRows.movie.sameContents(mNewRows.movie);
+                }
+                case ITEM_TYPE_TRAILER: {
+                    Trailers oldTrailers = mOldRows.trailers;
+                    Trailers newTrailers = mNewRows.trailers;
+                    int oldIndex = mOldRows.trailerIndex(oldItemPosition);
+                    int newIndex = mNewRows.trailerIndex(newItemPosition);
+                    return equal(oldTrailers.names[oldIndex], newTrailers.names[newIndex]) &&
+                            equal(oldTrailers.siteTexts[oldIndex], newTrailers.siteTexts[newIndex]) &&
+                            equal(oldTrailers.keys[oldIndex], newTrailers.keys[newIndex]);
+                }
+                default: {
+                    Reviews oldReviews = mOldRows.reviews;
+                    Reviews newReviews = mNewRows.reviews;
+                    int oldIndex = mOldRows.reviewIndex(oldItemPosition);
+                    int newIndex = mNewRows.reviewIndex(newItemPosition);
+                    return equal(oldReviews.authorTexts[oldIndex], newReviews.authorTexts[newIndex]) &&
+                            equal(oldReviews.previews[oldIndex], newReviews.previews[newIndex]);
+                }
+            }
+        }
+    }
+}
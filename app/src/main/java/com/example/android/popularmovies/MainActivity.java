@@ -13,6 +13,7 @@ import android.support.v7.widget.GridLayoutManager;
 import android.support.v7.widget.RecyclerView;
 import android.os.Bundle;
 import android.support.v7.preference.PreferenceManager;
+import android.util.Log;
 import android.view.Menu;
 import android.view.MenuInflater;
 import android.view.MenuItem;
@@ -29,18 +30,17 @@ public class MainActivity extends AppCompatActivity implements
         SharedPreferences.OnSharedPreferenceChangeListener,
         MovieListAdapter.MovieListAdapterOnClickHandler {
 
+    private static final String TAG = MainActivity.class.getSimpleName();
+
     /* The extra string id for movie_id - used to pass the id to the detail activity */
     public static final String MOVIE_ID_EXTRA = "movie_id_extra";
 
+    /* Only the ids of the list are loaded - the adapter pages in the rest as it scrolls */
     public static final String[] MAIN_MOVIE_PROJECTION = {
-            MovieContract.MovieEntry.COLUMN_MOVIE_ID,
-            MovieContract.MovieEntry.COLUMN_TITLE,
-            MovieContract.MovieEntry.COLUMN_POSTER_PATH
+            MovieContract.MovieEntry.COLUMN_MOVIE_ID
     };
 
     public static final int INDEX_MOVIE_ID = 0;
-    public static final int INDEX_MOVIE_TITLE = 1;
-    public static final int INDEX_MOVIE_POSTER_PATH = 2;
 
     /* Loader id for the background network task */
     private static final int MOVIE_LOADER_ID = 78;
@@ -68,6 +68,9 @@ public class MainActivity extends AppCompatActivity implements
     //private GridView mMainGridView;
     private MovieListAdapter mMovieListAdapter;
 
+    /* Warms the poster cache for the rows about to scroll into view */
+    private PosterPrefetcher mPosterPrefetcher;
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
 
@@ -91,6 +94,10 @@ public class MainActivity extends AppCompatActivity implements
 
         mRecyclerView.setAdapter(mMovieListAdapter);
 
+        mPosterPrefetcher = new PosterPrefetcher(this, mMovieListAdapter, layoutManager);
+
+        mRecyclerView.addOnScrollListener(mPosterPrefetcher);
+
         PreferenceManager.getDefaultSharedPreferences(this)
                 .registerOnSharedPreferenceChangeListener(this);
 
@@ -124,6 +131,11 @@ public class MainActivity extends AppCompatActivity implements
         super.onPause();
         GridLayoutManager layoutManager = (GridLayoutManager) mRecyclerView.getLayoutManager();
         sPosition = layoutManager.findFirstVisibleItemPosition();
+
+        mPosterPrefetcher.stop();
+
+        Log.d(TAG, "Posters already cached at bind: " +
+                Math.round(mMovieListAdapter.getPosterCacheHitRate() * 100) + "%");
     }
 
     /**
@@ -135,9 +147,6 @@ public class MainActivity extends AppCompatActivity implements
         /* Get a Uri we can use for the current sort option */
         Uri queryUri = MoviePrefUtils.queryUriForCurrentSortOption(this);
 
-        /* Make sure we have something to display - if not start the sync now */
-        MovieSyncUtils.checkDataAvailableForTarget(this, queryUri);
-
         // Put the query URL into the bundle to pass to the loader
         dBQueryBundle.putString(URI_TO_RETRIEVE_EXTRA, queryUri.toString());
 
@@ -244,12 +253,21 @@ public class MainActivity extends AppCompatActivity implements
     @Override
     public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
 
+        int count = data == null ? 0 : data.getCount();
+
+        /*
+         * Make sure we have something to display - if not start the sync now. The loader counted
+         * the movies in the background, so the check needs no query of its own. The loader
+         * reloads when the sync writes the list.
+         */
+        MovieSyncUtils.syncIfEmpty(this, ((CursorLoader) loader).getUri(), count);
+
         mLoadingIndicator.setVisibility(View.GONE);
 
-        if (data == null || data.getCount() == 0) {
+        if (count == 0) {
 
             // Nothing valid to display at this point
-            mMovieListAdapter.swapCursor(null);
+            mMovieListAdapter.swapMovieIds(null);
 
             if (MoviePrefUtils.currentSortOrder(
                     getBaseContext()).equals(getBaseContext().getString(R.string.pref_sort_favorite))) {
@@ -262,7 +280,12 @@ public class MainActivity extends AppCompatActivity implements
             return;
         }
 
-        mMovieListAdapter.swapCursor(data);
+        long[] movieIds = new long[count];
+        for (int i = 0; data.moveToPosition(i); i++) {
+            movieIds[i] = data.getLong(INDEX_MOVIE_ID);
+        }
+
+        mMovieListAdapter.swapMovieIds(movieIds);
 
         if (sPosition == RecyclerView.NO_POSITION) sPosition = 0;
 
@@ -272,7 +295,7 @@ public class MainActivity extends AppCompatActivity implements
 
     @Override
     public void onLoaderReset(Loader<Cursor> loader) {
-        mMovieListAdapter.swapCursor(null);
+        mMovieListAdapter.swapMovieIds(null);
     }
 
     /**
@@ -1,18 +1,20 @@
 package com.example.android.popularmovies;
 
 import android.content.Context;
-import android.database.Cursor;
 import android.support.annotation.NonNull;
+import android.support.v7.util.DiffUtil;
 import android.support.v7.widget.RecyclerView;
+import android.text.TextUtils;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.ImageView;
 
-import com.example.android.popularmovies.utilities.NetworkUtils;
+import com.example.android.popularmovies.utilities.PosterStore;
+import com.example.android.popularmovies.utilities.PosterUrls;
+import com.squareup.picasso.Callback;
 import com.squareup.picasso.Picasso;
-
-import java.net.URL;
+import com.squareup.picasso.RequestCreator;
 
 class MovieListAdapter extends RecyclerView.Adapter<MovieListAdapter.MovieListAdapterViewHolder> {
 
@@ -24,45 +26,172 @@ class MovieListAdapter extends RecyclerView.Adapter<MovieListAdapter.MovieListAd
         void onClick(long movieId);
     }
 
-    private Cursor mCursor;
+    /* Windowed view of the list - only the pages near the scroll position are held */
+    private final MoviePagedList mMovies;
+
+    private final BackgroundDiffer mDiffer = new BackgroundDiffer();
+
+    /* Movie db posters are 2:3, width to height */
+    private static final float POSTER_ASPECT_RATIO = 1.5f;
+
+    /* The on screen size of a grid cell, which posters are decoded to */
+    private final int mPosterWidth;
+    private final int mPosterHeight;
+
+    /* Poster binds, and those where the poster was already in the memory cache */
+    private int mPosterBindCount;
+    private int mCachedPosterBindCount;
 
     MovieListAdapter(@NonNull Context context, MovieListAdapterOnClickHandler clickHandler) {
         mContext = context;
         mClickHandler = clickHandler;
 
+        /* The grid fills the width of the screen, split evenly between the columns */
+        mPosterWidth = PosterStore.gridPosterWidth(context);
+        mPosterHeight = Math.round(mPosterWidth * POSTER_ASPECT_RATIO);
+
+        mMovies = new MoviePagedList(context.getContentResolver(),
+                new MoviePagedList.PageLoadedListener() {
+            @Override
+            public void onPageLoaded(int firstPosition, int count) {
+                notifyItemRangeChanged(firstPosition, count);
+            }
+        });
     }
 
     @Override
     public void onBindViewHolder(MovieListAdapterViewHolder holder, int position) {
 
-        mCursor.moveToPosition(position);
+        String posterPath = mMovies.getPosterPath(position);
 
-        String movieUrl = mCursor.getString(MainActivity.INDEX_MOVIE_POSTER_PATH);
-        String movieTitle = mCursor.getString(MainActivity.INDEX_MOVIE_TITLE);
+        /* The page is still loading - show the placeholder until it arrives */
+        if (!mMovies.isLoaded(position)) {
+            Picasso.with(mContext).cancelRequest(holder.mImagePoster);
+            holder.mImagePoster.setImageResource(R.color.colorPrimaryLight);
+            holder.mImagePoster.setContentDescription(null);
+            return;
+        }
 
-        // Get the actual URL of the poster image
-        URL imageURL = NetworkUtils.convertRelativeImagePathToAbsolute(
-                movieUrl);
+        /* A poster in the memory cache is set, and the callback made, before into() returns */
+        holder.mBinding = true;
+        holder.mLoadedDuringBind = false;
 
-        Picasso.with(mContext)
-                .load(imageURL.toString())
+        posterRequest(posterPath)
                 .placeholder(R.color.colorPrimaryLight)
                 .error(R.color.colorPrimaryLight)
-                .into(holder.mImagePoster);
+                .into(holder.mImagePoster, holder);
+
+        holder.mBinding = false;
+
+        mPosterBindCount++;
+        if (holder.mLoadedDuringBind) mCachedPosterBindCount++;
 
         // Provide the title for accessible navigation of the main activity
-        holder.mImagePoster.setContentDescription(movieTitle);
+        holder.mImagePoster.setContentDescription(mMovies.getTitle(position));
     }
 
     @Override
     public int getItemCount() {
-        if (mCursor == null) return 0;
-        return mCursor.getCount();
+        return mMovies.size();
+    }
+
+    /**
+     * Build the request for a poster. Download the smallest poster size covering the cell and
+     * decode it to the cell size, so the bitmap holds no more pixels than are shown. Binds and
+     * prefetches must build the same request so that a prefetched poster is a cache hit.
+     */
+    private RequestCreator posterRequest(String posterPath) {
+        return Picasso.with(mContext)
+                .load(PosterUrls.posterUrl(posterPath, mPosterWidth))
+                .resize(mPosterWidth, mPosterHeight)
+                .centerCrop();
     }
 
-    void swapCursor(Cursor newCursor) {
-        mCursor = newCursor;
-        notifyDataSetChanged();
+    /**
+     * Build the request to prefetch the poster at a position. Only posters of movies that are
+     * already loaded are prefetched, so prefetching never moves the paged list window.
+     *
+     * @param position the adapter position
+     * @return the request, or null if there is nothing to prefetch
+     */
+    RequestCreator prefetchRequest(int position) {
+        String posterPath = mMovies.peekPosterPath(position);
+        return TextUtils.isEmpty(posterPath) ? null : posterRequest(posterPath);
+    }
+
+    /**
+     * Get the share of poster binds where the poster was already in the memory cache, so was
+     * displayed straight away rather than after a placeholder.
+     *
+     * @return the hit rate between 0 and 1, or 0 if nothing has been bound
+     */
+    float getPosterCacheHitRate() {
+        return mPosterBindCount == 0 ? 0 : mCachedPosterBindCount / (float) mPosterBindCount;
+    }
+
+    /**
+     * Replace the movies of the list. The new ids are diffed against the displayed ones in the
+     * background, so a sync or favorite change only rebinds the posters that actually moved or
+     * changed.
+     *
+     * @param movieIds the movie ids of the list in rank order, or null for an empty list
+     */
+    void swapMovieIds(final long[] movieIds) {
+        final long[] newMovieIds = movieIds == null ? new long[0] : movieIds;
+
+        /* There is nothing on display to keep, so there is nothing to diff */
+        if (mMovies.size() == 0 || newMovieIds.length == 0) {
+            mDiffer.cancel();
+            mMovies.setMovieIds(newMovieIds);
+            notifyDataSetChanged();
+            return;
+        }
+
+        mDiffer.calculateDiff(new MovieIdDiffCallback(mMovies.getMovieIds(), newMovieIds),
+                new BackgroundDiffer.DiffListener() {
+            @Override
+            public void onDiffCalculated(DiffUtil.DiffResult diffResult) {
+                mMovies.setMovieIds(newMovieIds);
+                diffResult.dispatchUpdatesTo(MovieListAdapter.this);
+            }
+        });
+    }
+
+    /**
+     * Diffs two lists of movie ids. Only the ids are known when the lists are diffed, so a movie
+     * that is still on the list is kept as it is here - the paged list rebinds it once its page
+     * has reloaded if its title or poster changed, such as a movie whose details failed to
+     * fetch before.
+     */
+    static final class MovieIdDiffCallback extends DiffUtil.Callback {
+
+        private final long[] mOldMovieIds;
+        private final long[] mNewMovieIds;
+
+        MovieIdDiffCallback(long[] oldMovieIds, long[] newMovieIds) {
+            mOldMovieIds = oldMovieIds;
+            mNewMovieIds = newMovieIds;
+        }
+
+        @Override
+        public int getOldListSize() {
+            return mOldMovieIds.length;
+        }
+
+        @Override
+        public int getNewListSize() {
+            return mNewMovieIds.length;
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+            return mOldMovieIds[oldItemPosition] == mNewMovieIds[newItemPosition];
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+            return true;
+        }
     }
 
     @Override
@@ -75,17 +204,23 @@ class MovieListAdapter extends RecyclerView.Adapter<MovieListAdapter.MovieListAd
         return new MovieListAdapterViewHolder(view);
     }
 
-    class MovieListAdapterViewHolder extends RecyclerView.ViewHolder implements View.OnClickListener {
+    class MovieListAdapterViewHolder extends RecyclerView.ViewHolder implements
+            View.OnClickListener, Callback {
 
         final ImageView mImagePoster;
 
+        /* Set while the poster is being bound, to catch posters loaded from the memory cache */
+        boolean mBinding;
+        boolean mLoadedDuringBind;
+
         MovieListAdapterViewHolder(View view) {
             super(view);
 
             mImagePoster = (ImageView) view.findViewById(R.id.movie_poster_iv);
 
-            mImagePoster.setAdjustViewBounds(true);
-            mImagePoster.setScaleType(ImageView.ScaleType.FIT_XY);
+            /* Size the cell up front so placeholders take the same space as the posters */
+            mImagePoster.getLayoutParams().height = mPosterHeight;
+            mImagePoster.setScaleType(ImageView.ScaleType.CENTER_CROP);
 
             view.setOnClickListener(this);
         }
@@ -93,10 +228,19 @@ class MovieListAdapter extends RecyclerView.Adapter<MovieListAdapter.MovieListAd
         @Override
         public void onClick(View v) {
             int adapterPosition = getAdapterPosition();
-            mCursor.moveToPosition(adapterPosition);
-            long movieId = mCursor.getLong(MainActivity.INDEX_MOVIE_ID);
+            if (adapterPosition == RecyclerView.NO_POSITION) return;
+
+            long movieId = mMovies.getMovieId(adapterPosition);
 
             mClickHandler.onClick(movieId);
         }
+
+        @Override
+        public void onSuccess() {
+            if (mBinding) mLoadedDuringBind = true;
+        }
+
+        @Override
+        public void onError() {}
     }
 }
@@ -0,0 +1,345 @@
+package com.example.android.popularmovies;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.support.annotation.NonNull;
+import android.text.TextUtils;
+import android.util.LongSparseArray;
+import android.util.SparseArray;
+import android.util.SparseBooleanArray;
+
+import com.example.android.popularmovies.data.MovieContract;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * A windowed view of a movie list for the poster grid. Only the ordered movie ids of the whole
+ * list are held - the titles and posters are loaded from the movie provider a page at a time,
+ * keyed on the rank of the first movie of the page. Pages are loaded on a background thread as
+ * the grid scrolls towards them and pages far from the scroll position are evicted, so memory use
+ * stays flat however long the list is.
+ */
+class MoviePagedList {
+
+    /* Number of movies in each loaded page */
+    static final int PAGE_SIZE = 30;
+
+    /* Number of pages loaded ahead of and behind the page being displayed */
+    private static final int PREFETCH_PAGES = 1;
+
+    /* Pages further than this from the page being displayed are evicted */
+    private static final int RETAIN_PAGES = 2;
+
+    static final String[] PAGE_PROJECTION = {
+            MovieContract.MovieEntry.COLUMN_MOVIE_ID,
+            MovieContract.MovieEntry.COLUMN_TITLE,
+            MovieContract.MovieEntry.COLUMN_POSTER_PATH
+    };
+
+    private static final int INDEX_PAGE_MOVIE_ID = 0;
+    private static final int INDEX_PAGE_TITLE = 1;
+    private static final int INDEX_PAGE_POSTER_PATH = 2;
+
+    /**
+     * Notified on the main thread when a page has been loaded, for each run of positions that
+     * were displayed without their data while the page was loading, or whose movie's title or
+     * poster changed since the list's ids were last replaced.
+     */
+    interface PageLoadedListener {
+        void onPageLoaded(int firstPosition, int count);
+    }
+
+    /* The titles and poster paths of one page, by position within the page */
+    private static class Page {
+        final String[] titles;
+        final String[] posterPaths;
+
+        Page(int size) {
+            titles = new String[size];
+            posterPaths = new String[size];
+        }
+    }
+
+    /* Pages are loaded one at a time, in the order they were requested */
+    private static final ExecutorService sPageLoader =
+            Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(@NonNull final Runnable runnable) {
+            return new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }
+            }, "MoviePagedList");
+        }
+    });
+
+    private final ContentResolver mContentResolver;
+    private final PageLoadedListener mListener;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    /* The movie ids of the whole list in rank order */
+    private long[] mMovieIds = new long[0];
+
+    /* Loaded pages, by page number */
+    private final SparseArray<Page> mPages = new SparseArray<>();
+
+    /* Pages that have been requested but have not yet arrived */
+    private final SparseArray<Boolean> mPendingPages = new SparseArray<>();
+
+    /* Positions that were read while their page was loading, so have to be rebound */
+    private final SparseBooleanArray mPlaceholderPositions = new SparseBooleanArray();
+
+    /* The page the window was last moved to */
+    private int mWindowPageNumber;
+
+    /* The poster path and title each movie was loaded with before the ids were last replaced.
+     * A movie kept on the list isn't rebound then, so it is rebound if its page now differs */
+    private LongSparseArray<String[]> mPreviousContent = new LongSparseArray<>();
+
+    /* Incremented whenever the ids change so that loads for the old ids are dropped */
+    private int mGeneration;
+
+    MoviePagedList(@NonNull ContentResolver contentResolver,
+                   @NonNull PageLoadedListener listener) {
+        mContentResolver = contentResolver;
+        mListener = listener;
+    }
+
+    /**
+     * Replace the ids of the list. Every loaded page is dropped, and the pages around the window
+     * are reloaded so that movies whose title or poster changed are rebound.
+     *
+     * @param movieIds the movie ids of the list in rank order, or null for an empty list
+     */
+    void setMovieIds(long[] movieIds) {
+        mPreviousContent = new LongSparseArray<>();
+        for (int i = 0; i < mPages.size(); i++) {
+            Page page = mPages.valueAt(i);
+            int firstPosition = mPages.keyAt(i) * PAGE_SIZE;
+            for (int j = 0; j < page.titles.length; j++) {
+                mPreviousContent.put(mMovieIds[firstPosition + j],
+                        new String[]{page.posterPaths[j], page.titles[j]});
+            }
+        }
+
+        mMovieIds = movieIds == null ? new long[0] : movieIds;
+        mGeneration++;
+        mPages.clear();
+        mPendingPages.clear();
+        mPlaceholderPositions.clear();
+
+        if (mMovieIds.length == 0 || mPreviousContent.size() == 0) return;
+
+        int pageNumber = Math.min(mWindowPageNumber, (mMovieIds.length - 1) / PAGE_SIZE);
+        for (int i = Math.max(0, pageNumber - PREFETCH_PAGES);
+             i <= Math.min((mMovieIds.length - 1) / PAGE_SIZE, pageNumber + PREFETCH_PAGES); i++) {
+            requestPage(i);
+        }
+    }
+
+    int size() {
+        return mMovieIds.length;
+    }
+
+    long getMovieId(int position) {
+        return mMovieIds[position];
+    }
+
+    /**
+     * Get the movie ids of the whole list. The array must not be modified.
+     */
+    long[] getMovieIds() {
+        return mMovieIds;
+    }
+
+    /**
+     * Get the title of the movie at a position, loading its page if needed.
+     *
+     * @param position the rank of the movie
+     * @return the title, or null if the page is still loading
+     */
+    String getTitle(int position) {
+        Page page = pageFor(position);
+        if (page == null) mPlaceholderPositions.put(position, true);
+        return page == null ? null : page.titles[position % PAGE_SIZE];
+    }
+
+    /**
+     * Get the poster path of the movie at a position, loading its page if needed.
+     *
+     * @param position the rank of the movie
+     * @return the poster path, or null if the page is still loading or the movie has no poster
+     */
+    String getPosterPath(int position) {
+        Page page = pageFor(position);
+        if (page == null) mPlaceholderPositions.put(position, true);
+        return page == null ? null : page.posterPaths[position % PAGE_SIZE];
+    }
+
+    /**
+     * Get the poster path of the movie at a position if its page is already loaded, without
+     * moving the window.
+     *
+     * @param position the rank of the movie
+     * @return the poster path, or null if the page isn't loaded or the movie has no poster
+     */
+    String peekPosterPath(int position) {
+        Page page = mPages.get(position / PAGE_SIZE);
+        return page == null ? null : page.posterPaths[position % PAGE_SIZE];
+    }
+
+    /**
+     * Check whether the page holding a position has been loaded.
+     */
+    boolean isLoaded(int position) {
+        return mPages.get(position / PAGE_SIZE) != null;
+    }
+
+    /**
+     * Get the page holding a position. Accessing a position also moves the window - nearby
+     * pages are requested and distant ones evicted.
+     */
+    private Page pageFor(int position) {
+        int pageNumber = position / PAGE_SIZE;
+        int lastPageNumber = (mMovieIds.length - 1) / PAGE_SIZE;
+
+        mWindowPageNumber = pageNumber;
+
+        for (int i = Math.max(0, pageNumber - PREFETCH_PAGES);
+             i <= Math.min(lastPageNumber, pageNumber + PREFETCH_PAGES); i++) {
+            requestPage(i);
+        }
+
+        for (int i = mPages.size() - 1; i >= 0; i--) {
+            if (Math.abs(mPages.keyAt(i) - pageNumber) > RETAIN_PAGES) {
+                mPages.removeAt(i);
+            }
+        }
+
+        return mPages.get(pageNumber);
+    }
+
+    private void requestPage(final int pageNumber) {
+        if (mPages.get(pageNumber) != null || mPendingPages.get(pageNumber) != null) return;
+
+        mPendingPages.put(pageNumber, Boolean.TRUE);
+
+        final int generation = mGeneration;
+        final int firstPosition = pageNumber * PAGE_SIZE;
+        final int count = Math.min(PAGE_SIZE, mMovieIds.length - firstPosition);
+        final long[] pageMovieIds = new long[count];
+        System.arraycopy(mMovieIds, firstPosition, pageMovieIds, 0, count);
+
+        sPageLoader.execute(new Runnable() {
+            @Override
+            public void run() {
+                final Page page = loadPage(pageMovieIds);
+
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (generation != mGeneration) return;
+
+                        mPendingPages.remove(pageNumber);
+                        mPages.put(pageNumber, page);
+                        notifyStalePositions(firstPosition, page);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Notify the listener of the positions of a newly loaded page that are displayed without
+     * their data - placeholders, and movies that were loaded with a different title or poster
+     * before the ids were replaced. Positions already displaying their data are not rebound.
+     */
+    private void notifyStalePositions(int firstPosition, Page page) {
+        int count = page.titles.length;
+        int runStart = -1;
+
+        for (int position = firstPosition; position <= firstPosition + count; position++) {
+            boolean stale = position < firstPosition + count &&
+                    (mPlaceholderPositions.get(position) ||
+                            contentChanged(mMovieIds[position], page, position - firstPosition));
+
+            if (stale) {
+                mPlaceholderPositions.delete(position);
+                if (runStart < 0) runStart = position;
+            } else if (runStart >= 0) {
+                mListener.onPageLoaded(runStart, position - runStart);
+                runStart = -1;
+            }
+        }
+    }
+
+    /**
+     * Check whether a movie was loaded with a different title or poster before the ids were
+     * last replaced. Each movie is only checked once.
+     */
+    private boolean contentChanged(long movieId, Page page, int index) {
+        String[] previous = mPreviousContent.get(movieId);
+        if (previous == null) return false;
+
+        mPreviousContent.remove(movieId);
+        return !TextUtils.equals(previous[0], page.posterPaths[index]) ||
+                !TextUtils.equals(previous[1], page.titles[index]);
+    }
+
+    /**
+     * Query the provider for the movies of one page. Runs on the page loader thread.
+     *
+     * @param pageMovieIds the ids of the movies on the page in rank order
+     * @return the page - movies that are not stored are left empty
+     */
+    private Page loadPage(long[] pageMovieIds) {
+        Page page = new Page(pageMovieIds.length);
+
+        StringBuilder selection = new StringBuilder(MovieContract.MovieEntry.COLUMN_MOVIE_ID)
+                .append(" IN (");
+        String[] selectionArgs = new String[pageMovieIds.length];
+
+        for (int i = 0; i < pageMovieIds.length; i++) {
+            selection.append(i == 0 ? "?" : ",?");
+            selectionArgs[i] = String.valueOf(pageMovieIds[i]);
+        }
+        selection.append(")");
+
+        Cursor cursor = mContentResolver.query(MovieContract.MovieEntry.CONTENT_URI,
+                PAGE_PROJECTION,
+                selection.toString(),
+                selectionArgs,
+                null);
+
+        if (cursor == null) return page;
+
+        try {
+            while (cursor.moveToNext()) {
+                long movieId = cursor.getLong(INDEX_PAGE_MOVIE_ID);
+
+                /* The rows come back in key order so they are placed back in rank order */
+                for (int i = 0; i < pageMovieIds.length; i++) {
+                    if (pageMovieIds[i] == movieId) {
+                        /* Interned so a page that is evicted and reloaded shares its strings,
+                         * and the poster url cache hits on the same path */
+                        page.titles[i] = DetailRows.intern(cursor.getString(INDEX_PAGE_TITLE));
+                        page.posterPaths[i] = DetailRows.intern(
+                                cursor.getString(INDEX_PAGE_POSTER_PATH));
+                        break;
+                    }
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+
+        return page;
+    }
+}
@@ -0,0 +1,37 @@
+package com.example.android.popularmovies;
+
+import android.app.Application;
+import android.content.Context;
+
+import com.example.android.popularmovies.utilities.FavoriteCache;
+import com.example.android.popularmovies.utilities.NetworkUtils;
+import com.squareup.picasso.Picasso;
+
+/**
+ * Application wide setup, made before any activity or service starts.
+ */
+public class PopularMoviesApplication extends Application {
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+
+        /* Every Picasso.with() call shares the instance that reads the offline poster store */
+        Picasso.setSingletonInstance(new Picasso.Builder(this)
+                .downloader(new StoredPosterDownloader(this))
+                .build());
+
+        /* Load the favorites early so they are ready when the first movie is shown */
+        FavoriteCache.initialize(this);
+
+        /* The api response cache is opened in the background as it reads its journal from disk.
+         * Requests made before it is ready are simply not cached */
+        final Context applicationContext = getApplicationContext();
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                NetworkUtils.installResponseCache(applicationContext);
+            }
+        }, "ResponseCacheInstall").start();
+    }
+}
@@ -0,0 +1,127 @@
+package com.example.android.popularmovies;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+import android.support.v7.widget.GridLayoutManager;
+import android.support.v7.widget.RecyclerView;
+
+import com.squareup.picasso.Picasso;
+import com.squareup.picasso.RequestCreator;
+
+/**
+ * Warms Picasso's cache with the posters of the rows about to scroll into view, so they are
+ * usually ready by the time their cells are bound. Prefetches are made at low priority in the
+ * direction of the scroll. Picasso can't cancel a fetch, so the prefetcher tracks the window of
+ * rows it has requested and only requests the rows that newly enter it; a prefetch that leaves
+ * the window just finishes in the background. During a fling the window moves too fast for
+ * prefetching to help, so outstanding prefetches are paused and no new ones are made. Once the
+ * grid settles they are resumed and the rows ahead of where it stopped are requested.
+ */
+class PosterPrefetcher extends RecyclerView.OnScrollListener {
+
+    /* Number of rows ahead of the visible rows that are prefetched */
+    private static final int PREFETCH_ROWS = 2;
+
+    private final Picasso mPicasso;
+    private final MovieListAdapter mAdapter;
+    private final GridLayoutManager mLayoutManager;
+
+    /* Tags every prefetch, so they can be paused and resumed together */
+    private final Object mTag = new Object();
+
+    /* The adapter positions already requested, or an empty range */
+    private int mWindowStart;
+    private int mWindowEnd = -1;
+
+    private boolean mFlinging;
+
+    /* The direction of the last scroll, positive for down */
+    private int mLastDy;
+
+    PosterPrefetcher(@NonNull Context context, @NonNull MovieListAdapter adapter,
+                     @NonNull GridLayoutManager layoutManager) {
+        mPicasso = Picasso.with(context);
+        mAdapter = adapter;
+        mLayoutManager = layoutManager;
+    }
+
+    @Override
+    public void onScrollStateChanged(RecyclerView recyclerView, int newState) {
+        if (newState == RecyclerView.SCROLL_STATE_SETTLING) {
+            mFlinging = true;
+            mPicasso.pauseTag(mTag);
+        } else if (mFlinging) {
+            mFlinging = false;
+
+            /* Picasso holds a paused tag until it is resumed, so it is never left paused */
+            mPicasso.resumeTag(mTag);
+            prefetchAhead(mLastDy);
+        }
+    }
+
+    @Override
+    public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+        if (dy == 0) return;
+
+        mLastDy = dy;
+        if (mFlinging) return;
+
+        prefetchAhead(dy);
+    }
+
+    /**
+     * Prefetch the rows ahead of the visible rows in the direction of a scroll.
+     *
+     * @param dy the direction of the scroll, positive for down
+     */
+    private void prefetchAhead(int dy) {
+        if (dy == 0) return;
+
+        int rowsAhead = PREFETCH_ROWS * mLayoutManager.getSpanCount();
+        int start;
+        int end;
+
+        if (dy > 0) {
+            start = mLayoutManager.findLastVisibleItemPosition() + 1;
+            end = start + rowsAhead - 1;
+        } else {
+            end = mLayoutManager.findFirstVisibleItemPosition() - 1;
+            start = end - rowsAhead + 1;
+        }
+
+        prefetch(Math.max(0, start), Math.min(mAdapter.getItemCount() - 1, end));
+    }
+
+    /**
+     * Prefetch the posters of a window of positions, skipping the positions of the last window,
+     * which were already requested.
+     */
+    private void prefetch(int start, int end) {
+        if (start == mWindowStart && end == mWindowEnd) return;
+
+        for (int position = start; position <= end; position++) {
+            if (position >= mWindowStart && position <= mWindowEnd) continue;
+
+            RequestCreator request = mAdapter.prefetchRequest(position);
+            if (request == null) continue;
+
+            request.priority(Picasso.Priority.LOW)
+                    .tag(mTag)
+                    .fetch();
+        }
+
+        mWindowStart = start;
+        mWindowEnd = end;
+    }
+
+    /**
+     * Stop prefetching until the next scroll. Prefetches paused by a fling are resumed, as
+     * Picasso would otherwise hold them, and the window is forgotten.
+     */
+    void stop() {
+        mFlinging = false;
+        mPicasso.resumeTag(mTag);
+        mWindowStart = 0;
+        mWindowEnd = -1;
+    }
+}
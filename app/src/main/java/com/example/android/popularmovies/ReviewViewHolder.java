@@ -4,16 +4,27 @@ import android.support.v7.widget.RecyclerView;
 import android.view.View;
 import android.widget.TextView;
 
-class ReviewViewHolder extends RecyclerView.ViewHolder {
+class ReviewViewHolder extends RecyclerView.ViewHolder implements
+        View.OnClickListener{
+
+    interface ReviewClickListener {
+        void onReviewClick(int position);
+    }
 
     TextView mReviewAuthor;
     TextView mReviewContent;
 
-    ReviewViewHolder(View itemView) {
+    private ReviewClickListener mReviewClickListener;
+
+    ReviewViewHolder(View itemView, ReviewClickListener reviewClickListener) {
         super(itemView);
 
         mReviewAuthor = (TextView) itemView.findViewById(R.id.review_author_tv);
         mReviewContent = (TextView) itemView.findViewById(R.id.review_content_tv);
+
+        mReviewClickListener = reviewClickListener;
+
+        itemView.setOnClickListener(this);
     }
 
     TextView getReviewAuthor() {
@@ -22,4 +33,13 @@ class ReviewViewHolder extends RecyclerView.ViewHolder {
     TextView getReviewContent() {
         return mReviewContent;
     }
+
+    @Override
+    public void onClick(View v) {
+        int position = getAdapterPosition();
+
+        if (position != RecyclerView.NO_POSITION) {
+            mReviewClickListener.onReviewClick(position);
+        }
+    }
 }
@@ -0,0 +1,109 @@
+package com.example.android.popularmovies;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.support.annotation.NonNull;
+import android.support.v4.content.AsyncTaskLoader;
+
+/**
+ * Loads rows from the content provider and reads them into an immutable row model on the
+ * loader's background thread. The cursor is closed as soon as the rows are read, so the adapters
+ * bind from plain arrays and never touch a cursor on the main thread. Like a CursorLoader, the
+ * rows are reloaded whenever the provider notifies a change to the uri.
+ *
+ * @param <T> the type of the row model
+ */
+class RowsLoader<T> extends AsyncTaskLoader<T> {
+
+    /**
+     * Reads a row model from a cursor. Called on the loader's background thread.
+     */
+    interface RowReader<T> {
+        /**
+         * @param context the application context, for resources needed to format the rows
+         * @param cursor the query result, not yet positioned
+         * @return the row model, or null if there is nothing to show
+         */
+        T readRows(Context context, Cursor cursor);
+    }
+
+    private final Uri mUri;
+    private final String[] mProjection;
+    private final RowReader<T> mReader;
+
+    private final ForceLoadContentObserver mObserver = new ForceLoadContentObserver();
+    private boolean mObserverRegistered;
+
+    /* The last rows delivered */
+    private T mRows;
+
+    RowsLoader(@NonNull Context context, @NonNull Uri uri, @NonNull String[] projection,
+               @NonNull RowReader<T> reader) {
+        super(context);
+        mUri = uri;
+        mProjection = projection;
+        mReader = reader;
+    }
+
+    @Override
+    public T loadInBackground() {
+        Cursor cursor = getContext().getContentResolver().query(mUri, mProjection, null, null,
+                null);
+
+        if (cursor == null) return null;
+
+        try {
+            return mReader.readRows(getContext(), cursor);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Override
+    public void deliverResult(T rows) {
+        if (isReset()) return;
+
+        mRows = rows;
+
+        if (isStarted()) {
+            super.deliverResult(rows);
+        }
+    }
+
+    @Override
+    protected void onStartLoading() {
+        if (mRows != null) {
+            deliverResult(mRows);
+        }
+
+        /* The cursor is closed once read, so changes are watched on the uri instead */
+        if (!mObserverRegistered) {
+            getContext().getContentResolver().registerContentObserver(mUri, true, mObserver);
+            mObserverRegistered = true;
+        }
+
+        if (takeContentChanged() || mRows == null) {
+            forceLoad();
+        }
+    }
+
+    @Override
+    protected void onStopLoading() {
+        cancelLoad();
+    }
+
+    @Override
+    protected void onReset() {
+        super.onReset();
+
+        onStopLoading();
+
+        if (mObserverRegistered) {
+            getContext().getContentResolver().unregisterContentObserver(mObserver);
+            mObserverRegistered = false;
+        }
+
+        mRows = null;
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.android.popularmovies;
+
+import android.content.Context;
+import android.net.Uri;
+import android.support.annotation.NonNull;
+
+import com.example.android.popularmovies.utilities.PosterStore;
+import com.example.android.popularmovies.utilities.PosterUrls;
+import com.squareup.picasso.Downloader;
+import com.squareup.picasso.NetworkPolicy;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Picasso downloader that serves movie db posters from the offline poster store when they have
+ * been stored by a sync, and falls back to the network otherwise. Picasso calls the downloader on
+ * its own background threads, so the store is read off the main thread.
+ *
+ * The store holds each poster at the size of a grid cell, so it only serves requests for that
+ * size or smaller - a larger poster, such as the detail header's, comes from the network unless
+ * the network fails. Posters fetched from the network bypass the process wide HTTP response
+ * cache, which is kept for the movie db api responses, and are kept in the poster store's own
+ * bounded cache of displayed posters instead.
+ */
+class StoredPosterDownloader implements Downloader {
+
+    private static final int CONNECT_TIMEOUT_MILLIS = (int) TimeUnit.SECONDS.toMillis(15);
+    private static final int READ_TIMEOUT_MILLIS = (int) TimeUnit.SECONDS.toMillis(20);
+
+    private final Context mContext;
+
+    StoredPosterDownloader(@NonNull Context context) {
+        mContext = context.getApplicationContext();
+    }
+
+    @Override
+    public Response load(Uri uri, int networkPolicy) throws IOException {
+        String posterUrl = uri.toString();
+        String posterName = uri.getLastPathSegment();
+
+        /* The store holds each poster under its movie db poster path */
+        File storedPoster = posterName == null ? null :
+                PosterStore.find(mContext, "/" + posterName);
+
+        if (storedPoster != null &&
+                PosterStore.widthOf(storedPoster) >= PosterUrls.widthOfUrl(posterUrl)) {
+            return fileResponse(storedPoster);
+        }
+
+        File cachedPoster = PosterStore.findCached(mContext, posterUrl);
+        if (cachedPoster != null) {
+            return fileResponse(cachedPoster);
+        }
+
+        try {
+            if (NetworkPolicy.isOfflineOnly(networkPolicy)) {
+                throw new ResponseException("Poster not stored: " + uri, networkPolicy,
+                        HttpURLConnection.HTTP_GATEWAY_TIMEOUT);
+            }
+
+            return fileResponse(loadFromNetwork(posterUrl, networkPolicy));
+        } catch (IOException e) {
+            /* A smaller stored poster is better than none when offline */
+            if (storedPoster != null) return fileResponse(storedPoster);
+            throw e;
+        }
+    }
+
+    private static Response fileResponse(File poster) throws IOException {
+        return new Response(new FileInputStream(poster), true, poster.length());
+    }
+
+    /**
+     * Fetch a poster from the network without the HTTP response cache, into the cache of
+     * displayed posters.
+     *
+     * @return the cached poster file
+     */
+    private File loadFromNetwork(String posterUrl, int networkPolicy) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(posterUrl).openConnection();
+        connection.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+        connection.setReadTimeout(READ_TIMEOUT_MILLIS);
+        connection.setUseCaches(false);
+
+        try {
+            int responseCode = connection.getResponseCode();
+            if (responseCode >= HttpURLConnection.HTTP_MULT_CHOICE) {
+                throw new ResponseException(responseCode + " " + connection.getResponseMessage(),
+                        networkPolicy, responseCode);
+            }
+
+            return PosterStore.cache(mContext, posterUrl, connection.getInputStream());
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        /* Nothing is held between downloads */
+    }
+}
@@ -0,0 +1,40 @@
+package com.example.android.popularmovies.data;
+
+/**
+ * Connection level tuning applied to the movie database each time it is opened.
+ */
+class DatabaseTuning {
+
+    /* Values for the SQLite synchronous pragma */
+    static final String SYNCHRONOUS_OFF = "OFF";
+    static final String SYNCHRONOUS_NORMAL = "NORMAL";
+    static final String SYNCHRONOUS_FULL = "FULL";
+
+    /*
+     * The default profile. Write ahead logging lets the loaders keep reading while a sync is
+     * writing, and with WAL the NORMAL synchronous level is still safe against corruption -
+     * at worst the last sync is lost on power failure and is simply run again. The writer's
+     * cache is sized to hold the dirty pages of a whole sync transaction, which would
+     * otherwise spill to the log before the commit.
+     */
+    static final DatabaseTuning DEFAULT = new DatabaseTuning(true, 4096, SYNCHRONOUS_NORMAL);
+
+    /* true to open the database in write ahead logging mode */
+    final boolean writeAheadLogging;
+
+    /*
+     * The page cache size in KiB of the primary connection, which makes every write. The
+     * framework opens the WAL reader connections itself without running onConfigure, so they
+     * keep SQLite's default cache
+     */
+    final int writerCacheSizeKib;
+
+    /* The synchronous level, one of the SYNCHRONOUS_ values */
+    final String synchronousMode;
+
+    DatabaseTuning(boolean writeAheadLogging, int writerCacheSizeKib, String synchronousMode) {
+        this.writeAheadLogging = writeAheadLogging;
+        this.writerCacheSizeKib = writerCacheSizeKib;
+        this.synchronousMode = synchronousMode;
+    }
+}
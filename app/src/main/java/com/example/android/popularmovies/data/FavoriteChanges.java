@@ -0,0 +1,73 @@
+package com.example.android.popularmovies.data;
+
+import android.content.ContentResolver;
+import android.os.Bundle;
+import android.support.annotation.NonNull;
+
+/**
+ * A set of favorite additions and removals that are committed to the provider together, in a
+ * single transaction with a single change notification.
+ */
+public class FavoriteChanges {
+
+    /* Bundle keys used to pass the changes to the provider */
+    private static final String KEY_ADDED_MOVIE_IDS = "favorite_changes_added";
+    private static final String KEY_REMOVED_MOVIE_IDS = "favorite_changes_removed";
+
+    /* Result key for the number of favorite rows changed by a commit */
+    static final String KEY_ROW_COUNT = "favorite_changes_row_count";
+
+    private final long[] mAddedMovieIds;
+    private final long[] mRemovedMovieIds;
+
+    /**
+     * @param addedMovieIds the movies to make favorites
+     * @param removedMovieIds the movies to stop being favorites
+     */
+    public FavoriteChanges(@NonNull long[] addedMovieIds, @NonNull long[] removedMovieIds) {
+        mAddedMovieIds = addedMovieIds;
+        mRemovedMovieIds = removedMovieIds;
+    }
+
+    long[] getAddedMovieIds() {
+        return mAddedMovieIds;
+    }
+
+    long[] getRemovedMovieIds() {
+        return mRemovedMovieIds;
+    }
+
+    /**
+     * Commit the changes to the movie provider in one transaction. Does disk IO, so must not be
+     * called on the main thread.
+     *
+     * @param contentResolver the resolver to reach the provider with
+     * @return the number of favorite rows added or removed
+     */
+    public int commit(@NonNull ContentResolver contentResolver) {
+        Bundle result = contentResolver.call(MovieContract.BASE_CONTENT_URI,
+                MovieContract.METHOD_COMMIT_FAVORITE_CHANGES,
+                null,
+                toBundle());
+
+        return result == null ? 0 : result.getInt(KEY_ROW_COUNT);
+    }
+
+    private Bundle toBundle() {
+        Bundle bundle = new Bundle();
+        bundle.putLongArray(KEY_ADDED_MOVIE_IDS, mAddedMovieIds);
+        bundle.putLongArray(KEY_REMOVED_MOVIE_IDS, mRemovedMovieIds);
+        return bundle;
+    }
+
+    /**
+     * Rebuild the changes from the Bundle passed to the provider.
+     */
+    static FavoriteChanges fromBundle(@NonNull Bundle bundle) {
+        long[] addedMovieIds = bundle.getLongArray(KEY_ADDED_MOVIE_IDS);
+        long[] removedMovieIds = bundle.getLongArray(KEY_REMOVED_MOVIE_IDS);
+
+        return new FavoriteChanges(addedMovieIds == null ? new long[0] : addedMovieIds,
+                removedMovieIds == null ? new long[0] : removedMovieIds);
+    }
+}
@@ -16,7 +16,7 @@ public class MovieContract {
     /*
      * Defines the base URI for interacting with the content provider
      */
-    private static final Uri BASE_CONTENT_URI = Uri.parse("content://" + CONTENT_AUTHORITY);
+    static final Uri BASE_CONTENT_URI = Uri.parse("content://" + CONTENT_AUTHORITY);
 
     /*
      * We define five main paths which are associated with the three tables defined
@@ -26,6 +26,8 @@ public class MovieContract {
      * PATH_REVIEWS - provides access to the reviews table
      * PATH_FAVORITES - provides access to the favorites table
      * PATH_TOP_RATED - provides access to the table of top rated movies
+     * PATH_DETAIL - provides a movie with its trailers, reviews and favorite flag in one query
+     * PATH_SYNC_STATE - provides access to the sync state of each sync target
      *
      */
     static final String PATH_MOVIES = "movies";
@@ -34,10 +36,28 @@ public class MovieContract {
     static final String PATH_FAVORITE = "favorites";
     static final String PATH_TRAILERS = "trailers";
     static final String PATH_REVIEWS = "reviews";
+    static final String PATH_DETAIL = "detail";
+    static final String PATH_CONTENT = "content";
+    static final String PATH_SYNC_STATE = "sync_state";
+
+    /*
+     * Provider call method that commits a whole sync batch - movies, reviews, trailers and the
+     * target list - in a single transaction. The argument is the Uri of the target list.
+     */
+    static final String METHOD_COMMIT_SYNC_BATCH = "commit_sync_batch";
+
+    /*
+     * Provider call method that commits a set of favorite additions and removals in a single
+     * transaction.
+     */
+    static final String METHOD_COMMIT_FAVORITE_CHANGES = "commit_favorite_changes";
 
     /* We require this column name is the same in every table */
     public static final String GLOBAL_COLUMN_MOVIE_ID = "movie_id";
 
+    /* The position of a movie in a ranked list table, starting at 0 */
+    public static final String GLOBAL_COLUMN_LIST_RANK = "list_rank";
+
     /**
      * Class that defines the table for movies
      */
@@ -72,6 +92,9 @@ public class MovieContract {
         /* The movie runtime in minutes */
         public static final String COLUMN_RUNTIME = "runtime";
 
+        /* When the movie details were last fetched - stored as milliseconds since epoch */
+        public static final String COLUMN_LAST_SYNCED = "last_synced";
+
         /**
          * Builds a Uri to for use in queries that involve a single movie identified by the movie id.
          * We use the same id as the moviedb for consistency.
@@ -98,6 +121,9 @@ public class MovieContract {
 
         /* The movies db id for the movie - unique */
         static final String COLUMN_MOVIE_ID = GLOBAL_COLUMN_MOVIE_ID;
+
+        /* The rank of the movie in the whole list */
+        static final String COLUMN_LIST_RANK = GLOBAL_COLUMN_LIST_RANK;
     }
 
     public static final class PopularEntry implements BaseColumns{
@@ -112,6 +138,9 @@ public class MovieContract {
 
         /* The movies db id for the movie - unique */
         static final String COLUMN_MOVIE_ID = GLOBAL_COLUMN_MOVIE_ID;
+
+        /* The rank of the movie in the whole list */
+        static final String COLUMN_LIST_RANK = GLOBAL_COLUMN_LIST_RANK;
     }
 
     public static final class FavoriteEntry implements BaseColumns{
@@ -223,5 +252,113 @@ public class MovieContract {
                     .appendPath(Long.toString(id))
                     .build();
         }
+
+        /**
+         * Builds a Uri to query a single review, including its full text, by its review id.
+         * *
+         * @param reviewId the movie db id of the review
+         * @return Uri to query the review
+         */
+        public static Uri buildReviewContentUriWithReviewId(String reviewId) {
+            return CONTENT_URI.buildUpon()
+                    .appendPath(PATH_CONTENT)
+                    .appendPath(reviewId)
+                    .build();
+        }
+    }
+
+    /**
+     * Class that defines the composite detail query. A single query returns the movie row,
+     * followed by its trailer rows and then its review rows, all read in one statement so the
+     * parts are always consistent with each other. Every row has every column; the row type
+     * says which group of columns is set, the others are null.
+     *
+     * Reviews can be tens of kilobytes, so the review rows only hold a preview of the review
+     * text, and only a page of the reviews is returned. The movie row holds the total number of
+     * reviews so the next page can be asked for, and the full text of a review is queried on
+     * its own when it is wanted.
+     *
+     * The Uri is below the movies Uri, so the change notification of a sync reaches it.
+     */
+    public static final class DetailEntry {
+
+        /* The base URI for the detail query */
+        public static final Uri CONTENT_URI = BASE_CONTENT_URI.buildUpon()
+                .appendPath(PATH_MOVIES)
+                .appendPath(PATH_DETAIL)
+                .build();
+
+        /* The type of the row - one of the ROW_TYPE values */
+        public static final String COLUMN_ROW_TYPE = "row_type";
+
+        /* Set on the movie row - 1 if the movie is a favorite, else 0 */
+        public static final String COLUMN_IS_FAVORITE = "is_favorite";
+
+        /* Set on the movie row - the number of reviews of the movie, whether returned or not */
+        public static final String COLUMN_REVIEW_COUNT = "review_count";
+
+        /* Set on the review rows - the start of the review text, at most the preview length */
+        public static final String COLUMN_REVIEW_PREVIEW = "review_preview";
+
+        /* Set on the review rows - the length of the full review text in characters */
+        public static final String COLUMN_REVIEW_LENGTH = "review_length";
+
+        /* Query parameter giving the most review rows to return */
+        static final String QUERY_REVIEW_LIMIT = "review_limit";
+
+        /* The most characters of a review text returned as its preview */
+        public static final int REVIEW_PREVIEW_LENGTH = 500;
+
+        /* The number of review rows returned when no review limit is given */
+        public static final int REVIEW_PAGE_SIZE = 20;
+
+        /* Row types, in the order the rows are returned */
+        public static final int ROW_TYPE_MOVIE = 0;
+        public static final int ROW_TYPE_TRAILER = 1;
+        public static final int ROW_TYPE_REVIEW = 2;
+
+        /**
+         * Builds a Uri to query the movie, trailer and review rows of a movie together.
+         * *
+         * @param id Movie id of the individual movie
+         * @param reviewLimit the most review rows to return
+         * @return Uri to query the details of the movie
+         */
+        public static Uri buildDetailUriWithId(long id, int reviewLimit) {
+            return CONTENT_URI.buildUpon()
+                    .appendPath(Long.toString(id))
+                    .appendQueryParameter(QUERY_REVIEW_LIMIT, Integer.toString(reviewLimit))
+                    .build();
+        }
+    }
+
+    /**
+     * Class that defines the table of sync state - one row for each sync target, recording how
+     * its syncs have gone so the next sync can be scheduled to suit the target.
+     */
+    public static final class SyncStateEntry implements BaseColumns {
+
+        /* The base URI for the sync state table */
+        public static final Uri CONTENT_URI = BASE_CONTENT_URI.buildUpon()
+                .appendPath(PATH_SYNC_STATE)
+                .build();
+
+        /* The table name as used in the database itself */
+        static final String TABLE_NAME = "sync_state";
+
+        /* The provider Uri of the target list - unique */
+        public static final String COLUMN_TARGET = "target";
+
+        /* When the target last synced successfully, in milliseconds - 0 if it never has */
+        public static final String COLUMN_LAST_SUCCESS = "last_success";
+
+        /* When a successful sync last found the target list changed, in milliseconds */
+        public static final String COLUMN_LAST_CHANGE = "last_change";
+
+        /* Hash of the movie ids of the target list the last successful sync fetched */
+        public static final String COLUMN_RESPONSE_HASH = "response_hash";
+
+        /* The number of syncs that have failed since the last successful sync */
+        public static final String COLUMN_FAILURE_COUNT = "failure_count";
     }
 }
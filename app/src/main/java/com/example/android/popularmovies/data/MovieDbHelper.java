@@ -1,8 +1,10 @@
 package com.example.android.popularmovies.data;
 
 import android.content.Context;
+import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.provider.BaseColumns;
 
 import com.example.android.popularmovies.data.MovieContract.*;
 
@@ -16,11 +18,81 @@ class MovieDbHelper extends SQLiteOpenHelper {
      */
     private static final String DATABASE_FILE_NAME = "movie.db";
 
-    /* Current version of the database */
-    private static final int DATABASE_VERSION = 1;
+    /*
+     * Current version of the database. Each version after the first has a migration step in
+     * migrateToVersion - new databases are created at version 1 and then migrated up.
+     */
+    static final int DATABASE_VERSION = 5;
+
+    /* Indexes added in version 2 */
+    private static final String INDEX_REVIEW_MOVIE_ID = "reviews_movie_id_index";
+    private static final String INDEX_TRAILER_MOVIE_ID = "trailers_movie_id_index";
+    private static final String INDEX_POPULAR_MOVIE_ID = "popular_movie_id_index";
+    private static final String INDEX_TOP_RATED_MOVIE_ID = "top_rated_movie_id_index";
+    private static final String INDEX_FAVORITE_MOVIE_ID = "favorite_movie_id_index";
+
+    /* Indexes added in version 4 */
+    private static final String INDEX_POPULAR_LIST_RANK = "popular_list_rank_index";
+    private static final String INDEX_TOP_RATED_LIST_RANK = "top_rated_list_rank_index";
+
+    private final DatabaseTuning mTuning;
 
     MovieDbHelper(Context context) {
-        super(context, DATABASE_FILE_NAME, null, DATABASE_VERSION);
+        this(context, DATABASE_FILE_NAME, DatabaseTuning.DEFAULT);
+    }
+
+    /**
+     * Create a helper for a database file with a specific tuning profile.
+     *
+     * @param context the context to use
+     * @param name the database file name, or null for an in memory database
+     * @param tuning the tuning applied whenever the database is opened
+     */
+    MovieDbHelper(Context context, String name, DatabaseTuning tuning) {
+        super(context, name, null, DATABASE_VERSION);
+        mTuning = tuning;
+        setWriteAheadLoggingEnabled(tuning.writeAheadLogging);
+    }
+
+    /**
+     * Apply the tuning profile when the database is opened. This runs on the primary connection
+     * only, so the pragmas tune the writer - the synchronous level only matters for writes, and
+     * the cache size is the writer's.
+     *
+     * @param database the database being configured
+     */
+    @Override
+    public void onConfigure(SQLiteDatabase database) {
+        /* A negative cache size is in KiB rather than pages */
+        database.execSQL("PRAGMA cache_size = -" + mTuning.writerCacheSizeKib);
+        database.execSQL("PRAGMA synchronous = " + mTuning.synchronousMode);
+    }
+
+    /**
+     * Checkpoint the write ahead log back into the database file and let SQLite refresh the
+     * statistics the query planner uses. Intended to be run periodically after syncs.
+     *
+     * @param database the writable database
+     */
+    void runMaintenance(SQLiteDatabase database) {
+        if (mTuning.writeAheadLogging) {
+            runPragma(database, "PRAGMA wal_checkpoint(TRUNCATE)");
+        }
+
+        /* Older SQLite versions ignore unknown pragmas so this is safe on every device */
+        runPragma(database, "PRAGMA optimize");
+    }
+
+    /**
+     * Run a pragma that may return a result row, which execSQL does not allow.
+     */
+    private static void runPragma(SQLiteDatabase database, String pragma) {
+        Cursor cursor = database.rawQuery(pragma, null);
+        try {
+            cursor.moveToFirst();
+        } finally {
+            cursor.close();
+        }
     }
 
     /**
@@ -141,11 +213,33 @@ class MovieDbHelper extends SQLiteOpenHelper {
     }
 
     /**
-     * Build the database - called if it doesn't exist already.
-     * @param database the database being created
+     * Method that generates the sync state table, added in version 5.
+     *
+     * @param database the database to create the sync state table in
      */
-    @Override
-    public void onCreate(SQLiteDatabase database) {
+    private void createSyncStateTable(SQLiteDatabase database) {
+        final String SQL_CREATE_SYNC_STATE_TABLE =
+
+                "CREATE TABLE " + SyncStateEntry.TABLE_NAME + " (" +
+                        SyncStateEntry._ID                  + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                        SyncStateEntry.COLUMN_TARGET        + " STRING NOT NULL, " +
+                        SyncStateEntry.COLUMN_LAST_SUCCESS  + " INTEGER NOT NULL DEFAULT 0, " +
+                        SyncStateEntry.COLUMN_LAST_CHANGE   + " INTEGER NOT NULL DEFAULT 0, " +
+                        SyncStateEntry.COLUMN_RESPONSE_HASH + " INTEGER NOT NULL DEFAULT 0, " +
+                        SyncStateEntry.COLUMN_FAILURE_COUNT + " INTEGER NOT NULL DEFAULT 0, " +
+                        " UNIQUE (" + SyncStateEntry.COLUMN_TARGET + ") ON CONFLICT REPLACE" +
+                        ");";
+
+        database.execSQL(SQL_CREATE_SYNC_STATE_TABLE);
+    }
+
+    /**
+     * Create the version 1 schema. Every later change is applied on top of this by the migration
+     * steps so new and upgraded databases always end up with the same schema.
+     *
+     * @param database the database to create the tables in
+     */
+    void createVersion1Schema(SQLiteDatabase database) {
         createMovieTable(database);
         createReviewTable(database);
         createTrailersTable(database);
@@ -155,22 +249,119 @@ class MovieDbHelper extends SQLiteOpenHelper {
     }
 
     /**
-     * Upgrade the database. The approach to upgrade the database here is to destroy everything and
-     * start over.
+     * Build the database - called if it doesn't exist already.
+     * @param database the database being created
+     */
+    @Override
+    public void onCreate(SQLiteDatabase database) {
+        createVersion1Schema(database);
+        migrate(database, 1, DATABASE_VERSION);
+    }
+
+    /**
+     * Upgrade the database by applying each migration step in turn, so user data such as
+     * favorites is kept.
      *
-     * @param datebase the database being upgraded
+     * @param database the database being upgraded
      * @param oldVersion the old version number
      * @param newVersion the new version number
      */
     @Override
-    public void onUpgrade(SQLiteDatabase datebase, int oldVersion, int newVersion) {
-        datebase.execSQL("DROP TABLE IF EXISTS " + MovieEntry.TABLE_NAME);
-        datebase.execSQL("DROP TABLE IF EXISTS " + ReviewEntry.TABLE_NAME);
-        datebase.execSQL("DROP TABLE IF EXISTS " + TrailerEntry.TABLE_NAME);
-        datebase.execSQL("DROP TABLE IF EXISTS " + FavoriteEntry.TABLE_NAME);
-        datebase.execSQL("DROP TABLE IF EXISTS " + PopularEntry.TABLE_NAME);
-        datebase.execSQL("DROP TABLE IF EXISTS " + TopRatedEntry.TABLE_NAME);
-
-        onCreate(datebase);
+    public void onUpgrade(SQLiteDatabase database, int oldVersion, int newVersion) {
+        migrate(database, oldVersion, newVersion);
+    }
+
+    /**
+     * Apply the migration steps after the old version up to and including the new version.
+     *
+     * @param database the database to migrate
+     * @param oldVersion the version the database is currently at
+     * @param newVersion the version to migrate to
+     */
+    private void migrate(SQLiteDatabase database, int oldVersion, int newVersion) {
+        for (int version = oldVersion + 1; version <= newVersion; version++) {
+            migrateToVersion(database, version);
+        }
+    }
+
+    /**
+     * Apply the single migration step that brings the database to a version.
+     *
+     * @param database the database to migrate
+     * @param version the version the step migrates to
+     */
+    private void migrateToVersion(SQLiteDatabase database, int version) {
+        switch (version) {
+            case 2: {
+                /* Index every movie_id lookup and join column */
+                createIndex(database, INDEX_REVIEW_MOVIE_ID, ReviewEntry.TABLE_NAME,
+                        ReviewEntry.COLUMN_MOVIE_ID, false);
+                createIndex(database, INDEX_TRAILER_MOVIE_ID, TrailerEntry.TABLE_NAME,
+                        TrailerEntry.COLUMN_MOVIE_ID, false);
+                createIndex(database, INDEX_POPULAR_MOVIE_ID, PopularEntry.TABLE_NAME,
+                        PopularEntry.COLUMN_MOVIE_ID, false);
+                createIndex(database, INDEX_TOP_RATED_MOVIE_ID, TopRatedEntry.TABLE_NAME,
+                        TopRatedEntry.COLUMN_MOVIE_ID, false);
+
+                /* A movie can only be a favorite once - drop any duplicates before enforcing it */
+                database.execSQL("DELETE FROM " + FavoriteEntry.TABLE_NAME +
+                        " WHERE " + FavoriteEntry._ID + " NOT IN (SELECT MIN(" +
+                        FavoriteEntry._ID + ") FROM " + FavoriteEntry.TABLE_NAME +
+                        " GROUP BY " + FavoriteEntry.COLUMN_MOVIE_ID + ")");
+                createIndex(database, INDEX_FAVORITE_MOVIE_ID, FavoriteEntry.TABLE_NAME,
+                        FavoriteEntry.COLUMN_MOVIE_ID, true);
+                break;
+            }
+            case 3: {
+                /* Existing movies have never been synced so are all refetched on the next sync */
+                database.execSQL("ALTER TABLE " + MovieEntry.TABLE_NAME + " ADD COLUMN " +
+                        MovieEntry.COLUMN_LAST_SYNCED + " INTEGER NOT NULL DEFAULT 0");
+                break;
+            }
+            case 4: {
+                /* Lists are read in rank order - existing rows were inserted in rank order */
+                addListRankColumn(database, PopularEntry.TABLE_NAME, INDEX_POPULAR_LIST_RANK);
+                addListRankColumn(database, TopRatedEntry.TABLE_NAME, INDEX_TOP_RATED_LIST_RANK);
+                break;
+            }
+            case 5: {
+                /* Targets without a row have never synced, so are scheduled to sync soon */
+                createSyncStateTable(database);
+                break;
+            }
+            default: {
+                throw new IllegalStateException("No migration to database version " + version);
+            }
+        }
+    }
+
+    /**
+     * Add an indexed rank column to a list table, ranking any existing rows by insertion order.
+     *
+     * @param database the database to migrate
+     * @param table the list table
+     * @param indexName the name of the rank index
+     */
+    private void addListRankColumn(SQLiteDatabase database, String table, String indexName) {
+        database.execSQL("ALTER TABLE " + table + " ADD COLUMN " +
+                MovieContract.GLOBAL_COLUMN_LIST_RANK + " INTEGER NOT NULL DEFAULT 0");
+        database.execSQL("UPDATE " + table + " SET " + MovieContract.GLOBAL_COLUMN_LIST_RANK +
+                " = " + BaseColumns._ID);
+        createIndex(database, indexName, table, MovieContract.GLOBAL_COLUMN_LIST_RANK, false);
+    }
+
+    /**
+     * Create an index on a single column.
+     *
+     * @param database the database to create the index in
+     * @param indexName the name of the index
+     * @param table the table to index
+     * @param column the column to index
+     * @param unique true if the index should enforce unique values
+     */
+    private void createIndex(SQLiteDatabase database, String indexName, String table,
+                             String column, boolean unique) {
+        database.execSQL("CREATE " + (unique ? "UNIQUE " : "") + "INDEX IF NOT EXISTS " +
+                indexName + " ON " + table + " (" + column + ");");
     }
 }
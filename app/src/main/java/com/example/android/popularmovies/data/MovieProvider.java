@@ -6,11 +6,15 @@ import android.content.UriMatcher;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.net.Uri;
+import android.os.Bundle;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
+import android.text.TextUtils;
 
 import com.example.android.popularmovies.data.MovieContract.*;
 
+import java.util.concurrent.TimeUnit;
+
 /*
  * Defines a ContentProvider for the local movie database. Only the methods required
  * for the operation of the application are defined.
@@ -19,6 +23,7 @@ public class MovieProvider extends ContentProvider {
 
     public static final int CODE_MOVIE = 100;
     public static final int CODE_MOVIE_WITH_MOVIE_ID = 101;
+    public static final int CODE_MOVIE_DETAIL_WITH_MOVIE_ID = 102;
     public static final int CODE_MOVIE_TOP_RATED = 110;
     public static final int CODE_MOVIE_POPULAR = 121;
 
@@ -27,26 +32,52 @@ public class MovieProvider extends ContentProvider {
 
     public static final int CODE_REVIEW = 200;
     public static final int CODE_REVIEW_WITH_MOVIE_ID = 201;
+    public static final int CODE_REVIEW_CONTENT_WITH_REVIEW_ID = 202;
 
     public static final int CODE_TRAILER = 300;
     public static final int CODE_TRAILER_WITH_MOVIE_ID = 301;
 
+    public static final int CODE_SYNC_STATE = 400;
+
+    /* Minimum time between database maintenance runs */
+    private static final long MAINTENANCE_INTERVAL_MILLIS = TimeUnit.HOURS.toMillis(12);
+
     private static UriMatcher sUriMatcher = buildUriMatcher();
     private MovieDbHelper mDbHelper;
 
+    /* When the database maintenance last ran - 0 if not yet run by this process */
+    private long mLastMaintenanceMillis;
+
     /**
-     * Make an raw sql query for a LEFT JOIN on the movies table.
+     * Make an raw sql query for a LEFT JOIN on the movies table, ordered by a column of the
+     * from table.
      *
+     * @param projection movie columns to select, or null for every column. The movie id is
+     *                   always taken from the from table so it is set even for missing movies.
      * @param from table to select query results from
      * @param onTable2 table of second ON column that should be equal
      * @param onColumn2 column of the second ON
+     * @param orderByColumn column of the from table to order by, or null for no order
      * @return the sql query for the join to the movie table
      */
-    private static String makeMovieTableJoin(String from, String onTable2, String onColumn2){
+    static String makeMovieTableJoin(String[] projection, String from, String onTable2,
+                                     String onColumn2, String orderByColumn){
+
+        String columns = MovieEntry.TABLE_NAME.concat(".*");
+
+        if (projection != null) {
+            StringBuilder qualifiedColumns = new StringBuilder();
+            for (String column : projection) {
+                if (qualifiedColumns.length() > 0) qualifiedColumns.append(", ");
+                String table = MovieContract.GLOBAL_COLUMN_MOVIE_ID.equals(column) ?
+                        from : MovieEntry.TABLE_NAME;
+                qualifiedColumns.append(table).append('.').append(column);
+            }
+            columns = qualifiedColumns.toString();
+        }
 
-        return new String().concat("SELECT ")
-                .concat(MovieEntry.TABLE_NAME)
-                .concat(".*")
+        String query = new String().concat("SELECT ")
+                .concat(columns)
                 .concat(" FROM ")
                 .concat(from)
                 .concat(" LEFT JOIN ")
@@ -55,6 +86,89 @@ public class MovieProvider extends ContentProvider {
                 .concat(MovieEntry.TABLE_NAME).concat(".").concat(MovieEntry.COLUMN_MOVIE_ID)
                 .concat(" = ")
                 .concat(onTable2).concat(".").concat(onColumn2);
+
+        if (orderByColumn != null) {
+            query = query.concat(" ORDER BY ").concat(from).concat(".").concat(orderByColumn);
+        }
+
+        return query;
+    }
+
+    /**
+     * Make the raw sql query for the detail of a movie: the movie row, its trailer rows and its
+     * review rows as a single UNION ALL statement, so the whole result is read from one
+     * snapshot of the database. The only argument is the movie id, bound once as ?1.
+     *
+     * The review rows hold a preview of the review text cut short in sql, so long reviews
+     * never fill the cursor window.
+     *
+     * @param projection detail columns to select, or null for every column
+     * @param reviewLimit the most review rows to return, the first in insert order
+     * @return the sql query for the movie detail
+     */
+    static String makeMovieDetailQuery(String[] projection, int reviewLimit) {
+
+        String columns = projection == null ? "*" : TextUtils.join(", ", projection);
+
+        /* Orders the rows within their type - the trailer and review rows in insert order */
+        final String rowOrder = "row_order";
+
+        return "SELECT " + columns + " FROM (" +
+                "SELECT " +
+                DetailEntry.ROW_TYPE_MOVIE + " AS " + DetailEntry.COLUMN_ROW_TYPE + ", " +
+                "0 AS " + rowOrder + ", " +
+                MovieEntry.COLUMN_MOVIE_ID + ", " +
+                MovieEntry.COLUMN_TITLE + ", " +
+                MovieEntry.COLUMN_POSTER_PATH + ", " +
+                MovieEntry.COLUMN_RELEASE_DATE + ", " +
+                MovieEntry.COLUMN_OVERVIEW + ", " +
+                MovieEntry.COLUMN_RUNTIME + ", " +
+                MovieEntry.COLUMN_AVERAGE_RATING + ", " +
+                "EXISTS (SELECT 1 FROM " + FavoriteEntry.TABLE_NAME +
+                " WHERE " + FavoriteEntry.COLUMN_MOVIE_ID + " = ?1) AS " +
+                DetailEntry.COLUMN_IS_FAVORITE + ", " +
+                "(SELECT COUNT(*) FROM " + ReviewEntry.TABLE_NAME +
+                " WHERE " + ReviewEntry.COLUMN_MOVIE_ID + " = ?1) AS " +
+                DetailEntry.COLUMN_REVIEW_COUNT + ", " +
+                "NULL AS " + TrailerEntry.COLUMN_TRAILER_ID + ", " +
+                "NULL AS " + TrailerEntry.COLUMN_TRAILER_NAME + ", " +
+                "NULL AS " + TrailerEntry.COLUMN_TRAILER_SITE + ", " +
+                "NULL AS " + TrailerEntry.COLUMN_TRAILER_KEY + ", " +
+                "NULL AS " + ReviewEntry.COLUMN_REVIEW_ID + ", " +
+                "NULL AS " + ReviewEntry.COLUMN_REVIEW_AUTHOR + ", " +
+                "NULL AS " + DetailEntry.COLUMN_REVIEW_PREVIEW + ", " +
+                "NULL AS " + DetailEntry.COLUMN_REVIEW_LENGTH +
+                " FROM " + MovieEntry.TABLE_NAME +
+                " WHERE " + MovieEntry.COLUMN_MOVIE_ID + " = ?1" +
+                " UNION ALL " +
+                "SELECT " + DetailEntry.ROW_TYPE_TRAILER + ", " + TrailerEntry._ID + ", " +
+                TrailerEntry.COLUMN_MOVIE_ID + ", " +
+                "NULL, NULL, NULL, NULL, NULL, NULL, NULL, NULL, " +
+                TrailerEntry.COLUMN_TRAILER_ID + ", " +
+                TrailerEntry.COLUMN_TRAILER_NAME + ", " +
+                TrailerEntry.COLUMN_TRAILER_SITE + ", " +
+                TrailerEntry.COLUMN_TRAILER_KEY + ", " +
+                "NULL, NULL, NULL, NULL" +
+                " FROM " + TrailerEntry.TABLE_NAME +
+                " WHERE " + TrailerEntry.COLUMN_MOVIE_ID + " = ?1" +
+                " UNION ALL " +
+                /* A compound select can only be limited as a whole, so the page of reviews is
+                 * limited in a subquery */
+                "SELECT * FROM (" +
+                "SELECT " + DetailEntry.ROW_TYPE_REVIEW + ", " + ReviewEntry._ID + ", " +
+                ReviewEntry.COLUMN_MOVIE_ID + ", " +
+                "NULL, NULL, NULL, NULL, NULL, NULL, NULL, NULL, " +
+                "NULL, NULL, NULL, NULL, " +
+                ReviewEntry.COLUMN_REVIEW_ID + ", " +
+                ReviewEntry.COLUMN_REVIEW_AUTHOR + ", " +
+                "substr(" + ReviewEntry.COLUMN_REVIEW_CONTENT + ", 1, " +
+                DetailEntry.REVIEW_PREVIEW_LENGTH + "), " +
+                "length(" + ReviewEntry.COLUMN_REVIEW_CONTENT + ")" +
+                " FROM " + ReviewEntry.TABLE_NAME +
+                " WHERE " + ReviewEntry.COLUMN_MOVIE_ID + " = ?1" +
+                " ORDER BY " + ReviewEntry._ID +
+                " LIMIT " + reviewLimit +
+                ")) ORDER BY " + DetailEntry.COLUMN_ROW_TYPE + ", " + rowOrder;
     }
 
     /**
@@ -85,6 +199,10 @@ public class MovieProvider extends ContentProvider {
         matcher.addURI(authority, MovieContract.PATH_MOVIES + "/" + MovieContract.PATH_FAVORITE + "/#",
                 CODE_MOVIE_FAVORITE_WITH_MOVIE_ID);
 
+        /* Path for the movie, trailers and reviews of a movie by movie id */
+        matcher.addURI(authority, MovieContract.PATH_MOVIES + "/" + MovieContract.PATH_DETAIL + "/#",
+                CODE_MOVIE_DETAIL_WITH_MOVIE_ID);
+
         /* Path for movie by movie id */
         matcher.addURI(authority, MovieContract.PATH_MOVIES + "/#", CODE_MOVIE_WITH_MOVIE_ID);
 
@@ -94,12 +212,19 @@ public class MovieProvider extends ContentProvider {
         /* Path for review by movie id */
         matcher.addURI(authority, MovieContract.PATH_REVIEWS + "/#", CODE_REVIEW_WITH_MOVIE_ID);
 
+        /* Path for a single review, with its full text, by review id */
+        matcher.addURI(authority, MovieContract.PATH_REVIEWS + "/" + MovieContract.PATH_CONTENT + "/*",
+                CODE_REVIEW_CONTENT_WITH_REVIEW_ID);
+
         /* Path for all trailers - used for bulk insert */
         matcher.addURI(authority, MovieContract.PATH_TRAILERS, CODE_TRAILER);
 
         /* Path for trailer by movie id */
         matcher.addURI(authority, MovieContract.PATH_TRAILERS + "/#", CODE_TRAILER_WITH_MOVIE_ID);
 
+        /* Path for the sync state of every sync target */
+        matcher.addURI(authority, MovieContract.PATH_SYNC_STATE, CODE_SYNC_STATE);
+
         return matcher;
     }
 
@@ -154,11 +279,31 @@ public class MovieProvider extends ContentProvider {
 
                 break;
             }
+            case CODE_MOVIE_DETAIL_WITH_MOVIE_ID: {
+                String movieId = uri.getLastPathSegment();
+
+                int reviewLimit = DetailEntry.REVIEW_PAGE_SIZE;
+                String reviewLimitParameter = uri.getQueryParameter(DetailEntry.QUERY_REVIEW_LIMIT);
+                if (reviewLimitParameter != null) {
+                    try {
+                        reviewLimit = Integer.parseInt(reviewLimitParameter);
+                    } catch (NumberFormatException e) {
+                        throw new IllegalArgumentException("Invalid review limit: " + uri, e);
+                    }
+                }
+
+                cursor = mDbHelper.getReadableDatabase().rawQuery(
+                        makeMovieDetailQuery(projection, reviewLimit), new String[]{movieId});
+
+                break;
+            }
             case CODE_MOVIE_FAVORITE: {
                 final String query = makeMovieTableJoin(
+                        projection,
                         FavoriteEntry.TABLE_NAME,
                         FavoriteEntry.TABLE_NAME,
-                        FavoriteEntry.COLUMN_MOVIE_ID);
+                        FavoriteEntry.COLUMN_MOVIE_ID,
+                        null);
 
                 cursor = mDbHelper.getReadableDatabase().rawQuery(query, null);
 
@@ -166,9 +311,11 @@ public class MovieProvider extends ContentProvider {
             }
             case CODE_MOVIE_POPULAR: {
                 final String query = makeMovieTableJoin(
+                        projection,
                         PopularEntry.TABLE_NAME,
                         PopularEntry.TABLE_NAME,
-                        PopularEntry.COLUMN_MOVIE_ID);
+                        PopularEntry.COLUMN_MOVIE_ID,
+                        PopularEntry.COLUMN_LIST_RANK);
 
                 cursor = mDbHelper.getReadableDatabase().rawQuery(query, null);
 
@@ -176,9 +323,11 @@ public class MovieProvider extends ContentProvider {
             }
             case CODE_MOVIE_TOP_RATED: {
                 final String query = makeMovieTableJoin(
+                        projection,
                         TopRatedEntry.TABLE_NAME,
                         TopRatedEntry.TABLE_NAME,
-                        TopRatedEntry.COLUMN_MOVIE_ID);
+                        TopRatedEntry.COLUMN_MOVIE_ID,
+                        TopRatedEntry.COLUMN_LIST_RANK);
 
                 cursor = mDbHelper.getReadableDatabase().rawQuery(query, null);
 
@@ -199,6 +348,21 @@ public class MovieProvider extends ContentProvider {
                         sortOrder);
                 break;
             }
+            case CODE_REVIEW_CONTENT_WITH_REVIEW_ID: {
+                String reviewId = uri.getLastPathSegment();
+
+                String[] selectionArguments = new String[]{reviewId};
+
+                cursor = mDbHelper.getReadableDatabase().query(
+                        ReviewEntry.TABLE_NAME,
+                        projection,
+                        ReviewEntry.COLUMN_REVIEW_ID + " = ? ",
+                        selectionArguments,
+                        null,
+                        null,
+                        sortOrder);
+                break;
+            }
             case CODE_TRAILER_WITH_MOVIE_ID: {
                 String movieId = uri.getLastPathSegment();
 
@@ -229,6 +393,17 @@ public class MovieProvider extends ContentProvider {
                         sortOrder);
                 break;
             }
+            case CODE_SYNC_STATE: {
+                cursor = mDbHelper.getReadableDatabase().query(
+                        SyncStateEntry.TABLE_NAME,
+                        projection,
+                        selection,
+                        selectionArgs,
+                        null,
+                        null,
+                        sortOrder);
+                break;
+            }
             default: {
                 throw new UnsupportedOperationException("Unknown Uri: " + uri.toString());
             }
@@ -279,15 +454,11 @@ public class MovieProvider extends ContentProvider {
             }
         }
 
+        int insertRowCount;
+
         writableDatabase.beginTransaction();
-        int insertRowCount = 0;
         try {
-            for (ContentValues value : values){
-                long id = writableDatabase.insert(bulkInsertTable, null, value);
-                if (id != -1){
-                    insertRowCount++;
-                }
-            }
+            insertRowCount = RowBatch.insertInto(writableDatabase, bulkInsertTable, values);
             writableDatabase.setTransactionSuccessful();
         } finally {
             writableDatabase.endTransaction();
@@ -300,6 +471,154 @@ public class MovieProvider extends ContentProvider {
         return insertRowCount;
     }
 
+    /**
+     * Handle the custom provider methods.
+     *
+     * @param method the method name
+     * @param arg the method argument
+     * @param extras the method extras
+     * @return the result of the method
+     */
+    @Nullable
+    @Override
+    public Bundle call(@NonNull String method, @Nullable String arg, @Nullable Bundle extras) {
+        switch (method) {
+            case MovieContract.METHOD_COMMIT_SYNC_BATCH: {
+                if (arg == null || extras == null) {
+                    throw new IllegalArgumentException("Sync batch requires a list Uri and rows");
+                }
+                return commitSyncBatch(Uri.parse(arg), MovieSyncBatch.fromBundle(extras));
+            }
+            case MovieContract.METHOD_COMMIT_FAVORITE_CHANGES: {
+                if (extras == null) {
+                    throw new IllegalArgumentException("Favorite changes require the changes");
+                }
+                return commitFavoriteChanges(FavoriteChanges.fromBundle(extras));
+            }
+            default: {
+                return super.call(method, arg, extras);
+            }
+        }
+    }
+
+    /**
+     * Write all the rows of a sync batch in one transaction. The target list table is cleared
+     * and refilled inside the same transaction so readers never see an empty list. A single
+     * change notification is sent on the base Uri, which reaches every observer in the provider.
+     *
+     * @param listUri the Uri of the target list
+     * @param batch the rows to write
+     * @return a Bundle holding the number of rows written
+     */
+    private Bundle commitSyncBatch(Uri listUri, MovieSyncBatch batch) {
+
+        String listTable;
+
+        switch (sUriMatcher.match(listUri)) {
+            case CODE_MOVIE_POPULAR: {
+                listTable = PopularEntry.TABLE_NAME;
+                break;
+            }
+            case CODE_MOVIE_TOP_RATED: {
+                listTable = TopRatedEntry.TABLE_NAME;
+                break;
+            }
+            default: {
+                throw new UnsupportedOperationException("Unsupported sync list: " + listUri);
+            }
+        }
+
+        final SQLiteDatabase writableDatabase = mDbHelper.getWritableDatabase();
+        int rowCount = 0;
+
+        writableDatabase.beginTransaction();
+        try {
+            rowCount += batch.getMovies().insertInto(writableDatabase, MovieEntry.TABLE_NAME);
+            rowCount += batch.getReviews().insertInto(writableDatabase, ReviewEntry.TABLE_NAME);
+            rowCount += batch.getTrailers().insertInto(writableDatabase, TrailerEntry.TABLE_NAME);
+
+            /* Only replace the list when the sync produced one */
+            RowBatch listMovieIds = batch.getListMovieIds();
+            if (listMovieIds != null && listMovieIds.getRowCount() > 0) {
+                writableDatabase.delete(listTable, null, null);
+                rowCount += listMovieIds.insertInto(writableDatabase, listTable);
+            }
+
+            writableDatabase.setTransactionSuccessful();
+        } finally {
+            writableDatabase.endTransaction();
+        }
+
+        if (rowCount > 0) {
+            getContext().getContentResolver().notifyChange(MovieContract.BASE_CONTENT_URI, null);
+        }
+
+        /* Syncs run periodically so they also drive the periodic database maintenance */
+        runMaintenanceIfDue(writableDatabase);
+
+        Bundle result = new Bundle();
+        result.putInt(MovieSyncBatch.KEY_ROW_COUNT, rowCount);
+        return result;
+    }
+
+    /**
+     * Write a set of favorite changes in one transaction, with a single change notification on
+     * the favorites Uri. Adding a favorite that exists or removing one that doesn't is ignored.
+     *
+     * @param changes the favorites to add and remove
+     * @return a Bundle holding the number of favorite rows changed
+     */
+    private Bundle commitFavoriteChanges(FavoriteChanges changes) {
+        final SQLiteDatabase writableDatabase = mDbHelper.getWritableDatabase();
+        int rowCount = 0;
+
+        writableDatabase.beginTransaction();
+        try {
+            ContentValues values = new ContentValues();
+            for (long movieId : changes.getAddedMovieIds()) {
+                values.put(FavoriteEntry.COLUMN_MOVIE_ID, movieId);
+                if (writableDatabase.insertWithOnConflict(FavoriteEntry.TABLE_NAME, null, values,
+                        SQLiteDatabase.CONFLICT_IGNORE) != -1) {
+                    rowCount++;
+                }
+            }
+
+            String[] selectionArguments = new String[1];
+            for (long movieId : changes.getRemovedMovieIds()) {
+                selectionArguments[0] = String.valueOf(movieId);
+                rowCount += writableDatabase.delete(FavoriteEntry.TABLE_NAME,
+                        FavoriteEntry.COLUMN_MOVIE_ID + " = ? ",
+                        selectionArguments);
+            }
+
+            writableDatabase.setTransactionSuccessful();
+        } finally {
+            writableDatabase.endTransaction();
+        }
+
+        if (rowCount > 0) {
+            getContext().getContentResolver().notifyChange(FavoriteEntry.CONTENT_URI, null);
+        }
+
+        Bundle result = new Bundle();
+        result.putInt(FavoriteChanges.KEY_ROW_COUNT, rowCount);
+        return result;
+    }
+
+    /**
+     * Run the database maintenance if it hasn't run recently.
+     *
+     * @param writableDatabase the writable database
+     */
+    private synchronized void runMaintenanceIfDue(SQLiteDatabase writableDatabase) {
+        long now = System.currentTimeMillis();
+
+        if (now - mLastMaintenanceMillis < MAINTENANCE_INTERVAL_MILLIS) return;
+
+        mLastMaintenanceMillis = now;
+        mDbHelper.runMaintenance(writableDatabase);
+    }
+
     @Nullable
     @Override
     public String getType(@NonNull Uri uri) {
@@ -307,7 +626,7 @@ public class MovieProvider extends ContentProvider {
     }
 
     /**
-     * Provide insertion of values into the favorites table only.
+     * Provide insertion of values into the favorites and sync state tables only.
      *
      * @param uri the uri to insert to
      * @param values the value to insert
@@ -326,6 +645,12 @@ public class MovieProvider extends ContentProvider {
                 }
                 return uri;
             }
+            case CODE_SYNC_STATE: {
+                /* A target's row replaces its previous row. Nothing observes the sync state so
+                 * no change is notified */
+                database.insert(SyncStateEntry.TABLE_NAME, null, values);
+                return uri;
+            }
             default: {
                 throw new UnsupportedOperationException("Unsupported Insert: " + uri.toString());
             }
@@ -367,7 +692,7 @@ public class MovieProvider extends ContentProvider {
 
                 String[] selectionArguments = new String[]{movieId};
 
-                deleteCount = mDbHelper.getReadableDatabase().delete(
+                deleteCount = database.delete(
                         FavoriteEntry.TABLE_NAME,
                         TrailerEntry.COLUMN_MOVIE_ID + " = ? ",
                         selectionArguments);
@@ -375,6 +700,11 @@ public class MovieProvider extends ContentProvider {
             }
         }
 
+        /* The favorite cache and the list loaders follow changes through these notifications */
+        if (deleteCount > 0) {
+            getContext().getContentResolver().notifyChange(uri, null);
+        }
+
         return deleteCount;
     }
 
@@ -0,0 +1,224 @@
+package com.example.android.popularmovies.data;
+
+import android.content.ContentResolver;
+import android.net.Uri;
+import android.os.Bundle;
+import android.support.annotation.NonNull;
+
+import com.example.android.popularmovies.data.MovieContract.*;
+
+/**
+ * Collects the movie, review and trailer rows produced during a sync so they can be committed
+ * together. Rows may be added from several fetch threads at once. The rows are held in columnar
+ * {@link RowBatch}es and committed to the provider in a single transaction with a single change
+ * notification.
+ */
+public class MovieSyncBatch {
+
+    /* Bundle keys used to pass the batch to the provider */
+    private static final String KEY_MOVIES = "sync_batch_movies";
+    private static final String KEY_REVIEWS = "sync_batch_reviews";
+    private static final String KEY_TRAILERS = "sync_batch_trailers";
+    private static final String KEY_LIST_MOVIE_IDS = "sync_batch_list_movie_ids";
+
+    /* Result key for the number of rows written by a commit */
+    static final String KEY_ROW_COUNT = "sync_batch_row_count";
+
+    /* Column layouts of each batch - the indexes below must match */
+    private static final String[] MOVIE_COLUMNS = {
+            MovieEntry.COLUMN_MOVIE_ID,
+            MovieEntry.COLUMN_TITLE,
+            MovieEntry.COLUMN_POSTER_PATH,
+            MovieEntry.COLUMN_OVERVIEW,
+            MovieEntry.COLUMN_AVERAGE_RATING,
+            MovieEntry.COLUMN_RELEASE_DATE,
+            MovieEntry.COLUMN_RUNTIME,
+            MovieEntry.COLUMN_LAST_SYNCED
+    };
+
+    private static final int[] MOVIE_TYPES = {
+            RowBatch.TYPE_LONG,
+            RowBatch.TYPE_STRING,
+            RowBatch.TYPE_STRING,
+            RowBatch.TYPE_STRING,
+            RowBatch.TYPE_DOUBLE,
+            RowBatch.TYPE_LONG,
+            RowBatch.TYPE_LONG,
+            RowBatch.TYPE_LONG
+    };
+
+    private static final int INDEX_MOVIE_ID = 0;
+    private static final int INDEX_MOVIE_TITLE = 1;
+    private static final int INDEX_MOVIE_POSTER_PATH = 2;
+    private static final int INDEX_MOVIE_OVERVIEW = 3;
+    private static final int INDEX_MOVIE_AVERAGE_RATING = 4;
+    private static final int INDEX_MOVIE_RELEASE_DATE = 5;
+    private static final int INDEX_MOVIE_RUNTIME = 6;
+    private static final int INDEX_MOVIE_LAST_SYNCED = 7;
+
+    private static final String[] REVIEW_COLUMNS = {
+            ReviewEntry.COLUMN_MOVIE_ID,
+            ReviewEntry.COLUMN_REVIEW_ID,
+            ReviewEntry.COLUMN_REVIEW_AUTHOR,
+            ReviewEntry.COLUMN_REVIEW_CONTENT,
+            ReviewEntry.COLUMN_REVIEW_URL
+    };
+
+    private static final String[] TRAILER_COLUMNS = {
+            TrailerEntry.COLUMN_MOVIE_ID,
+            TrailerEntry.COLUMN_TRAILER_ID,
+            TrailerEntry.COLUMN_TRAILER_KEY,
+            TrailerEntry.COLUMN_TRAILER_NAME,
+            TrailerEntry.COLUMN_TRAILER_SITE
+    };
+
+    /* Reviews and trailers share the layout of a movie id followed by four strings */
+    private static final int[] MOVIE_ID_AND_STRINGS_TYPES = {
+            RowBatch.TYPE_LONG,
+            RowBatch.TYPE_STRING,
+            RowBatch.TYPE_STRING,
+            RowBatch.TYPE_STRING,
+            RowBatch.TYPE_STRING
+    };
+
+    private static final String[] LIST_COLUMNS = {
+            MovieContract.GLOBAL_COLUMN_MOVIE_ID,
+            MovieContract.GLOBAL_COLUMN_LIST_RANK
+    };
+
+    private static final int[] LIST_TYPES = {RowBatch.TYPE_LONG, RowBatch.TYPE_LONG};
+
+    private final RowBatch mMovies;
+    private final RowBatch mReviews;
+    private final RowBatch mTrailers;
+    private RowBatch mListMovieIds;
+
+    /* The time stamped on every movie row of the batch */
+    private final long mSyncedMillis;
+
+    public MovieSyncBatch() {
+        mSyncedMillis = System.currentTimeMillis();
+        mMovies = new RowBatch(MOVIE_COLUMNS, MOVIE_TYPES);
+        mReviews = new RowBatch(REVIEW_COLUMNS, MOVIE_ID_AND_STRINGS_TYPES);
+        mTrailers = new RowBatch(TRAILER_COLUMNS, MOVIE_ID_AND_STRINGS_TYPES);
+    }
+
+    private MovieSyncBatch(Bundle bundle) {
+        /* The movie rows of a received batch are already stamped */
+        mSyncedMillis = 0;
+        bundle.setClassLoader(RowBatch.class.getClassLoader());
+        mMovies = bundle.getParcelable(KEY_MOVIES);
+        mReviews = bundle.getParcelable(KEY_REVIEWS);
+        mTrailers = bundle.getParcelable(KEY_TRAILERS);
+        mListMovieIds = bundle.getParcelable(KEY_LIST_MOVIE_IDS);
+    }
+
+    /**
+     * Add a movie row. The row is stamped with the time the batch was created.
+     */
+    public synchronized void addMovie(long movieId, String title, String posterPath,
+                                      String overview, double averageRating, long releaseDate,
+                                      long runtime) {
+        int row = mMovies.addRow();
+        mMovies.setLong(row, INDEX_MOVIE_ID, movieId);
+        mMovies.setString(row, INDEX_MOVIE_TITLE, title);
+        mMovies.setString(row, INDEX_MOVIE_POSTER_PATH, posterPath);
+        mMovies.setString(row, INDEX_MOVIE_OVERVIEW, overview);
+        mMovies.setDouble(row, INDEX_MOVIE_AVERAGE_RATING, averageRating);
+        mMovies.setLong(row, INDEX_MOVIE_RELEASE_DATE, releaseDate);
+        mMovies.setLong(row, INDEX_MOVIE_RUNTIME, runtime);
+        mMovies.setLong(row, INDEX_MOVIE_LAST_SYNCED, mSyncedMillis);
+    }
+
+    /**
+     * Add a review row.
+     */
+    public synchronized void addReview(long movieId, String reviewId, String author,
+                                       String content, String url) {
+        addMovieIdAndStrings(mReviews, movieId, reviewId, author, content, url);
+    }
+
+    /**
+     * Add a trailer row.
+     */
+    public synchronized void addTrailer(long movieId, String trailerId, String key, String name,
+                                        String site) {
+        addMovieIdAndStrings(mTrailers, movieId, trailerId, key, name, site);
+    }
+
+    private static void addMovieIdAndStrings(RowBatch batch, long movieId, String... values) {
+        int row = batch.addRow();
+        batch.setLong(row, 0, movieId);
+        for (int i = 0; i < values.length; i++) {
+            batch.setString(row, i + 1, values[i]);
+        }
+    }
+
+    /**
+     * Set the ordered movie ids of the target list. The list table is replaced by these ids in
+     * the same transaction as the movie rows, each ranked by its position. If not set the list
+     * table is left untouched.
+     *
+     * @param listMovieIds the movie ids of the list in rank order
+     */
+    public synchronized void setListMovieIds(long[] listMovieIds) {
+        if (listMovieIds == null) {
+            mListMovieIds = null;
+            return;
+        }
+
+        mListMovieIds = new RowBatch(LIST_COLUMNS, LIST_TYPES);
+        for (int rank = 0; rank < listMovieIds.length; rank++) {
+            int row = mListMovieIds.addRow();
+            mListMovieIds.setLong(row, 0, listMovieIds[rank]);
+            mListMovieIds.setLong(row, 1, rank);
+        }
+    }
+
+    synchronized RowBatch getMovies() {
+        return mMovies;
+    }
+
+    synchronized RowBatch getReviews() {
+        return mReviews;
+    }
+
+    synchronized RowBatch getTrailers() {
+        return mTrailers;
+    }
+
+    synchronized RowBatch getListMovieIds() {
+        return mListMovieIds;
+    }
+
+    /**
+     * Commit the whole batch to the movie provider in one transaction.
+     *
+     * @param contentResolver the resolver to reach the provider with
+     * @param listUri the provider Uri of the list (popular or top rated) being synced
+     * @return the number of rows written
+     */
+    public int commit(@NonNull ContentResolver contentResolver, @NonNull Uri listUri) {
+        Bundle result = contentResolver.call(MovieContract.BASE_CONTENT_URI,
+                MovieContract.METHOD_COMMIT_SYNC_BATCH,
+                listUri.toString(),
+                toBundle());
+
+        return result == null ? 0 : result.getInt(KEY_ROW_COUNT);
+    }
+
+    private synchronized Bundle toBundle() {
+        Bundle bundle = new Bundle();
+        bundle.putParcelable(KEY_MOVIES, mMovies);
+        bundle.putParcelable(KEY_REVIEWS, mReviews);
+        bundle.putParcelable(KEY_TRAILERS, mTrailers);
+        if (mListMovieIds != null) {
+            bundle.putParcelable(KEY_LIST_MOVIE_IDS, mListMovieIds);
+        }
+        return bundle;
+    }
+
+    static MovieSyncBatch fromBundle(@NonNull Bundle bundle) {
+        return new MovieSyncBatch(bundle);
+    }
+}
@@ -0,0 +1,338 @@
+package com.example.android.popularmovies.data;
+
+import android.content.ContentValues;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.os.Parcel;
+import android.os.Parcelable;
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import java.util.Arrays;
+
+/**
+ * A columnar batch of rows for bulk loading a single table. Each column is stored in a primitive
+ * array of its type so rows can be bound straight to a compiled insert statement without going
+ * through ContentValues.
+ */
+public class RowBatch implements Parcelable {
+
+    private static final String TAG = RowBatch.class.getCanonicalName();
+
+    /* Column types */
+    public static final int TYPE_LONG = 0;
+    public static final int TYPE_DOUBLE = 1;
+    public static final int TYPE_STRING = 2;
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final String[] mColumns;
+    private final int[] mTypes;
+
+    /* Only the array matching a column's type is allocated for that column */
+    private final long[][] mLongColumns;
+    private final double[][] mDoubleColumns;
+    private final String[][] mStringColumns;
+
+    private int mRowCount;
+    private int mCapacity;
+
+    /**
+     * Create an empty batch.
+     *
+     * @param columns the column names
+     * @param types the type of each column, one of the TYPE_ constants
+     */
+    public RowBatch(@NonNull String[] columns, @NonNull int[] types) {
+        if (columns.length != types.length) {
+            throw new IllegalArgumentException("Every column requires a type");
+        }
+
+        mColumns = columns;
+        mTypes = types;
+        mLongColumns = new long[columns.length][];
+        mDoubleColumns = new double[columns.length][];
+        mStringColumns = new String[columns.length][];
+
+        allocate(INITIAL_CAPACITY);
+    }
+
+    private RowBatch(Parcel in) {
+        mColumns = in.createStringArray();
+        mTypes = in.createIntArray();
+        mRowCount = in.readInt();
+        mLongColumns = new long[mColumns.length][];
+        mDoubleColumns = new double[mColumns.length][];
+        mStringColumns = new String[mColumns.length][];
+
+        for (int column = 0; column < mColumns.length; column++) {
+            switch (mTypes[column]) {
+                case TYPE_LONG: {
+                    mLongColumns[column] = in.createLongArray();
+                    break;
+                }
+                case TYPE_DOUBLE: {
+                    mDoubleColumns[column] = in.createDoubleArray();
+                    break;
+                }
+                default: {
+                    mStringColumns[column] = in.createStringArray();
+                }
+            }
+        }
+        mCapacity = mRowCount;
+    }
+
+    @Override
+    public void writeToParcel(Parcel dest, int flags) {
+        dest.writeStringArray(mColumns);
+        dest.writeIntArray(mTypes);
+        dest.writeInt(mRowCount);
+
+        for (int column = 0; column < mColumns.length; column++) {
+            switch (mTypes[column]) {
+                case TYPE_LONG: {
+                    dest.writeLongArray(Arrays.copyOf(mLongColumns[column], mRowCount));
+                    break;
+                }
+                case TYPE_DOUBLE: {
+                    dest.writeDoubleArray(Arrays.copyOf(mDoubleColumns[column], mRowCount));
+                    break;
+                }
+                default: {
+                    dest.writeStringArray(Arrays.copyOf(mStringColumns[column], mRowCount));
+                }
+            }
+        }
+    }
+
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+
+    public static final Creator<RowBatch> CREATOR = new Creator<RowBatch>() {
+        @Override
+        public RowBatch createFromParcel(Parcel in) {
+            return new RowBatch(in);
+        }
+
+        @Override
+        public RowBatch[] newArray(int size) {
+            return new RowBatch[size];
+        }
+    };
+
+    /**
+     * Grow every column array to the new capacity.
+     *
+     * @param capacity the required row capacity
+     */
+    private void allocate(int capacity) {
+        for (int column = 0; column < mColumns.length; column++) {
+            switch (mTypes[column]) {
+                case TYPE_LONG: {
+                    mLongColumns[column] = mLongColumns[column] == null ? new long[capacity]
+                            : Arrays.copyOf(mLongColumns[column], capacity);
+                    break;
+                }
+                case TYPE_DOUBLE: {
+                    mDoubleColumns[column] = mDoubleColumns[column] == null ? new double[capacity]
+                            : Arrays.copyOf(mDoubleColumns[column], capacity);
+                    break;
+                }
+                case TYPE_STRING: {
+                    mStringColumns[column] = mStringColumns[column] == null ? new String[capacity]
+                            : Arrays.copyOf(mStringColumns[column], capacity);
+                    break;
+                }
+                default: {
+                    throw new IllegalArgumentException("Unknown column type: " + mTypes[column]);
+                }
+            }
+        }
+        mCapacity = capacity;
+    }
+
+    /**
+     * Append an empty row. The values of the row are then set with the set methods.
+     *
+     * @return the index of the new row
+     */
+    public int addRow() {
+        if (mRowCount == mCapacity) {
+            allocate(Math.max(INITIAL_CAPACITY, mCapacity * 2));
+        }
+        return mRowCount++;
+    }
+
+    public void setLong(int row, int column, long value) {
+        mLongColumns[column][row] = value;
+    }
+
+    public void setDouble(int row, int column, double value) {
+        mDoubleColumns[column][row] = value;
+    }
+
+    public void setString(int row, int column, String value) {
+        mStringColumns[column][row] = value;
+    }
+
+    public long getLong(int row, int column) {
+        return mLongColumns[column][row];
+    }
+
+    public String getString(int row, int column) {
+        return mStringColumns[column][row];
+    }
+
+    public int getRowCount() {
+        return mRowCount;
+    }
+
+    /**
+     * Build the insert SQL for a table with the given columns.
+     */
+    private static String buildInsertSql(String table, String[] columns) {
+        StringBuilder sql = new StringBuilder("INSERT INTO ").append(table).append(" (");
+        StringBuilder bindArgs = new StringBuilder();
+
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0) {
+                sql.append(',');
+                bindArgs.append(',');
+            }
+            sql.append(columns[i]);
+            bindArgs.append('?');
+        }
+
+        return sql.append(") VALUES (").append(bindArgs).append(')').toString();
+    }
+
+    /**
+     * Insert every row of the batch into a table using a single compiled statement. The caller
+     * is responsible for the transaction. Conflicts are resolved by the table's own constraints.
+     *
+     * @param database the writable database
+     * @param table the table to insert into
+     * @return the number of rows inserted
+     */
+    int insertInto(SQLiteDatabase database, String table) {
+        if (mRowCount == 0) return 0;
+
+        SQLiteStatement statement = database.compileStatement(buildInsertSql(table, mColumns));
+        int insertRowCount = 0;
+
+        try {
+            for (int row = 0; row < mRowCount; row++) {
+                for (int column = 0; column < mColumns.length; column++) {
+                    /* Bind arguments are 1 based */
+                    int index = column + 1;
+                    switch (mTypes[column]) {
+                        case TYPE_LONG: {
+                            statement.bindLong(index, mLongColumns[column][row]);
+                            break;
+                        }
+                        case TYPE_DOUBLE: {
+                            statement.bindDouble(index, mDoubleColumns[column][row]);
+                            break;
+                        }
+                        default: {
+                            String value = mStringColumns[column][row];
+                            if (value == null) {
+                                statement.bindNull(index);
+                            } else {
+                                statement.bindString(index, value);
+                            }
+                        }
+                    }
+                }
+
+                if (executeInsert(statement)) {
+                    insertRowCount++;
+                }
+            }
+        } finally {
+            statement.close();
+        }
+
+        return insertRowCount;
+    }
+
+    /**
+     * Insert ContentValues rows into a table, compiling one statement per distinct column set
+     * rather than building the SQL for every row. The caller is responsible for the transaction.
+     *
+     * @param database the writable database
+     * @param table the table to insert into
+     * @param values the rows to insert
+     * @return the number of rows inserted
+     */
+    static int insertInto(SQLiteDatabase database, String table, ContentValues[] values) {
+        int insertRowCount = 0;
+
+        SQLiteStatement statement = null;
+        String[] statementColumns = null;
+
+        try {
+            for (ContentValues value : values) {
+                String[] columns = value.keySet().toArray(new String[value.size()]);
+                Arrays.sort(columns);
+
+                if (!Arrays.equals(columns, statementColumns)) {
+                    if (statement != null) statement.close();
+                    statement = database.compileStatement(buildInsertSql(table, columns));
+                    statementColumns = columns;
+                }
+
+                statement.clearBindings();
+                for (int i = 0; i < columns.length; i++) {
+                    bindObject(statement, i + 1, value.get(columns[i]));
+                }
+
+                if (executeInsert(statement)) {
+                    insertRowCount++;
+                }
+            }
+        } finally {
+            if (statement != null) statement.close();
+        }
+
+        return insertRowCount;
+    }
+
+    /**
+     * Execute a bound insert. As with SQLiteDatabase.insert a row that violates a constraint is
+     * skipped rather than failing the whole batch.
+     *
+     * @return true if the row was inserted
+     */
+    private static boolean executeInsert(SQLiteStatement statement) {
+        try {
+            return statement.executeInsert() != -1;
+        } catch (SQLException e) {
+            Log.w(TAG, "Failed to insert row: " + e.toString());
+            return false;
+        }
+    }
+
+    /**
+     * Bind a boxed value from ContentValues to a statement.
+     */
+    private static void bindObject(SQLiteStatement statement, int index, Object value) {
+        if (value == null) {
+            statement.bindNull(index);
+        } else if (value instanceof Double || value instanceof Float) {
+            statement.bindDouble(index, ((Number) value).doubleValue());
+        } else if (value instanceof Number) {
+            statement.bindLong(index, ((Number) value).longValue());
+        } else if (value instanceof Boolean) {
+            statement.bindLong(index, (Boolean) value ? 1 : 0);
+        } else if (value instanceof byte[]) {
+            statement.bindBlob(index, (byte[]) value);
+        } else {
+            statement.bindString(index, value.toString());
+        }
+    }
+}
@@ -1,17 +1,23 @@
 package com.example.android.popularmovies.sync;
 
 import android.content.Context;
-import android.os.AsyncTask;
 import android.os.Bundle;
+import android.support.annotation.NonNull;
 
 import com.firebase.jobdispatcher.JobParameters;
 import com.firebase.jobdispatcher.JobService;
 
+import java.util.HashMap;
+import java.util.Map;
+
 /*
  * Defines the Firebase job that is run to periodically sync our local database
  */
 public class MovieFirebaseJobService extends JobService {
 
+    /* The tokens of the running syncs by job tag. Only touched on the main thread */
+    private final Map<String, SyncCancellationToken> mRunningSyncs = new HashMap<>();
+
     /**
      * Called when the scheduler starts this job.
      * @param job the job that started
@@ -22,45 +28,59 @@ public class MovieFirebaseJobService extends JobService {
 
         final Bundle jobBundle = job.getExtras();
 
-        /* We don't want to the sync on the main thread as it uses the network */
-        AsyncTask<Void, Void, Void> SyncMovieDataTask = new AsyncTask<Void, Void, Void>(){
-            @Override
-            protected Void doInBackground(Void... voids) {
-
-                /* Unfortunately the job extras can only contain basic types i.e. not parcelables */
-                String targetUrl = jobBundle.getString(MovieSyncArgs.EXTRA_TARGET_URL);
-                String targetTable = jobBundle.getString(MovieSyncArgs.EXTRA_TARGET_TABLE);
+        if (jobBundle == null) return false;
 
-                if (targetUrl == null || targetTable == null) return null;
+        /* Unfortunately the job extras can only contain basic types i.e. not parcelables */
+        final String targetUrl = jobBundle.getString(MovieSyncArgs.EXTRA_TARGET_URL);
+        final String targetTable = jobBundle.getString(MovieSyncArgs.EXTRA_TARGET_TABLE);
+        final int pageCount = jobBundle.getInt(MovieSyncArgs.EXTRA_PAGE_COUNT, 1);
 
-                Context context = getApplicationContext();
+        if (targetUrl == null || targetTable == null) return false;
 
-                MovieSyncTask.syncMovieData(context, targetUrl, targetTable);
+        final Context context = getApplicationContext();
 
-                /* inform the scheduler that the job is now finished */
-                jobFinished(job, false);
-                return null;
+        /* We don't want to the sync on the main thread as it uses the network */
+        SyncCancellationToken token = SyncExecutor.submit(new SyncExecutor.SyncJob() {
+            @Override
+            public void run(@NonNull SyncCancellationToken token) {
+                try {
+                    MovieSyncTask.syncMovieData(context, targetUrl, targetTable, pageCount, token);
+                } finally {
+                    /* Each job runs once and schedules the next from the updated sync state,
+                     * even if the sync threw. A stopped job is retried by the scheduler instead */
+                    if (!token.isCancelled()) {
+                        MovieSyncUtils.scheduleNextSync(context, targetTable);
+                    }
+                }
             }
-
+        }, new Runnable() {
             @Override
-            protected void onPostExecute(Void aVoid) {
-                jobFinished(job, false);
+            public void run() {
+                /* inform the scheduler that the job is now finished, unless it was stopped */
+                if (mRunningSyncs.remove(job.getTag()) != null) {
+                    jobFinished(job, false);
+                }
             }
-        };
+        });
 
-        /* Start the actual task */
-        SyncMovieDataTask.execute();
+        mRunningSyncs.put(job.getTag(), token);
 
         return true;
     }
 
     /**
      * Called when the job is stopped due to the execution conditions no longer being met.
+     * Cancel the sync, which stops at its next stage, and have the job run again later.
      * @param job the job that was stopped
-     * @return true if the job should not be repeated
+     * @return true if the job should be retried
      */
     @Override
     public boolean onStopJob(JobParameters job) {
-        return false;
+        SyncCancellationToken token = mRunningSyncs.remove(job.getTag());
+
+        if (token == null) return false;
+
+        token.cancel();
+        return true;
     }
 }
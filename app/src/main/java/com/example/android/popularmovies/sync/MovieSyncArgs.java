@@ -9,21 +9,26 @@ class MovieSyncArgs implements Parcelable {
 
     static final String EXTRA_TARGET_URL = "movie_target_url";
     static final String EXTRA_TARGET_TABLE = "movie_target_table";
+    static final String EXTRA_PAGE_COUNT = "movie_page_count";
 
     private String tagName;
     private String targetDatabaseUri;
     private String targetRemoteURL;
+    private int pageCount;
 
-    MovieSyncArgs(String tagName, String targetDatabaseUri, String targetRemoteURL) {
+    MovieSyncArgs(String tagName, String targetDatabaseUri, String targetRemoteURL,
+                  int pageCount) {
         this.tagName = tagName;
         this.targetDatabaseUri = targetDatabaseUri;
         this.targetRemoteURL = targetRemoteURL;
+        this.pageCount = pageCount;
     }
 
     private MovieSyncArgs(Parcel in) {
         tagName = in.readString();
         targetDatabaseUri = in.readString();
         targetRemoteURL = in.readString();
+        pageCount = in.readInt();
     }
 
     @Override
@@ -31,6 +36,7 @@ class MovieSyncArgs implements Parcelable {
         dest.writeString(tagName);
         dest.writeString(targetDatabaseUri);
         dest.writeString(targetRemoteURL);
+        dest.writeInt(pageCount);
     }
 
     @Override
@@ -61,4 +67,8 @@ class MovieSyncArgs implements Parcelable {
     String getTargetRemoteURL() {
         return targetRemoteURL;
     }
+
+    int getPageCount() {
+        return pageCount;
+    }
 }
@@ -28,7 +28,8 @@ public class MovieSyncIntentService extends IntentService {
             /* Get the synchronization arumnets from the intent extras */
             MovieSyncArgs syncArgs = intent.getParcelableExtra(MovieSyncArgs.MOVIE_SYNC_EXTRA_ARGS);
 
-            MovieSyncTask.syncMovieData(this, syncArgs);
+            /* An immediate sync is never stopped by a scheduler, so its token isn't cancelled */
+            MovieSyncTask.syncMovieData(this, syncArgs, new SyncCancellationToken());
         }
     }
 }
@@ -2,96 +2,458 @@ package com.example.android.popularmovies.sync;
 
 
 import android.content.ContentResolver;
-import android.content.ContentValues;
 import android.content.Context;
+import android.database.Cursor;
 import android.net.Uri;
 import android.support.annotation.NonNull;
+import android.text.TextUtils;
 import android.util.Log;
 
 import com.example.android.popularmovies.data.MovieContract;
+import com.example.android.popularmovies.data.MovieSyncBatch;
+import com.example.android.popularmovies.utilities.ConcurrentFetcher;
 import com.example.android.popularmovies.utilities.MovieDbJsonUtils;
+import com.example.android.popularmovies.utilities.MovieListPages;
 import com.example.android.popularmovies.utilities.NetworkUtils;
+import com.example.android.popularmovies.utilities.PosterStore;
+import com.example.android.popularmovies.utilities.PosterUrls;
 
+import java.io.IOException;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
 
 class MovieSyncTask {
 
     private static final String TAG = MovieSyncTask.class.getCanonicalName();
 
+    /* Number of movie details fetched at once - kept well below the movie db service limit of
+     * 40 requests in 10 seconds */
+    private static final int DETAIL_FETCH_WORKERS = 4;
+
+    /* Timeout for each individual movie db request */
+    private static final int FETCH_TIMEOUT_MILLIS = (int) TimeUnit.SECONDS.toMillis(15);
+
+    /* Movie details fetched more recently than this are not fetched again */
+    private static final long MOVIE_STALE_AFTER_MILLIS = TimeUnit.DAYS.toMillis(7);
+
+    /* Logs the movie db requests that fail or time out during a sync */
+    private static final ConcurrentFetcher.FailureListener LOG_FETCH_FAILURES =
+            new ConcurrentFetcher.FailureListener() {
+        @Override
+        public void onFailure(URL url, Throwable cause) {
+            if (cause instanceof CancellationException) {
+                Log.w(TAG, "Timed out fetching: " + url.toString());
+            } else {
+                Log.w(TAG, "Failed to fetch: " + url.toString() + " " + cause);
+            }
+        }
+    };
+
+    /* SQLite before 3.32, as on Android 11 and below, allows at most 999 arguments a query */
+    static final int MAX_QUERY_ARGUMENTS = 999;
+
     /**
      * Perform the synchronization of the local movie data from the remote movie db.
      *
      * @param context the current context
      * @param syncArgs the target sync arguments
+     * @param token cancels the sync between its stages
+     * @return true if the target's data is fresh or was synced
      */
-    static void syncMovieData(@NonNull final Context context,
-                                     @NonNull final MovieSyncArgs syncArgs){
+    static boolean syncMovieData(@NonNull final Context context,
+                                 @NonNull final MovieSyncArgs syncArgs,
+                                 @NonNull final SyncCancellationToken token){
         String movieQuery = syncArgs.getTargetRemoteURL();
         String targetTable = syncArgs.getTargetDatabaseUri();
 
-        syncMovieData(context, movieQuery, targetTable);
+        return syncMovieData(context, movieQuery, targetTable, syncArgs.getPageCount(), token);
     }
 
     /**
      * Perform the synchronization of the local movie data from the remote movie db. Overload
-     * allows for String arguments.
+     * allows for String arguments. A target that synced recently isn't synced again, and a sync
+     * of a target that is already syncing joins the running sync.
      *
      * @param context the current context
      * @param movieQuery the remote target Url
      * @param targetTable the local provider query for the target
+     * @param pageCount the number of pages of the remote list to sync
+     * @param token cancels the sync between its stages
+     * @return true if the target's data is fresh or was synced
      */
-    synchronized static void syncMovieData(@NonNull final Context context,
-                                                  @NonNull final String movieQuery,
-                                                  @NonNull final String targetTable){
+    static boolean syncMovieData(@NonNull final Context context,
+                                 @NonNull final String movieQuery,
+                                 @NonNull final String targetTable,
+                                 final int pageCount,
+                                 @NonNull final SyncCancellationToken token){
+        try {
+            return SyncFlights.run(targetTable, new Callable<Boolean>() {
+                @Override
+                public Boolean call() {
+                    boolean synced = syncTarget(context, movieQuery, targetTable, pageCount,
+                            token);
+
+                    /* Syncs that joined this one run their own sync rather than share a
+                     * cancelled result */
+                    if (!synced && token.isCancelled()) {
+                        throw new CancellationException("Sync of " + targetTable + " cancelled");
+                    }
+                    return synced;
+                }
+            });
+        } catch (InterruptedException e) {
+            /* Only a cancelled sync is interrupted */
+            Thread.currentThread().interrupt();
+            Log.d(TAG, "Sync of " + targetTable + " cancelled");
+            return false;
+        }
+    }
+
+    /**
+     * Sync a target, recording the outcome in its sync state. Syncs of different targets may run
+     * at the same time - the SyncCoordinator keeps them from fetching the same movie details
+     * twice.
+     *
+     * @param context the current context
+     * @param movieQuery the remote target Url
+     * @param targetTable the local provider query for the target
+     * @param pageCount the number of pages of the remote list to sync
+     * @param token cancels the sync between its stages. The movie details are parsed as they
+     *              are fetched, so fetching and parsing them is a single stage
+     * @return true if the sync completed
+     */
+    private static boolean syncTarget(@NonNull final Context context,
+                                      @NonNull final String movieQuery,
+                                      @NonNull final String targetTable,
+                                      int pageCount,
+                                      @NonNull final SyncCancellationToken token){
+        SyncStageTimer timer = new SyncStageTimer();
+
+        ConcurrentFetcher fetcher = new ConcurrentFetcher(DETAIL_FETCH_WORKERS,
+                FETCH_TIMEOUT_MILLIS, LOG_FETCH_FAILURES);
+
         try {
             URL movieQueryUrl = new URL(movieQuery);
             Uri targetTableUri = Uri.parse(targetTable);
 
             ContentResolver contentProvider = context.getContentResolver();
 
-            String result = NetworkUtils.getResponseFromHttpUrl(movieQueryUrl);
+            SyncState previousState = SyncStateStore.query(contentProvider, targetTable);
+
+            /* The list pages share the bounded fetcher with the movie details */
+            long[] listMovieIds = MovieListPages.fetchMovieIds(fetcher, movieQueryUrl,
+                    pageCount, MovieDbJsonUtils.LIST_PAGE_LOADER);
+            timer.endStage("list fetch");
+            token.throwIfCancelled();
+
+            /* A list that couldn't be read in full leaves the stored list as it is */
+            if (listMovieIds == null) {
+                if (!token.isCancelled()) recordFailure(contentProvider, targetTable);
+                return false;
+            }
 
-            ArrayList<String> results = MovieDbJsonUtils.arrayDataForMovieList(result);
+            /*
+             * Only the movies that are new or whose details are stale are fetched - the rest
+             * are already stored and only their place in the list may have changed.
+             */
+            long[] staleMovieIds = findStaleMovieIds(contentProvider, listMovieIds);
 
             /*
-             * Get all the movie entries for the retrieved list - any duplicated entries will be
-             * silently overwritten on insert.
+             * Once the target has synced, the hash of the last list fetched tells if the list
+             * changed without reading the stored list back
              */
-            ArrayList<ContentValues> allMovies = MovieDbJsonUtils.movieContentArrayFromStringArray(
-                    context, results);
+            long listHash = SyncState.hashMovieIds(listMovieIds);
+            boolean listChanged = previousState.hasSucceeded() ?
+                    listHash != previousState.responseHash :
+                    !Arrays.equals(listMovieIds, queryListMovieIds(contentProvider, targetTableUri));
+            timer.endStage("stale check");
+            token.throwIfCancelled();
 
-            /* Add all the movie data to the movies table via the content provider */
-            contentProvider.bulkInsert(MovieContract.MovieEntry.CONTENT_URI,
-                    allMovies.toArray(new ContentValues[allMovies.size()]));
+            if (staleMovieIds.length == 0 && !listChanged) {
+                Log.d(TAG, "Nothing changed for " + targetTable);
+            } else {
+                /* Stale movies another sync is already fetching are left to that sync */
+                SyncCoordinator.Claim claim = SyncCoordinator.claim(staleMovieIds);
 
-            /* Get all the reviews for all previously retrieved the movies */
-            ArrayList<ContentValues> allReviews = MovieDbJsonUtils.reviewContentArrayFromStringArray(
-                    context, results);
+                try {
+                    /*
+                     * Stream the movie, review and trailer rows for every claimed movie into a
+                     * single batch - any duplicated entries will be silently overwritten on
+                     * insert.
+                     */
+                    MovieSyncBatch batch = new MovieSyncBatch();
 
-            /* Add all the reviews to the database */
-            contentProvider.bulkInsert(MovieContract.ReviewEntry.CONTENT_URI,
-                    allReviews.toArray(new ContentValues[allReviews.size()]));
+                    MovieDbJsonUtils.fetchMovieDetailsIntoBatch(context, claim.getMovieIds(),
+                            fetcher, batch);
+                    timer.endStage("detail fetch and parse");
+                    token.throwIfCancelled();
 
-            /* Get all the trailers for all previously retrieved the movies */
-            ArrayList<ContentValues> allTrailers = MovieDbJsonUtils.trailerContentArrayFromStringArray(
-                    context, results);
+                    if (claim.hasOtherClaims()) {
+                        /*
+                         * The list must not be committed before the movies the other syncs are
+                         * fetching. This sync's movies are committed and released first, so
+                         * syncs waiting on each other's movies never deadlock.
+                         */
+                        commitBatch(batch, contentProvider, targetTableUri);
+                        claim.release();
 
-            /* Add all the trailers to the database */
-            contentProvider.bulkInsert(MovieContract.TrailerEntry.CONTENT_URI,
-                    allTrailers.toArray(new ContentValues[allReviews.size()]));
+                        claim.awaitOtherClaims(token);
+                        timer.endStage("wait for other syncs");
+                        token.throwIfCancelled();
 
-            /* Now get just a list of IDs for the target list */
-            ArrayList<ContentValues> movieIdList = MovieDbJsonUtils.movieIdListFromJson(result);
+                        batch = new MovieSyncBatch();
+                    }
 
-            /* Delete all the existing entries for the target list type via the content provider */
-            contentProvider.delete(targetTableUri, null, null);
+                    /* The target list is only rewritten when its membership or order changed */
+                    if (listChanged) {
+                        batch.setListMovieIds(listMovieIds);
+                    }
 
-            /* Add all the movie ids to the appropriate table */
-            contentProvider.bulkInsert(targetTableUri,
-                    movieIdList.toArray(new ContentValues[movieIdList.size()]));
+                    /*
+                     * Commit the movies, reviews, trailers and the replacement target list in a
+                     * single transaction via the content provider
+                     */
+                    commitBatch(batch, contentProvider, targetTableUri);
+                    timer.endStage("write");
+                    token.throwIfCancelled();
+                } finally {
+                    claim.release();
+                }
+            }
+
+            /* Posters are stored for offline use only when they don't cost the user data */
+            if (PosterStore.isOnUnmeteredNetwork(context)) {
+                storePosters(context, fetcher, targetTableUri);
+                timer.endStage("posters");
+            }
+
+            SyncStateStore.write(contentProvider, targetTable,
+                    previousState.succeeded(System.currentTimeMillis(), listHash, listChanged));
+
+            return true;
+        } catch (CancellationException e) {
+            Log.d(TAG, "Sync of " + targetTable + " cancelled");
+            return false;
+        } catch (InterruptedException e) {
+            /* Only a cancelled sync is interrupted */
+            Thread.currentThread().interrupt();
+            Log.d(TAG, "Sync of " + targetTable + " cancelled");
+            return false;
         } catch (Exception e) {
-            Log.e(TAG, "Unable to sync: " + e.toString());
+            /* Cancelling interrupts the sync thread, so a stopped sync can fail with an
+             * InterruptedIOException or similar - that is not a failure of the target */
+            if (token.isCancelled()) {
+                Log.d(TAG, "Sync of " + targetTable + " cancelled");
+            } else {
+                Log.e(TAG, "Unable to sync: " + e.toString());
+                recordFailure(context.getContentResolver(), targetTable);
+            }
+            return false;
+        } finally {
+            fetcher.shutdown();
+            NetworkUtils.flushResponseCache();
+            Log.d(TAG, "Sync stages of " + targetTable + ": " + timer);
+            Log.d(TAG, "HTTP response cache: " + NetworkUtils.getResponseCacheStats());
+        }
+    }
+
+    /**
+     * Count a failed sync in the sync state of a target, so its retries back off. Cancelled
+     * syncs aren't failures and aren't counted.
+     *
+     * @param contentResolver the resolver to query and write the sync state with
+     * @param targetTable the provider Uri of the target list
+     */
+    private static void recordFailure(@NonNull final ContentResolver contentResolver,
+                                      @NonNull final String targetTable) {
+        SyncStateStore.write(contentResolver, targetTable,
+                SyncStateStore.query(contentResolver, targetTable).failed());
+    }
+
+    /**
+     * Commit a sync batch. Concurrent syncs commit one at a time, so their transactions never
+     * contend for the database.
+     *
+     * @param batch the rows to commit
+     * @param contentResolver the resolver to commit through
+     * @param listUri the provider Uri of the target list
+     */
+    private static void commitBatch(@NonNull final MovieSyncBatch batch,
+                                    @NonNull final ContentResolver contentResolver,
+                                    @NonNull final Uri listUri) {
+        synchronized (SyncCoordinator.COMMIT_LOCK) {
+            batch.commit(contentResolver, listUri);
+        }
+    }
+
+    /**
+     * Download the posters of a list that are not yet in the poster store, then trim the store
+     * keeping the favorites' posters.
+     *
+     * @param context the current context
+     * @param fetcher the fetcher to download with
+     * @param listUri the provider Uri of the list
+     * @throws IOException if a poster url can't be built
+     */
+    private static void storePosters(@NonNull final Context context,
+                                     @NonNull final ConcurrentFetcher fetcher,
+                                     @NonNull final Uri listUri) throws IOException {
+        ContentResolver contentResolver = context.getContentResolver();
+
+        /* Posters are stored at the size of a grid cell */
+        int posterWidth = PosterStore.gridPosterWidth(context);
+
+        List<URL> posterUrls = new ArrayList<>();
+        for (String posterPath : queryPosterPaths(contentResolver, listUri)) {
+            if (PosterStore.find(context, posterPath) != null) continue;
+
+            posterUrls.add(new URL(PosterUrls.posterUrl(posterPath, posterWidth)));
+        }
+
+        List<Boolean> stored = fetcher.fetchAll(posterUrls,
+                new ConcurrentFetcher.UrlLoader<Boolean>() {
+            @Override
+            public Boolean load(URL url, int timeoutMillis) throws IOException {
+                return PosterStore.download(context, url, timeoutMillis);
+            }
+        });
+
+        Log.d(TAG, "Stored " + (stored.size() - Collections.frequency(stored, null)) +
+                " of " + stored.size() + " new posters");
+
+        PosterStore.trim(context, queryPosterPaths(contentResolver,
+                MovieContract.FavoriteEntry.CONTENT_URI));
+    }
+
+    /**
+     * Get the poster paths of the movies of a list.
+     *
+     * @param contentResolver the resolver to query the movie provider with
+     * @param listUri the provider Uri of the list
+     * @return the poster paths of the list's movies that have a poster
+     */
+    private static Set<String> queryPosterPaths(@NonNull final ContentResolver contentResolver,
+                                                @NonNull final Uri listUri) {
+        Set<String> posterPaths = new HashSet<>();
+
+        Cursor cursor = contentResolver.query(listUri,
+                new String[]{MovieContract.MovieEntry.COLUMN_POSTER_PATH},
+                null,
+                null,
+                null);
+
+        if (cursor == null) return posterPaths;
+
+        try {
+            while (cursor.moveToNext()) {
+                /* Movies without a poster have an empty path */
+                String posterPath = cursor.getString(0);
+                if (!TextUtils.isEmpty(posterPath)) posterPaths.add(posterPath);
+            }
+        } finally {
+            cursor.close();
+        }
+        return posterPaths;
+    }
+
+    /**
+     * Find the movies of a list that are not stored, or were last synced too long ago. Long
+     * lists are queried in chunks so no query has more arguments than SQLite allows.
+     *
+     * @param contentResolver the resolver to query the movie provider with
+     * @param listMovieIds the movie ids of the list
+     * @return the ids of the movies that need their details fetched, in list order
+     */
+    static long[] findStaleMovieIds(@NonNull final ContentResolver contentResolver,
+                                    @NonNull final long[] listMovieIds) {
+
+        String syncedSince = String.valueOf(System.currentTimeMillis() - MOVIE_STALE_AFTER_MILLIS);
+
+        Set<Long> freshMovieIds = new HashSet<>();
+
+        /* One argument is taken by the sync time, the rest of each chunk by movie ids */
+        for (int chunkStart = 0; chunkStart < listMovieIds.length;
+             chunkStart += MAX_QUERY_ARGUMENTS - 1) {
+            int chunkEnd = Math.min(listMovieIds.length, chunkStart + MAX_QUERY_ARGUMENTS - 1);
+
+            StringBuilder selection = new StringBuilder()
+                    .append(MovieContract.MovieEntry.COLUMN_LAST_SYNCED).append(" >= ? AND ")
+                    .append(MovieContract.MovieEntry.COLUMN_MOVIE_ID).append(" IN (");
+
+            String[] selectionArgs = new String[chunkEnd - chunkStart + 1];
+            selectionArgs[0] = syncedSince;
+
+            for (int i = chunkStart; i < chunkEnd; i++) {
+                selection.append(i == chunkStart ? "?" : ",?");
+                selectionArgs[i - chunkStart + 1] = String.valueOf(listMovieIds[i]);
+            }
+            selection.append(")");
+
+            Cursor cursor = contentResolver.query(MovieContract.MovieEntry.CONTENT_URI,
+                    new String[]{MovieContract.MovieEntry.COLUMN_MOVIE_ID},
+                    selection.toString(),
+                    selectionArgs,
+                    null);
+
+            if (cursor != null) {
+                try {
+                    while (cursor.moveToNext()) {
+                        freshMovieIds.add(cursor.getLong(0));
+                    }
+                } finally {
+                    cursor.close();
+                }
+            }
+        }
+
+        long[] staleMovieIds = new long[listMovieIds.length];
+        int staleCount = 0;
+
+        for (long movieId : listMovieIds) {
+            if (!freshMovieIds.contains(movieId)) {
+                staleMovieIds[staleCount++] = movieId;
+            }
+        }
+
+        return Arrays.copyOf(staleMovieIds, staleCount);
+    }
+
+    /**
+     * Get the movie ids currently stored for a list, in list order.
+     *
+     * @param contentResolver the resolver to query the movie provider with
+     * @param listUri the provider Uri of the list
+     * @return the stored movie ids, empty if the list is empty
+     */
+    private static long[] queryListMovieIds(@NonNull final ContentResolver contentResolver,
+                                            @NonNull final Uri listUri) {
+
+        Cursor cursor = contentResolver.query(listUri,
+                new String[]{MovieContract.GLOBAL_COLUMN_MOVIE_ID},
+                null,
+                null,
+                null);
+
+        if (cursor == null) return new long[0];
+
+        try {
+            int movieIdIndex = cursor.getColumnIndexOrThrow(MovieContract.GLOBAL_COLUMN_MOVIE_ID);
+            long[] movieIds = new long[cursor.getCount()];
+
+            for (int i = 0; cursor.moveToNext(); i++) {
+                movieIds[i] = cursor.getLong(movieIdIndex);
+            }
+            return movieIds;
+        } finally {
+            cursor.close();
         }
     }
 }
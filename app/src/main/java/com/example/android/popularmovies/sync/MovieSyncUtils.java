@@ -2,10 +2,10 @@ package com.example.android.popularmovies.sync;
 
 import android.content.Context;
 import android.content.Intent;
-import android.database.Cursor;
 import android.net.Uri;
 import android.os.Bundle;
 import android.support.annotation.NonNull;
+import android.util.Log;
 
 import com.example.android.popularmovies.data.MovieContract;
 import com.example.android.popularmovies.utilities.NetworkUtils;
@@ -23,18 +23,18 @@ import java.util.concurrent.TimeUnit;
  * Utility methods for initializing the periodic synchronization of the local database and
  * determining if the database requires to be immediately synchronized due to lack of data.
  * A mechanism for launching separate periodic synchronizations is provided to avoid hitting
- * the remote movie db service limit of 40 transactions in 10 seconds.
+ * the remote movie db service limit of 40 transactions in 10 seconds. Each target's next sync
+ * is scheduled from its sync state by the SyncScheduler.
  */
 public class MovieSyncUtils {
 
-    /* Sync once per day - the update period for the popular and top rated on the movie db service */
-    private static final int SYNC_INTERVAL_DAYS = 1;
+    private static final String TAG = MovieSyncUtils.class.getSimpleName();
 
-    private static final int SYNC_INTERVAL_HOURS = (int) TimeUnit.DAYS.toHours(SYNC_INTERVAL_DAYS );
-    private static final int SYNC_INTERVAL_SECONDS = (int) TimeUnit.HOURS.toSeconds(SYNC_INTERVAL_HOURS);
+    /* Provide some flexibility on the update time - half the delay, but at least this long */
+    private static final int SYNC_MIN_FLEXIBLE_SECONDS = (int) TimeUnit.MINUTES.toSeconds(5);
 
-    /* Provide some flixibility on the update time */
-    private static final int SYNC_FLEXIBLE_SECONDS = SYNC_INTERVAL_SECONDS / 2;
+    /* The number of pages of each list to sync - the movie db serves 20 movies a page */
+    private static final int SYNC_LIST_PAGE_COUNT = 5;
 
     /* true if the jobs have already been initialized */
     private static boolean sInitialized;
@@ -43,13 +43,15 @@ public class MovieSyncUtils {
     private static MovieSyncArgs POPULAR_UPDATE_ARGS = new MovieSyncArgs(
             "popular",
             MovieContract.PopularEntry.CONTENT_URI.toString(),
-            NetworkUtils.POPULAR_URL.toString());
+            NetworkUtils.POPULAR_URL.toString(),
+            SYNC_LIST_PAGE_COUNT);
 
     /* The arguments required for the top rated movies synchronization */
     private static MovieSyncArgs TOP_RATED_UPDATE_ARGS = new MovieSyncArgs(
             "top_rated",
             MovieContract.TopRatedEntry.CONTENT_URI.toString(),
-            NetworkUtils.TOP_RATED_URL.toString());
+            NetworkUtils.TOP_RATED_URL.toString(),
+            SYNC_LIST_PAGE_COUNT);
 
     /* The synchronization targets - other should be added here */
     private static MovieSyncArgs[] SYNC_TARGETS = {POPULAR_UPDATE_ARGS, TOP_RATED_UPDATE_ARGS};
@@ -69,20 +71,26 @@ public class MovieSyncUtils {
     }
 
     /**
-     * Schedule a firebase job for the specified synchronization arguments.
+     * Schedule a firebase job for the specified synchronization arguments, replacing any job
+     * already scheduled for them. The job runs once - it schedules the next job when it finishes.
      * @param context the current context
      * @param syncArgs the arguments that the job will use
+     * @param delayMillis the delay before the job should run
      */
     private static void scheduleFirebaseJobDispatcherSync(@NonNull final Context context,
-                                                  @NonNull final MovieSyncArgs syncArgs){
+                                                  @NonNull final MovieSyncArgs syncArgs,
+                                                  long delayMillis){
 
         Driver driver = new GooglePlayDriver(context);
         FirebaseJobDispatcher dispatcher = new FirebaseJobDispatcher(driver);
 
+        int delaySeconds = (int) TimeUnit.MILLISECONDS.toSeconds(delayMillis);
+
         Bundle jobExtraArgs = new Bundle();
 
         jobExtraArgs.putString(MovieSyncArgs.EXTRA_TARGET_URL, syncArgs.getTargetRemoteURL());
         jobExtraArgs.putString(MovieSyncArgs.EXTRA_TARGET_TABLE, syncArgs.getTargetDatabaseUri());
+        jobExtraArgs.putInt(MovieSyncArgs.EXTRA_PAGE_COUNT, syncArgs.getPageCount());
 
         Job syncMoviesJob = dispatcher.newJobBuilder()
 
@@ -95,10 +103,10 @@ public class MovieSyncUtils {
                 .setTag(syncArgs.getTagName())
                 .setConstraints(Constraint.ON_ANY_NETWORK)
                 .setTrigger(Trigger.executionWindow(
-                        SYNC_INTERVAL_SECONDS,
-                        SYNC_INTERVAL_SECONDS + SYNC_FLEXIBLE_SECONDS))
+                        delaySeconds,
+                        delaySeconds + Math.max(delaySeconds / 2, SYNC_MIN_FLEXIBLE_SECONDS)))
                 .setLifetime(Lifetime.FOREVER)
-                .setRecurring(true)
+                .setRecurring(false)
                 .setReplaceCurrent(true)
                 .build();
 
@@ -106,7 +114,34 @@ public class MovieSyncUtils {
     }
 
     /**
-     * If not already initialized create a sync job for each remote target.
+     * Schedule the next sync of a target for when its sync state says it is due. Reads the sync
+     * state so must not be called on the main thread. A target whose state can't be read is
+     * retried soon, so its syncs never stop.
+     *
+     * @param context the current context
+     * @param targetTable the provider Uri of the target list
+     */
+    static void scheduleNextSync(@NonNull final Context context,
+                                 @NonNull final String targetTable) {
+        MovieSyncArgs args = syncArgsForUri(targetTable);
+
+        if (args == null) return;
+
+        long delayMillis;
+        try {
+            SyncState state = SyncStateStore.query(context.getContentResolver(), targetTable);
+            delayMillis = SyncScheduler.delayMillis(state, System.currentTimeMillis());
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Unable to read the sync state of " + targetTable, e);
+            delayMillis = SyncScheduler.FIRST_RETRY_MILLIS;
+        }
+
+        scheduleFirebaseJobDispatcherSync(context, args, delayMillis);
+    }
+
+    /**
+     * If not already initialized create a sync job for each remote target. The jobs are
+     * scheduled in the background as each target's sync state is read to time its job.
      *
      * @param context the current Context
      */
@@ -116,55 +151,58 @@ public class MovieSyncUtils {
 
         sInitialized = true;
 
-        for (MovieSyncArgs args: SYNC_TARGETS)
-        {
-            MovieSyncUtils.scheduleFirebaseJobDispatcherSync(context, args);
-        }
+        final Context applicationContext = context.getApplicationContext();
+
+        SyncExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                for (MovieSyncArgs args: SYNC_TARGETS)
+                {
+                    scheduleNextSync(applicationContext, args.getTargetDatabaseUri());
+                }
+            }
+        });
     }
 
     /**
-     * Check if the requested target has an local data from the provider. If not sync
-     * immediately.
+     * Start an immediate sync of a target the movie list loader found empty. The loader has
+     * already queried and counted the target in the background, so no query is made here and
+     * it's safe to call on the main thread.
      *
      * @param context the current context
      * @param target the local target Uri for the movie provider
+     * @param loadedCount the number of movies the loader found for the target
+     * @return true if a sync of the target was started
      */
-    synchronized public static void checkDataAvailableForTarget(@NonNull final Context context,
-                                                                Uri target) {
+    public static boolean syncIfEmpty(@NonNull final Context context,
+                                      @NonNull final Uri target,
+                                      int loadedCount) {
+        if (loadedCount > 0) return false;
 
         MovieSyncArgs args = syncArgsForUri(target.toString());
 
         if (args == null){
-            return;
+            return false;
         }
 
-        String[] projectionColumns = {MovieContract.MovieEntry.COLUMN_MOVIE_ID};
-
-        /* Check to see if the provider has anything for our target query */
-        Cursor cursor = context.getContentResolver().query(
-                target,
-                projectionColumns,
-                null,
-                null,
-                null);
-
-        if (null == cursor || cursor.getCount() == 0) {
-            startSyncNow(context, args);
-        }
-
-        /* Close the Cursor to avoid memory leaks */
-        if (cursor != null) cursor.close();
+        return startSyncNow(context, args);
     }
 
     /**
-     * Start an immediate asynchronous synchronization by starting an the IntentService.
+     * Start an immediate asynchronous synchronization by starting an the IntentService. Repeated
+     * requests while the sync is queued or running, or soon after it succeeded, are dropped.
      * @param context The current context
+     * @return true if the sync was started
      */
-    private static void startSyncNow(@NonNull final Context context, MovieSyncArgs syncArgs) {
+    private static boolean startSyncNow(@NonNull final Context context, MovieSyncArgs syncArgs) {
+        if (!SyncFlights.request(syncArgs.getTargetDatabaseUri())) return false;
+
         Intent intentToSyncImmediately = new Intent(context, MovieSyncIntentService.class);
 
         intentToSyncImmediately.putExtra(MovieSyncArgs.MOVIE_SYNC_EXTRA_ARGS, syncArgs);
 
         context.startService(intentToSyncImmediately);
+
+        return true;
     }
 }
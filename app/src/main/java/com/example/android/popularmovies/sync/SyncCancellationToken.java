@@ -0,0 +1,44 @@
+package com.example.android.popularmovies.sync;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Future;
+
+/**
+ * Lets a running sync be cancelled. The sync checks the token between its stages and stops at
+ * the next check once the token is cancelled. Cancelling also interrupts the sync thread so a
+ * stage waiting on the network gives up straight away.
+ */
+final class SyncCancellationToken {
+
+    private volatile boolean mCancelled;
+
+    /* The sync running with this token, or null if it isn't run on the sync executor */
+    private volatile Future<?> mFuture;
+
+    void setFuture(Future<?> future) {
+        mFuture = future;
+    }
+
+    /**
+     * Cancel the sync. Safe to call on any thread, and more than once.
+     */
+    void cancel() {
+        mCancelled = true;
+
+        Future<?> future = mFuture;
+        if (future != null) future.cancel(true);
+    }
+
+    boolean isCancelled() {
+        return mCancelled;
+    }
+
+    /**
+     * Stop the sync if it has been cancelled.
+     *
+     * @throws CancellationException if the sync has been cancelled
+     */
+    void throwIfCancelled() {
+        if (mCancelled) throw new CancellationException("Sync cancelled");
+    }
+}
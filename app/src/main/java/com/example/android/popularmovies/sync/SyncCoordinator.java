@@ -0,0 +1,119 @@
+package com.example.android.popularmovies.sync;
+
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coordinates syncs of different targets running at the same time. The lists share many
+ * movies, so before fetching movie details a sync claims the movies it needs - a movie whose
+ * details another sync is already fetching is left to that sync, and waited for before the
+ * list that shows it is committed. Only the commits themselves are made one at a time.
+ */
+final class SyncCoordinator {
+
+    /* Commits of concurrent syncs are made one at a time, holding this lock */
+    static final Object COMMIT_LOCK = new Object();
+
+    /* The longest a sync waits for the movie details another sync is fetching */
+    private static final long MAX_WAIT_MILLIS = TimeUnit.MINUTES.toMillis(2);
+
+    /* The movies whose details are being fetched, mapped to the latch of the claiming sync */
+    private static final ConcurrentMap<Long, CountDownLatch> sInFlightDetails =
+            new ConcurrentHashMap<>();
+
+    private SyncCoordinator() {}
+
+    /**
+     * The movies a sync claimed, and the claims of other syncs it has to wait for.
+     */
+    static final class Claim {
+
+        private final long[] mMovieIds;
+        private final List<CountDownLatch> mOtherClaims;
+        private final CountDownLatch mReleased;
+
+        private Claim(long[] movieIds, List<CountDownLatch> otherClaims,
+                      CountDownLatch released) {
+            mMovieIds = movieIds;
+            mOtherClaims = otherClaims;
+            mReleased = released;
+        }
+
+        /**
+         * @return the movies this sync fetches the details of, in the requested order
+         */
+        long[] getMovieIds() {
+            return mMovieIds;
+        }
+
+        /**
+         * @return true if some of the requested movies are being fetched by other syncs
+         */
+        boolean hasOtherClaims() {
+            return !mOtherClaims.isEmpty();
+        }
+
+        /**
+         * Release the claimed movies once their details are committed, or failed to fetch.
+         * Safe to call more than once.
+         */
+        void release() {
+            for (long movieId : mMovieIds) {
+                sInFlightDetails.remove(movieId, mReleased);
+            }
+            mReleased.countDown();
+        }
+
+        /**
+         * Wait until the other syncs have released the requested movies they claimed.
+         *
+         * @param token cancels the wait
+         * @throws InterruptedException if the sync thread is interrupted while waiting
+         */
+        void awaitOtherClaims(@NonNull SyncCancellationToken token) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + MAX_WAIT_MILLIS;
+
+            for (CountDownLatch otherClaim : mOtherClaims) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0 || !otherClaim.await(remaining, TimeUnit.MILLISECONDS)) {
+                    return;
+                }
+                token.throwIfCancelled();
+            }
+        }
+    }
+
+    /**
+     * Claim the movies whose details a sync needs. Every claim must be released.
+     *
+     * @param movieIds the movies needing their details fetched
+     * @return the claim, holding just the movies no other sync is fetching
+     */
+    static Claim claim(@NonNull long[] movieIds) {
+        long[] claimedMovieIds = new long[movieIds.length];
+        int claimedCount = 0;
+        List<CountDownLatch> otherClaims = new ArrayList<>();
+
+        /* Other syncs wait on this latch for the claimed movies */
+        CountDownLatch released = new CountDownLatch(1);
+
+        for (long movieId : movieIds) {
+            CountDownLatch otherClaim = sInFlightDetails.putIfAbsent(movieId, released);
+
+            if (otherClaim == null) {
+                claimedMovieIds[claimedCount++] = movieId;
+            } else if (otherClaim != released && !otherClaims.contains(otherClaim)) {
+                otherClaims.add(otherClaim);
+            }
+        }
+
+        return new Claim(Arrays.copyOf(claimedMovieIds, claimedCount), otherClaims, released);
+    }
+}
@@ -0,0 +1,90 @@
+package com.example.android.popularmovies.sync;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the scheduled movie syncs on dedicated background threads, so a sync never queues
+ * behind, or holds up, the process wide AsyncTask executor. Each sync is given a cancellation
+ * token so the scheduler can stop it.
+ */
+final class SyncExecutor {
+
+    private static final String TAG = SyncExecutor.class.getSimpleName();
+
+    /**
+     * A sync to run, which should check its token between stages.
+     */
+    interface SyncJob {
+        void run(@NonNull SyncCancellationToken token);
+    }
+
+    /* One thread per sync target, so the popular and top rated syncs run at the same time */
+    private static final int SYNC_THREADS = 2;
+
+    private static final ExecutorService sSyncExecutor =
+            Executors.newFixedThreadPool(SYNC_THREADS, new ThreadFactory() {
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(@NonNull final Runnable runnable) {
+            return new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }
+            }, "MovieSync #" + mCount.incrementAndGet());
+        }
+    });
+
+    private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+
+    private SyncExecutor() {}
+
+    /**
+     * Run a short piece of sync work, such as scheduling, in the background.
+     *
+     * @param task the work to run
+     */
+    static void execute(@NonNull final Runnable task) {
+        sSyncExecutor.execute(task);
+    }
+
+    /**
+     * Run a sync in the background. Nothing reads the result of a sync, so an exception that
+     * escapes it is logged rather than held unseen in its future.
+     *
+     * @param job the sync
+     * @param onFinished run on the main thread once the sync has finished or stopped, unless
+     *                   it is cancelled before it starts
+     * @return the token that cancels the sync
+     */
+    static SyncCancellationToken submit(@NonNull final SyncJob job,
+                                        @NonNull final Runnable onFinished) {
+        final SyncCancellationToken token = new SyncCancellationToken();
+
+        token.setFuture(sSyncExecutor.submit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if (!token.isCancelled()) job.run(token);
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "Sync failed", e);
+                } finally {
+                    sMainHandler.post(onFinished);
+                }
+            }
+        }));
+
+        return token;
+    }
+}
@@ -0,0 +1,137 @@
+package com.example.android.popularmovies.sync;
+
+import android.support.annotation.NonNull;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single flight syncs of each target. A sync asked for while another sync of the same target is
+ * running joins the running sync and shares its result rather than fetching everything again,
+ * and a sync asked for shortly after a successful one is skipped - the data is still fresh.
+ *
+ * Targets are identified by the provider Uri of their list.
+ */
+final class SyncFlights {
+
+    /* After a successful sync the target's data is fresh for this long */
+    static final long FRESH_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+    private static final Object sLock = new Object();
+
+    /* The running sync of each target */
+    private static final Map<String, FutureTask<Boolean>> sInFlight = new HashMap<>();
+
+    /* The targets with an immediate sync requested but not yet finished */
+    private static final Set<String> sRequested = new HashSet<>();
+
+    /* When each target last synced successfully */
+    private static final Map<String, Long> sLastSuccessMillis = new HashMap<>();
+
+    private SyncFlights() {}
+
+    private static boolean isFresh(String target, long now) {
+        Long lastSuccessMillis = sLastSuccessMillis.get(target);
+        return lastSuccessMillis != null && now - lastSuccessMillis < FRESH_MILLIS;
+    }
+
+    /**
+     * Ask for an immediate sync of a target. Requests are coalesced - only the first request
+     * until its sync finishes needs a sync started.
+     *
+     * @param target the provider Uri of the target list
+     * @return true if a sync should be started, false if one is already requested or running,
+     *         or the target's data is fresh
+     */
+    static boolean request(@NonNull String target) {
+        synchronized (sLock) {
+            if (isFresh(target, System.currentTimeMillis()) ||
+                    sInFlight.containsKey(target) ||
+                    sRequested.contains(target)) {
+                return false;
+            }
+
+            sRequested.add(target);
+            return true;
+        }
+    }
+
+    /**
+     * Sync a target, unless its data is fresh. If the target is already being synced, wait for
+     * that sync and share its result - unless that sync is cancelled, when the target is synced
+     * again by this caller.
+     *
+     * @param target the provider Uri of the target list
+     * @param sync the sync, returning true if it succeeded, and throwing CancellationException
+     *             if it was cancelled
+     * @return true if the target's data is fresh, or the sync succeeded
+     * @throws InterruptedException if interrupted while waiting for the running sync
+     */
+    static boolean run(@NonNull String target, @NonNull Callable<Boolean> sync)
+            throws InterruptedException {
+        try {
+            while (true) {
+                FutureTask<Boolean> flight;
+                boolean ownFlight = false;
+
+                synchronized (sLock) {
+                    if (isFresh(target, System.currentTimeMillis())) return true;
+
+                    flight = sInFlight.get(target);
+                    if (flight == null) {
+                        flight = new FutureTask<>(sync);
+                        sInFlight.put(target, flight);
+                        ownFlight = true;
+                    }
+                }
+
+                if (ownFlight) {
+                    try {
+                        flight.run();
+                    } finally {
+                        synchronized (sLock) {
+                            sInFlight.remove(target);
+
+                            if (succeeded(flight)) {
+                                sLastSuccessMillis.put(target, System.currentTimeMillis());
+                            }
+                        }
+                    }
+                }
+
+                try {
+                    return flight.get();
+                } catch (ExecutionException e) {
+                    /* A cancelled sync says nothing about the target, so a caller that joined
+                     * it syncs the target itself */
+                    if (!ownFlight && e.getCause() instanceof CancellationException) continue;
+
+                    return false;
+                }
+            }
+        } finally {
+            /* The request has been served, whichever sync served it */
+            synchronized (sLock) {
+                sRequested.remove(target);
+            }
+        }
+    }
+
+    /**
+     * Check the result of a finished sync.
+     */
+    private static boolean succeeded(FutureTask<Boolean> flight) {
+        try {
+            return Boolean.TRUE.equals(flight.get());
+        } catch (InterruptedException | ExecutionException e) {
+            return false;
+        }
+    }
+}
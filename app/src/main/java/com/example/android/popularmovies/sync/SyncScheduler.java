@@ -0,0 +1,60 @@
+package com.example.android.popularmovies.sync;
+
+import android.support.annotation.NonNull;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Works out when a target should next sync from its sync state. A list that keeps changing is
+ * synced more often, a list that has been stable for a while less often, and a target whose
+ * syncs keep failing backs off exponentially.
+ */
+final class SyncScheduler {
+
+    /* The shortest interval, for a list that changed at its last sync */
+    static final long MIN_INTERVAL_MILLIS = TimeUnit.HOURS.toMillis(6);
+
+    /* The longest interval, so even a stable list never goes long without a sync */
+    static final long MAX_INTERVAL_MILLIS = TimeUnit.DAYS.toMillis(3);
+
+    /* The retry interval after the first failure - doubled after each further failure */
+    static final long FIRST_RETRY_MILLIS = TimeUnit.MINUTES.toMillis(15);
+
+    private SyncScheduler() {}
+
+    /**
+     * Get the interval from a target's last sync to its next one.
+     *
+     * A successful sync is followed after as long as the list had been stable for, so the
+     * interval grows while the list stays the same and drops as soon as it changes.
+     *
+     * @param state the target's sync state
+     * @return the interval
+     */
+    static long intervalMillis(@NonNull SyncState state) {
+        if (state.failureCount > 0) {
+            /* Capped before shifting so many failures can't overflow */
+            int doublings = Math.min(state.failureCount - 1, 16);
+            return Math.min(FIRST_RETRY_MILLIS << doublings, MAX_INTERVAL_MILLIS);
+        }
+
+        long stableMillis = state.lastSuccessMillis - state.lastChangeMillis;
+        return Math.max(MIN_INTERVAL_MILLIS, Math.min(stableMillis, MAX_INTERVAL_MILLIS));
+    }
+
+    /**
+     * Get the delay until a target's next sync.
+     *
+     * @param state the target's sync state
+     * @param nowMillis the current time
+     * @return the delay, 0 if the sync is due now
+     */
+    static long delayMillis(@NonNull SyncState state, long nowMillis) {
+        /* The time of a failure isn't recorded, so retries are counted from now */
+        if (state.failureCount > 0) return intervalMillis(state);
+
+        if (!state.hasSucceeded()) return 0;
+
+        return Math.max(0, state.lastSuccessMillis + intervalMillis(state) - nowMillis);
+    }
+}
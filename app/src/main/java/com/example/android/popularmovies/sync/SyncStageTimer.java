@@ -0,0 +1,33 @@
+package com.example.android.popularmovies.sync;
+
+/**
+ * Times the stages of a sync, for a one line report of where the time of the sync went.
+ */
+final class SyncStageTimer {
+
+    private final StringBuilder mReport = new StringBuilder();
+
+    private long mStageStartNanos = System.nanoTime();
+
+    /**
+     * End the current stage and start the next.
+     *
+     * @param stage the name of the stage that ended
+     */
+    void endStage(String stage) {
+        long now = System.nanoTime();
+
+        if (mReport.length() > 0) mReport.append(", ");
+        mReport.append(stage).append(' ').append((now - mStageStartNanos) / 1000000).append("ms");
+
+        mStageStartNanos = now;
+    }
+
+    /**
+     * @return the duration of every ended stage, in order
+     */
+    @Override
+    public String toString() {
+        return mReport.length() == 0 ? "no stages" : mReport.toString();
+    }
+}
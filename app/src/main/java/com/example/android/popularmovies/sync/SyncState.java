@@ -0,0 +1,83 @@
+package com.example.android.popularmovies.sync;
+
+import android.support.annotation.NonNull;
+
+/**
+ * How the syncs of a target have gone - when it last synced successfully, when its list last
+ * changed, a hash of the list and how many syncs have failed since. Immutable, each sync
+ * outcome gives a new state.
+ */
+final class SyncState {
+
+    /* The state of a target that has never synced */
+    static final SyncState NEVER_SYNCED = new SyncState(0, 0, 0, 0);
+
+    /* When the target last synced successfully, 0 if it never has */
+    final long lastSuccessMillis;
+
+    /* When a successful sync last found the target list changed */
+    final long lastChangeMillis;
+
+    /* Hash of the movie ids of the list the last successful sync fetched */
+    final long responseHash;
+
+    /* The syncs that have failed since the last successful sync */
+    final int failureCount;
+
+    SyncState(long lastSuccessMillis, long lastChangeMillis, long responseHash,
+              int failureCount) {
+        this.lastSuccessMillis = lastSuccessMillis;
+        this.lastChangeMillis = lastChangeMillis;
+        this.responseHash = responseHash;
+        this.failureCount = failureCount;
+    }
+
+    /**
+     * @return true if the target has ever synced successfully
+     */
+    boolean hasSucceeded() {
+        return lastSuccessMillis > 0;
+    }
+
+    /**
+     * Get the state after a successful sync.
+     *
+     * @param nowMillis when the sync finished
+     * @param responseHash the hash of the fetched list
+     * @param listChanged true if the fetched list differed from the stored list
+     * @return the new state, with the failures cleared
+     */
+    @NonNull
+    SyncState succeeded(long nowMillis, long responseHash, boolean listChanged) {
+        return new SyncState(nowMillis, listChanged ? nowMillis : lastChangeMillis,
+                responseHash, 0);
+    }
+
+    /**
+     * Get the state after a failed sync.
+     *
+     * @return the new state, with one more failure
+     */
+    @NonNull
+    SyncState failed() {
+        return new SyncState(lastSuccessMillis, lastChangeMillis, responseHash,
+                failureCount + 1);
+    }
+
+    /**
+     * Hash the movie ids of a list, in order. 64 bits so two different lists practically never
+     * share a hash.
+     *
+     * @param movieIds the movie ids of the list
+     * @return the hash of the list
+     */
+    static long hashMovieIds(@NonNull long[] movieIds) {
+        /* FNV-1a over each id */
+        long hash = 0xcbf29ce484222325L;
+        for (long movieId : movieIds) {
+            hash ^= movieId;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+}
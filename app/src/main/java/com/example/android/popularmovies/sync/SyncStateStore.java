@@ -0,0 +1,76 @@
+package com.example.android.popularmovies.sync;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.support.annotation.NonNull;
+
+import com.example.android.popularmovies.data.MovieContract.SyncStateEntry;
+
+/**
+ * Reads and writes the sync state of each target through the movie provider.
+ */
+final class SyncStateStore {
+
+    private static final String[] SYNC_STATE_PROJECTION = {
+            SyncStateEntry.COLUMN_LAST_SUCCESS,
+            SyncStateEntry.COLUMN_LAST_CHANGE,
+            SyncStateEntry.COLUMN_RESPONSE_HASH,
+            SyncStateEntry.COLUMN_FAILURE_COUNT
+    };
+
+    private static final int INDEX_LAST_SUCCESS = 0;
+    private static final int INDEX_LAST_CHANGE = 1;
+    private static final int INDEX_RESPONSE_HASH = 2;
+    private static final int INDEX_FAILURE_COUNT = 3;
+
+    private SyncStateStore() {}
+
+    /**
+     * Get the sync state of a target.
+     *
+     * @param contentResolver the resolver to query the movie provider with
+     * @param target the provider Uri of the target list
+     * @return the target's state, NEVER_SYNCED if it has no state yet
+     */
+    @NonNull
+    static SyncState query(@NonNull ContentResolver contentResolver, @NonNull String target) {
+        Cursor cursor = contentResolver.query(SyncStateEntry.CONTENT_URI,
+                SYNC_STATE_PROJECTION,
+                SyncStateEntry.COLUMN_TARGET + " = ? ",
+                new String[]{target},
+                null);
+
+        if (cursor == null) return SyncState.NEVER_SYNCED;
+
+        try {
+            if (!cursor.moveToFirst()) return SyncState.NEVER_SYNCED;
+
+            return new SyncState(cursor.getLong(INDEX_LAST_SUCCESS),
+                    cursor.getLong(INDEX_LAST_CHANGE),
+                    cursor.getLong(INDEX_RESPONSE_HASH),
+                    cursor.getInt(INDEX_FAILURE_COUNT));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Store the sync state of a target, replacing its previous state.
+     *
+     * @param contentResolver the resolver to write through
+     * @param target the provider Uri of the target list
+     * @param state the target's new state
+     */
+    static void write(@NonNull ContentResolver contentResolver, @NonNull String target,
+                      @NonNull SyncState state) {
+        ContentValues values = new ContentValues();
+        values.put(SyncStateEntry.COLUMN_TARGET, target);
+        values.put(SyncStateEntry.COLUMN_LAST_SUCCESS, state.lastSuccessMillis);
+        values.put(SyncStateEntry.COLUMN_LAST_CHANGE, state.lastChangeMillis);
+        values.put(SyncStateEntry.COLUMN_RESPONSE_HASH, state.responseHash);
+        values.put(SyncStateEntry.COLUMN_FAILURE_COUNT, state.failureCount);
+
+        contentResolver.insert(SyncStateEntry.CONTENT_URI, values);
+    }
+}
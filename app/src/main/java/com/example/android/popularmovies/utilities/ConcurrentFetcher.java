@@ -0,0 +1,164 @@
+package com.example.android.popularmovies.utilities;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fetches a list of URLs with a bounded number of concurrent requests. Results are returned in
+ * the same order as the requested URLs so callers can treat the fetch as a drop in replacement
+ * for a serial loop.
+ */
+public final class ConcurrentFetcher {
+
+    /**
+     * Loads a single URL. Implementations should honour the timeout for both the connection and
+     * the read of the response.
+     *
+     * @param <T> the type of the loaded result
+     */
+    public interface UrlLoader<T> {
+        T load(URL url, int timeoutMillis) throws IOException;
+    }
+
+    /**
+     * Told about each URL that could not be fetched. Called on the thread that called fetchAll.
+     */
+    public interface FailureListener {
+        /**
+         * @param url the URL that failed
+         * @param cause the exception the load failed with, or a CancellationException if the
+         *              load was still running at the batch deadline
+         */
+        void onFailure(URL url, Throwable cause);
+    }
+
+    private final int mWorkerCount;
+    private final int mTimeoutMillis;
+    private final FailureListener mFailureListener;
+    private final ExecutorService mExecutor;
+
+    /**
+     * Create a fetcher with a fixed pool of workers that doesn't report failures.
+     *
+     * @param workerCount the maximum number of requests in flight at once
+     * @param timeoutMillis the connect and read timeout applied to each individual request, 0
+     *                      for no timeout
+     */
+    public ConcurrentFetcher(int workerCount, int timeoutMillis) {
+        this(workerCount, timeoutMillis, null);
+    }
+
+    /**
+     * Create a fetcher with a fixed pool of workers.
+     *
+     * @param workerCount the maximum number of requests in flight at once
+     * @param timeoutMillis the connect and read timeout applied to each individual request, 0
+     *                      for no timeout
+     * @param failureListener told about each URL that fails or times out, or null
+     */
+    public ConcurrentFetcher(int workerCount, int timeoutMillis,
+                             @Nullable FailureListener failureListener) {
+        if (workerCount < 1) {
+            throw new IllegalArgumentException("Worker count must be at least 1: " + workerCount);
+        }
+
+        mWorkerCount = workerCount;
+        mTimeoutMillis = timeoutMillis;
+        mFailureListener = failureListener;
+        mExecutor = Executors.newFixedThreadPool(workerCount, new ThreadFactory() {
+            private final AtomicInteger mCount = new AtomicInteger();
+
+            @Override
+            public Thread newThread(@NonNull Runnable runnable) {
+                Thread thread = new Thread(runnable, "ConcurrentFetcher #" + mCount.incrementAndGet());
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Fetch all of the URLs. A URL that fails or times out has a null entry in the result so the
+     * results always line up with the requested URLs.
+     *
+     * @param urls the URLs to fetch
+     * @param loader the loader used for each URL
+     * @param <T> the type of the loaded result
+     * @return the results in the same order as the URLs
+     */
+    public <T> List<T> fetchAll(@NonNull List<URL> urls, @NonNull final UrlLoader<T> loader) {
+
+        List<Callable<T>> tasks = new ArrayList<>(urls.size());
+
+        for (final URL url : urls) {
+            tasks.add(new Callable<T>() {
+                @Override
+                public T call() throws Exception {
+                    return loader.load(url, mTimeoutMillis);
+                }
+            });
+        }
+
+        /* A healthy request takes at most the connect timeout plus the read timeout, so the whole
+         * batch is given that long for every round of workers. Anything still running then, such
+         * as a response trickling in slower than the read timeout notices, is cancelled.
+         */
+        int rounds = (urls.size() + mWorkerCount - 1) / mWorkerCount;
+        long batchTimeoutMillis = (long) Math.max(rounds, 1) * 2 * mTimeoutMillis;
+
+        List<T> results = new ArrayList<>(urls.size());
+
+        List<Future<T>> futures;
+        try {
+            /* Without a request timeout there is nothing to bound the batch by */
+            futures = mTimeoutMillis > 0 ?
+                    mExecutor.invokeAll(tasks, batchTimeoutMillis, TimeUnit.MILLISECONDS) :
+                    mExecutor.invokeAll(tasks);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            for (int i = 0; i < urls.size(); i++) results.add(null);
+            return results;
+        }
+
+        for (int i = 0; i < futures.size(); i++) {
+            T result = null;
+            Throwable failure = null;
+            try {
+                result = futures.get(i).get();
+            } catch (CancellationException e) {
+                failure = e;
+            } catch (ExecutionException e) {
+                failure = e.getCause();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (failure != null && mFailureListener != null) {
+                mFailureListener.onFailure(urls.get(i), failure);
+            }
+            results.add(result);
+        }
+
+        return results;
+    }
+
+    /**
+     * Release the worker threads. The fetcher can't be used after this.
+     */
+    public void shutdown() {
+        mExecutor.shutdownNow();
+    }
+}
@@ -0,0 +1,333 @@
+package com.example.android.popularmovies.utilities;
+
+import android.content.Context;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.support.annotation.NonNull;
+import android.util.LongSparseArray;
+
+import com.example.android.popularmovies.data.FavoriteChanges;
+import com.example.android.popularmovies.data.MovieContract;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * In-process cache of the favorite movie ids. The ids are loaded once from the movie provider
+ * and reloaded whenever the provider notifies a change to the favorites, then published as an
+ * immutable set through a volatile field - so checking a favorite is a lock-free read that
+ * never touches the disk and is safe on the main thread.
+ *
+ * Favorite changes are applied to the cache straight away and written behind: changes made in
+ * quick succession are queued, a change that undoes a queued one cancels it out, and the queue
+ * is committed to the provider in one transaction on a background thread. Changes made before
+ * the ids are first loaded are held until they are, then settled against the stored ids.
+ */
+public final class FavoriteCache {
+
+    /**
+     * Notified on the main thread whenever the favorite ids change.
+     */
+    public interface FavoritesListener {
+        void onFavoritesChanged();
+    }
+
+    /* Changes are queued for this long after the last one before they are written */
+    private static final long WRITE_DELAY_MILLIS = 500;
+
+    /* Loads and writes are made one at a time, in the order they were requested */
+    private static final ExecutorService sFavoriteExecutor =
+            Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(@NonNull final Runnable runnable) {
+            return new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }
+            }, "FavoriteCache");
+        }
+    });
+
+    private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+
+    /*
+     * The favorite ids as displayed - the stored ids with the unwritten changes applied - or
+     * null until they are first loaded. Only replaced on the main thread.
+     */
+    private static volatile LongHashSet sFavoriteIds;
+
+    /* The favorite ids as last loaded from the provider, or null until loaded */
+    private static LongHashSet sStoredFavoriteIds;
+
+    /* Changes queued to be written, and changes being written, by movie id. True to add */
+    private static final LongSparseArray<Boolean> sQueuedChanges = new LongSparseArray<>();
+    private static final LongSparseArray<Boolean> sWritingChanges = new LongSparseArray<>();
+
+    private static final Runnable sWriteQueuedChanges = new Runnable() {
+        @Override
+        public void run() {
+            writeQueuedChanges();
+        }
+    };
+
+    /* Listeners are only touched on the main thread */
+    private static final List<FavoritesListener> sListeners = new ArrayList<>();
+
+    private static Context sContext;
+
+    private FavoriteCache() {}
+
+    /**
+     * Start loading the favorites and watching the provider for changes. Must be called on the
+     * main thread, before the cache is used. Later calls do nothing.
+     *
+     * @param context the current context
+     */
+    public static void initialize(@NonNull final Context context) {
+        if (sContext != null) return;
+
+        sContext = context.getApplicationContext();
+
+        sContext.getContentResolver().registerContentObserver(
+                MovieContract.FavoriteEntry.CONTENT_URI, true,
+                new ContentObserver(sMainHandler) {
+                    @Override
+                    public void onChange(boolean selfChange) {
+                        reload();
+                    }
+                });
+
+        reload();
+    }
+
+    /**
+     * Check whether a movie is a favorite. Lock free and never does IO, so it is safe to call
+     * on any thread.
+     *
+     * @param movieId the movie id
+     * @return true if the movie is a favorite, false if not or if the favorites aren't loaded
+     */
+    public static boolean isFavorite(long movieId) {
+        LongHashSet favoriteIds = sFavoriteIds;
+        return favoriteIds != null && favoriteIds.contains(movieId);
+    }
+
+    /**
+     * Check whether the favorites have been loaded.
+     */
+    public static boolean isLoaded() {
+        return sFavoriteIds != null;
+    }
+
+    /**
+     * Make a movie a favorite or not. The cache changes straight away and the change is queued
+     * to be written to the provider. Must be called on the main thread.
+     *
+     * @param movieId the movie id
+     * @param favorite true to make the movie a favorite, false to remove it
+     */
+    public static void setFavorite(long movieId, boolean favorite) {
+        /* Until the stored ids are loaded there is nothing to compare with, so the change is
+         * kept and settled once they are. Otherwise a change back to the state being written
+         * cancels out the queued change */
+        if (sStoredFavoriteIds == null) {
+            sQueuedChanges.put(movieId, favorite);
+        } else if (favorite ==
+                applyChanges(sStoredFavoriteIds, sWritingChanges).contains(movieId)) {
+            sQueuedChanges.remove(movieId);
+        } else {
+            sQueuedChanges.put(movieId, favorite);
+        }
+
+        publishChanges();
+        scheduleWrite();
+    }
+
+    /**
+     * Write the queued changes after a delay. Restarts the delay so a burst of changes is
+     * written together.
+     */
+    private static void scheduleWrite() {
+        sMainHandler.removeCallbacks(sWriteQueuedChanges);
+        sMainHandler.postDelayed(sWriteQueuedChanges, WRITE_DELAY_MILLIS);
+    }
+
+    /**
+     * Listen for changes to the favorites. Must be called on the main thread.
+     */
+    public static void addListener(@NonNull final FavoritesListener listener) {
+        sListeners.add(listener);
+    }
+
+    /**
+     * Stop listening for changes to the favorites. Must be called on the main thread.
+     */
+    public static void removeListener(@NonNull final FavoritesListener listener) {
+        sListeners.remove(listener);
+    }
+
+    /**
+     * Write the queued changes to the provider in one transaction in the background. Only one
+     * write is made at a time - changes queued meanwhile wait for the next. Nothing is written
+     * before the stored ids are loaded, as the changes haven't been settled against them.
+     */
+    private static void writeQueuedChanges() {
+        if (sStoredFavoriteIds == null) return;
+        if (sWritingChanges.size() > 0 || sQueuedChanges.size() == 0) return;
+
+        int addedCount = 0;
+        for (int i = 0; i < sQueuedChanges.size(); i++) {
+            if (sQueuedChanges.valueAt(i)) addedCount++;
+        }
+
+        long[] addedMovieIds = new long[addedCount];
+        long[] removedMovieIds = new long[sQueuedChanges.size() - addedCount];
+        int added = 0;
+        int removed = 0;
+
+        for (int i = 0; i < sQueuedChanges.size(); i++) {
+            sWritingChanges.put(sQueuedChanges.keyAt(i), sQueuedChanges.valueAt(i));
+
+            if (sQueuedChanges.valueAt(i)) {
+                addedMovieIds[added++] = sQueuedChanges.keyAt(i);
+            } else {
+                removedMovieIds[removed++] = sQueuedChanges.keyAt(i);
+            }
+        }
+        sQueuedChanges.clear();
+
+        final FavoriteChanges changes = new FavoriteChanges(addedMovieIds, removedMovieIds);
+
+        sFavoriteExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    changes.commit(sContext.getContentResolver());
+                } finally {
+                    sMainHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            onChangesWritten();
+                        }
+                    });
+                }
+            }
+        });
+    }
+
+    /**
+     * The changes being written are now stored. They are applied to the stored ids straight
+     * away, so the displayed ids don't flicker back before the provider's change notification
+     * reloads them.
+     */
+    private static void onChangesWritten() {
+        sStoredFavoriteIds = applyChanges(sStoredFavoriteIds, sWritingChanges);
+        sWritingChanges.clear();
+
+        publishChanges();
+
+        /* Changes queued while writing are written now */
+        writeQueuedChanges();
+    }
+
+    /**
+     * Load the favorite ids from the provider in the background and publish them.
+     */
+    private static void reload() {
+        sFavoriteExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final LongHashSet favoriteIds = queryFavoriteIds();
+
+                sMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (favoriteIds == null) return;
+
+                        boolean firstLoad = sStoredFavoriteIds == null;
+                        sStoredFavoriteIds = favoriteIds;
+
+                        if (firstLoad) settleQueuedChanges();
+                        publishChanges();
+                        if (firstLoad) scheduleWrite();
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Drop the changes made before the first load that the stored ids already have, so only
+     * real changes are written. Nothing is being written yet, so only the stored ids count.
+     */
+    private static void settleQueuedChanges() {
+        for (int i = sQueuedChanges.size() - 1; i >= 0; i--) {
+            if (sQueuedChanges.valueAt(i) == sStoredFavoriteIds.contains(sQueuedChanges.keyAt(i))) {
+                sQueuedChanges.removeAt(i);
+            }
+        }
+    }
+
+    private static LongHashSet queryFavoriteIds() {
+        Cursor cursor = sContext.getContentResolver().query(
+                MovieContract.FavoriteEntry.CONTENT_URI,
+                new String[]{MovieContract.FavoriteEntry.COLUMN_MOVIE_ID},
+                null,
+                null,
+                null);
+
+        if (cursor == null) return null;
+
+        try {
+            long[] favoriteIds = new long[cursor.getCount()];
+            for (int i = 0; cursor.moveToNext(); i++) {
+                favoriteIds[i] = cursor.getLong(0);
+            }
+            return LongHashSet.of(favoriteIds);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Apply changes to a set of favorite ids.
+     *
+     * @param favoriteIds the ids, or null if they aren't loaded yet
+     * @param changes the changes by movie id, true to add
+     * @return the changed ids
+     */
+    private static LongHashSet applyChanges(LongHashSet favoriteIds,
+                                            LongSparseArray<Boolean> changes) {
+        LongHashSet changedIds = favoriteIds == null ? LongHashSet.EMPTY : favoriteIds;
+
+        for (int i = 0; i < changes.size(); i++) {
+            changedIds = changes.valueAt(i) ?
+                    changedIds.with(changes.keyAt(i)) : changedIds.without(changes.keyAt(i));
+        }
+        return changedIds;
+    }
+
+    /**
+     * Publish the stored ids with the unwritten changes applied, then notify the listeners.
+     */
+    private static void publishChanges() {
+        LongHashSet favoriteIds = applyChanges(
+                applyChanges(sStoredFavoriteIds, sWritingChanges), sQueuedChanges);
+
+        /* Until the stored ids are loaded only the changes are known */
+        sFavoriteIds = sStoredFavoriteIds == null && favoriteIds.size() == 0 ?
+                null : favoriteIds;
+
+        for (int i = sListeners.size() - 1; i >= 0; i--) {
+            sListeners.get(i).onFavoritesChanged();
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.example.android.popularmovies.utilities;
+
+import java.util.Arrays;
+
+/**
+ * An immutable set of longs held in a single open addressed array, so lookups neither box nor
+ * allocate. Changes make a new set, which lets a set be published to other threads through a
+ * volatile field and read there without locking.
+ *
+ * Long.MIN_VALUE marks an empty slot, so it can't be held in the set.
+ */
+public final class LongHashSet {
+
+    private static final long EMPTY_SLOT = Long.MIN_VALUE;
+
+    /* The table is kept at most half full so probe sequences stay short */
+    private static final int MIN_CAPACITY = 8;
+
+    public static final LongHashSet EMPTY = of(new long[0]);
+
+    private final long[] mSlots;
+    private final int mSize;
+
+    private LongHashSet(long[] slots, int size) {
+        mSlots = slots;
+        mSize = size;
+    }
+
+    /**
+     * Make a set of the values. Repeated values are held once.
+     *
+     * @param values the values, none of which may be Long.MIN_VALUE
+     * @return the set
+     */
+    public static LongHashSet of(long[] values) {
+        int capacity = MIN_CAPACITY;
+        while (capacity < values.length * 2) {
+            capacity <<= 1;
+        }
+
+        long[] slots = new long[capacity];
+        Arrays.fill(slots, EMPTY_SLOT);
+
+        int size = 0;
+        for (long value : values) {
+            if (value == EMPTY_SLOT) {
+                throw new IllegalArgumentException("Long.MIN_VALUE can't be held in the set");
+            }
+
+            int slot = slotFor(slots, value);
+            if (slots[slot] == EMPTY_SLOT) {
+                slots[slot] = value;
+                size++;
+            }
+        }
+        return new LongHashSet(slots, size);
+    }
+
+    /**
+     * Find the slot holding a value, or the empty slot where it would go.
+     */
+    private static int slotFor(long[] slots, long value) {
+        int mask = slots.length - 1;
+
+        /* Spread the bits of sequential ids across the table */
+        long hash = value * 0x9E3779B97F4A7C15L;
+        int slot = (int) (hash ^ (hash >>> 32)) & mask;
+
+        while (slots[slot] != EMPTY_SLOT && slots[slot] != value) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    public boolean contains(long value) {
+        return value != EMPTY_SLOT && mSlots[slotFor(mSlots, value)] == value;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * Get the values of the set, in no particular order.
+     */
+    public long[] toArray() {
+        long[] values = new long[mSize];
+        int count = 0;
+        for (long slot : mSlots) {
+            if (slot != EMPTY_SLOT) values[count++] = slot;
+        }
+        return values;
+    }
+
+    /**
+     * Make a copy of the set that also holds a value.
+     */
+    public LongHashSet with(long value) {
+        if (contains(value)) return this;
+
+        long[] values = Arrays.copyOf(toArray(), mSize + 1);
+        values[mSize] = value;
+        return of(values);
+    }
+
+    /**
+     * Make a copy of the set that doesn't hold a value.
+     */
+    public LongHashSet without(long value) {
+        if (!contains(value)) return this;
+
+        long[] values = new long[mSize - 1];
+        int count = 0;
+        for (long slot : mSlots) {
+            if (slot != EMPTY_SLOT && slot != value) values[count++] = slot;
+        }
+        return of(values);
+    }
+}
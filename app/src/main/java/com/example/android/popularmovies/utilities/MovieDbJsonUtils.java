@@ -1,21 +1,21 @@
 package com.example.android.popularmovies.utilities;
 
-import android.content.ContentValues;
 import android.content.Context;
+import android.util.JsonReader;
+import android.util.JsonToken;
 import android.util.Log;
 
-import com.example.android.popularmovies.data.MovieContract;
-import com.example.android.popularmovies.data.MovieContract.*;
-
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
+import com.example.android.popularmovies.data.MovieSyncBatch;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.List;
 
 /**
  * Various helper methods for processing the movies db Json data.
@@ -74,291 +74,350 @@ public final class MovieDbJsonUtils {
 
     private static final String MDB_TRAILER_SITE = "site";
 
+    /* Stored for a missing poster path or overview, as the movie columns can't be null */
+    public static final String MISSING_TEXT = "";
+
     /**
-     * Returns an ArrayList of ContentValues for all the movies specified in an ArrayList of
-     * movie ids.
+     * Fetches the details of the movies and streams the movie, review and trailer rows straight
+     * into the sync batch. The movie details are fetched concurrently by the fetcher and each
+     * response is parsed once as it is read.
+     *
      * @param context the current context
-     * @param movieStringArray an ArrayList of movie id strings
-     * @return the list of ContentValues for each movie
+     * @param movieIds the movie db ids of the movies to fetch
+     * @param fetcher the fetcher used to retrieve each movie's details
+     * @param batch the batch that receives the parsed rows
      */
-    public static ArrayList<ContentValues> movieContentArrayFromStringArray(Context context,
-            ArrayList<String> movieStringArray){
+    public static void fetchMovieDetailsIntoBatch(final Context context, long[] movieIds,
+                                                  ConcurrentFetcher fetcher,
+                                                  final MovieSyncBatch batch) {
 
-        ArrayList<ContentValues> contentValues = new ArrayList<>();
+        List<URL> movieUrls = new ArrayList<>();
 
-        for (int i = 0; i < movieStringArray.size(); i++) {
+        for (long id : movieIds) {
+            movieUrls.add(NetworkUtils.buildSpecificMovieUrl(id));
+        }
 
-            try {
-                ContentValues movieContentValues = MovieDbJsonUtils.getMovieContentValuesFromJson(
-                        context, movieStringArray.get(i));
-                contentValues.add(movieContentValues);
-            } catch (Exception e) {
-                Log.w(TAG, "Failed to get movie data" + e.toString());
+        final NetworkUtils.ResponseHandler<Boolean> detailHandler =
+                new NetworkUtils.ResponseHandler<Boolean>() {
+            @Override
+            public Boolean handleResponse(InputStream inputStream) throws IOException {
+                return readMovieDetailStream(context, inputStream, batch);
             }
-        }
+        };
 
-        return contentValues;
+        /* Failed fetches are simply left out of the batch */
+        fetcher.fetchAll(movieUrls, new ConcurrentFetcher.UrlLoader<Boolean>() {
+            @Override
+            public Boolean load(URL url, int timeoutMillis) throws IOException {
+                return NetworkUtils.getResponseFromHttpUrl(url, timeoutMillis, detailHandler);
+            }
+        });
     }
 
+    /* Reads the movie ids of a single page of a movie db list */
+    private static final NetworkUtils.ResponseHandler<long[]> LIST_PAGE_HANDLER =
+            new NetworkUtils.ResponseHandler<long[]>() {
+        @Override
+        public long[] handleResponse(InputStream inputStream) throws IOException {
+            return readListPageStream(inputStream);
+        }
+    };
+
+    /* Loads the movie ids of a single page of a movie db list */
+    public static final ConcurrentFetcher.UrlLoader<long[]> LIST_PAGE_LOADER =
+            new ConcurrentFetcher.UrlLoader<long[]>() {
+        @Override
+        public long[] load(URL url, int timeoutMillis) throws IOException {
+            return NetworkUtils.getResponseFromHttpUrl(url, timeoutMillis, LIST_PAGE_HANDLER);
+        }
+    };
+
     /**
-     * Returns an ArrayList of review ContentValues from an ArrayList of strings contain JSON review
-     * data.
-     * @param context the current context
-     * @param reviewStringArray the ArrayList containing review data as JSON
-     * @return the ArrayList of review ContentValues
+     * Reads the ordered movie ids of a single movie db list page response in one pass.
+     *
+     * @param inputStream the response stream of the list page query
+     * @return the movie ids in list order, or null if the server reported a problem
+     * @throws IOException on stream read or Json parse error
      */
-    public static ArrayList<ContentValues> reviewContentArrayFromStringArray(Context context,
-                                                                            ArrayList<String> reviewStringArray){
-
-        ArrayList<ContentValues> contentValues = new ArrayList<>();
-
-        for (int i = 0; i < reviewStringArray.size(); i++) {
-            try {
-                JSONObject movieJsonObject = validateJSONString(reviewStringArray.get(i));
+    static long[] readListPageStream(InputStream inputStream) throws IOException {
 
-                String movieId = movieJsonObject.getString(MDB_ID);
+        JsonReader reader = new JsonReader(new InputStreamReader(inputStream, "UTF-8"));
 
-                JSONObject reviewJsonObject = movieJsonObject.getJSONObject(MDB_REVIEWS);
-                JSONArray reviewJsonArray = reviewJsonObject.getJSONArray(MDB_RESULTS);
+        long[] movieIds = new long[0];
+        int movieCount = 0;
+        boolean failed = false;
 
-                if (reviewJsonArray.length() > 0 ) {
-
-                    for (int j = 0; j < reviewJsonArray.length(); j++){
-                        JSONObject reviewJson = reviewJsonArray.getJSONObject(j);
-
-                        ContentValues reviewContent = reviewContentValuesFromJson(reviewJson);
-
-                        reviewContent.put(ReviewEntry.COLUMN_MOVIE_ID, movieId);
-                        contentValues.add(reviewContent);
+        try {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+
+                if (MDB_RESULTS.equals(name) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        long movieId = readResultId(reader);
+                        if (movieId < 0) continue;
+
+                        if (movieCount == movieIds.length) {
+                            movieIds = Arrays.copyOf(movieIds, Math.max(20, movieCount * 2));
+                        }
+                        movieIds[movieCount++] = movieId;
+                    }
+                    reader.endArray();
+                } else if (MDB_STATUS_CODE.equals(name) && reader.peek() == JsonToken.NUMBER) {
+                    /* Only present when the server reports a problem with the query */
+                    int statusCode = reader.nextInt();
+                    if (statusCode != HttpURLConnection.HTTP_OK) {
+                        Log.e(TAG, "List query failed with status: " + statusCode);
+                        failed = true;
                     }
+                } else {
+                    reader.skipValue();
                 }
-            } catch (Exception e) {
-                Log.w(TAG, "Failed to read reviews for movie: " + e.toString());
             }
+            reader.endObject();
+        } finally {
+            reader.close();
         }
 
-        return contentValues;
+        return failed ? null : Arrays.copyOf(movieIds, movieCount);
     }
 
     /**
-     * Returns an ArrayList of trailer ContentValues from an ArrayList of strings containing JSON
-     * trailer data.
+     * Reads the id of a single list result object.
      *
-     * @param context the current context
-     * @param trailerStringArray ArrayList of json trailer data
-     * @return ArrayList of ContentValues for each trailer
+     * @param reader the reader positioned at the result object
+     * @return the movie id or -1 if the result has none
+     * @throws IOException on stream read or Json parse error
      */
-    public static ArrayList<ContentValues> trailerContentArrayFromStringArray(Context context,
-                                                                              ArrayList<String> trailerStringArray){
-
-        ArrayList<ContentValues> contentValues = new ArrayList<>();
-
-        for (int i = 0; i < trailerStringArray.size(); i++) {
-            try {
-                JSONObject movieJsonObject = validateJSONString(trailerStringArray.get(i));
-
-                String movieId = movieJsonObject.getString(MDB_ID);
-
-                JSONObject trailerJsonObject = movieJsonObject.getJSONObject(MDB_TRAILERS);
-                JSONArray trailerJsonArray = trailerJsonObject.getJSONArray(MDB_RESULTS);
-
-                if (trailerJsonArray.length() > 0 ) {
-
-                    for (int j = 0; j < trailerJsonArray.length(); j++){
-                        JSONObject reviewJson = trailerJsonArray.getJSONObject(j);
-
-                        ContentValues trailerContent = trailerContentValuesFromJson(reviewJson);
-
-                        trailerContent.put(TrailerEntry.COLUMN_MOVIE_ID, movieId);
-                        contentValues.add(trailerContent);
-                    }
-                }
-            } catch (Exception e) {
-                Log.w(TAG, "Failed to read trailers for movie: " + e.toString());
+    private static long readResultId(JsonReader reader) throws IOException {
+        long movieId = -1;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (MDB_ID.equals(reader.nextName()) && reader.peek() == JsonToken.NUMBER) {
+                movieId = reader.nextLong();
+            } else {
+                reader.skipValue();
             }
         }
+        reader.endObject();
 
-        return contentValues;
+        return movieId;
     }
 
     /**
-     * Converts the raw movie db string JSON data into an ArrayList of movie JSON strings
-     * retrieved from the remote movie db.
+     * Reads a single movie detail response (with appended reviews and videos) in one pass and
+     * adds the movie, review and trailer rows to the batch.
      *
-     * @param movieJsonData the JSON data
-     * @return An ArrayList of Strings containing each movie's JSON data
-     * @throws JSONException on Json parse error
+     * @param context the current context
+     * @param inputStream the response stream of the movie detail query
+     * @param batch the batch that receives the rows
+     * @return true if a movie row was read
+     * @throws IOException on stream read or Json parse error
      */
-    public static ArrayList<String> arrayDataForMovieList(String movieJsonData)
-            throws JSONException {
-
-        JSONObject movieJson = validateJSONString(movieJsonData);
+    static boolean readMovieDetailStream(Context context, InputStream inputStream,
+                                         MovieSyncBatch batch) throws IOException {
 
-        JSONArray resultMovies = movieJson.getJSONArray(MDB_RESULTS);
+        JsonReader reader = new JsonReader(new InputStreamReader(inputStream, "UTF-8"));
 
-        ArrayList<String> movieJsonTextArray = new ArrayList<>();
+        /* The id may appear after the reviews and videos, so they are held until the end */
+        ArrayList<String[]> reviews = new ArrayList<>();
+        ArrayList<String[]> trailers = new ArrayList<>();
 
-        for (int i = 0; i < resultMovies.length(); i++) {
+        long movieId = 0;
+        String title = null;
+        String posterPath = null;
+        String overview = null;
+        Date releaseDate = null;
+        double voteAverage = 0;
+        long runtime = 0;
 
-            long id = resultMovies.getJSONObject(i).getLong(MDB_ID);
+        boolean hasId = false;
+        boolean failed = false;
 
-            URL mUrl = NetworkUtils.buildSpecificMovieUrl(id);
+        try {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+
+                /* Any of the movie values may be null - they are then treated as missing */
+                if (reader.peek() == JsonToken.NULL) {
+                    reader.nextNull();
+                    continue;
+                }
 
-            try {
-                String movieJsonText = NetworkUtils.getResponseFromHttpUrl(mUrl);
-                movieJsonTextArray.add(movieJsonText);
-            } catch (IOException e) {
-                Log.w(TAG, "Failed to get movie data for: " + mUrl.toString());
+                switch (name) {
+                    case MDB_ID: {
+                        movieId = reader.nextLong();
+                        hasId = true;
+                        break;
+                    }
+                    case MDB_ORIGINAL_TITLE: {
+                        title = reader.nextString();
+                        break;
+                    }
+                    case MDB_POSTER_PATH: {
+                        posterPath = reader.nextString();
+                        break;
+                    }
+                    case MDB_OVERVIEW: {
+                        overview = reader.nextString();
+                        break;
+                    }
+                    case MDB_RELEASE_DATE: {
+                        /* Unreleased movies have an empty release date */
+                        String releaseDateText = reader.nextString();
+                        if (!releaseDateText.isEmpty()) {
+                            releaseDate = MovieDateUtils.dateFromDBTextDate(context,
+                                    releaseDateText);
+                        }
+                        break;
+                    }
+                    case MDB_VOTE_AVERAGE: {
+                        voteAverage = reader.nextDouble();
+                        break;
+                    }
+                    case MDB_RUNTIME: {
+                        runtime = reader.nextLong();
+                        break;
+                    }
+                    case MDB_REVIEWS: {
+                        readResultsArray(reader, reviews, REVIEW_FIELDS);
+                        break;
+                    }
+                    case MDB_TRAILERS: {
+                        readResultsArray(reader, trailers, TRAILER_FIELDS);
+                        break;
+                    }
+                    case MDB_STATUS_CODE: {
+                        /* Only present when the server reports a problem with the query */
+                        int statusCode = reader.nextInt();
+                        if (statusCode != HttpURLConnection.HTTP_OK) {
+                            Log.e(TAG, "Movie query failed with status: " + statusCode);
+                            failed = true;
+                        }
+                        break;
+                    }
+                    default: {
+                        reader.skipValue();
+                    }
+                }
             }
-
+            reader.endObject();
+        } finally {
+            reader.close();
         }
 
-        return movieJsonTextArray;
-    }
-
-    public static ArrayList<ContentValues> movieIdListFromJson(String movieJsonData)
-            throws JSONException {
-
-        JSONObject movieJson = validateJSONString(movieJsonData);
-
-        JSONArray resultMovies = movieJson.getJSONArray(MDB_RESULTS);
-
-        int resultCount = resultMovies.length();
-
-        if (resultCount == 0){
-            return null;
+        if (failed || !hasId) {
+            return false;
         }
 
-        ArrayList<ContentValues> contentValueList = new ArrayList<>();
-
-        for (int i = 0; i < resultCount; i++){
-            long id = resultMovies.getJSONObject(i).getLong(MDB_ID);
-            ContentValues contentValues = new ContentValues();
-            contentValues.put(MovieContract.GLOBAL_COLUMN_MOVIE_ID, id);
-            contentValueList.add(contentValues);
+        /* A movie without a title can't be listed, so it is left out along with its reviews and
+         * trailers. The movie db often has no poster, overview, rating, runtime or release date
+         * for a movie - those are stored as empty values */
+        if (title == null) {
+            return false;
         }
 
-        return contentValueList;
-    }
-
-    /**
-     * Check that the server reports successfully handling a query and return the Json as a
-     * {@link JSONObject}
-     * @param JsonString a raw Json string to validate
-     * @return A {@link JSONObject} representation of the string
-     */
-    private static JSONObject validateJSONString(String JsonString) {
-
-        JSONObject movieJson = null;
+        synchronized (batch) {
+            batch.addMovie(movieId, title,
+                    posterPath == null ? MISSING_TEXT : posterPath,
+                    overview == null ? MISSING_TEXT : overview,
+                    voteAverage,
+                    releaseDate == null ? 0 : MovieDateUtils.millisecondTimeForDate(releaseDate),
+                    runtime);
 
-        try {
-            movieJson = new JSONObject(JsonString);
-
-            if (movieJson.has(MDB_STATUS_CODE)) {
-                int errorCode = movieJson.getInt(MDB_STATUS_CODE);
-
-                switch (errorCode) {
-                    case HttpURLConnection.HTTP_OK:
-                        Log.v(TAG, "HTTP_OK");
-                        break;
-                    case HttpURLConnection.HTTP_NOT_FOUND:
-                        Log.e(TAG, "HTTP_NOT_FOUND");
-                        return null;
-                    default:
-                        Log.e(TAG, "No Status Code Returned");
-                        // Probably a network issue
-                        return null;
-                }
+            for (String[] review : reviews) {
+                batch.addReview(movieId, review[0], review[1], review[2], review[3]);
             }
 
-        } catch (JSONException e){
-            Log.w(TAG, "Failed to process Json data: " + e.toString());
+            for (String[] trailer : trailers) {
+                batch.addTrailer(movieId, trailer[0], trailer[1], trailer[2], trailer[3]);
+            }
         }
 
-        return movieJson;
+        return true;
     }
 
-    /**
-     * Converts a movie JSON response into the appropriate ContentValues
-     * @param context the current context
-     * @param movieJsonText the raw string of JSON data
-     * @return the Content values for the movie
-     * @throws JSONException on Json parse error
-     */
-    private static ContentValues getMovieContentValuesFromJson(Context context, String movieJsonText)
-            throws JSONException {
-
-        JSONObject movieJson = validateJSONString(movieJsonText);
-
-        String title        = movieJson.getString(MDB_ORIGINAL_TITLE);
-        String posterPath   = movieJson.getString(MDB_POSTER_PATH);
-        String overview     = movieJson.getString(MDB_OVERVIEW);
-        String id           = movieJson.getString(MDB_ID);
-        String releaseDate  = movieJson.getString(MDB_RELEASE_DATE);
-        double voteAverage  = movieJson.getDouble(MDB_VOTE_AVERAGE);
-        long runtime        = movieJson.getLong(MDB_RUNTIME);
-
-        ContentValues movieValues = new ContentValues();
-
-        Date movieDate = MovieDateUtils.dateFromDBTextDate(context, releaseDate);
-
-        movieValues.put(MovieEntry.COLUMN_TITLE, title);
-        movieValues.put(MovieEntry.COLUMN_POSTER_PATH, posterPath);
-        movieValues.put(MovieEntry.COLUMN_RELEASE_DATE,
-                MovieDateUtils.millisecondTimeForDate(movieDate));
-        movieValues.put(MovieEntry.COLUMN_AVERAGE_RATING, voteAverage);
-        movieValues.put(MovieEntry.COLUMN_OVERVIEW, overview);
-        movieValues.put(MovieEntry.COLUMN_MOVIE_ID, id);
-        movieValues.put(MovieEntry.COLUMN_RUNTIME, runtime);
-
-        return movieValues;
-    }
+    /* The fields read from each review result, in the order of MovieSyncBatch.addReview */
+    private static final String[] REVIEW_FIELDS = {
+            MDB_REVIEW_ID,
+            MDB_REVIEW_AUTHOR,
+            MDB_REVIEW_CONTENT,
+            MDB_REVIEW_URL
+    };
+
+    /* The fields read from each trailer result, in the order of MovieSyncBatch.addTrailer */
+    private static final String[] TRAILER_FIELDS = {
+            MDB_TRAILER_ID,
+            MDB_TRAILER_KEY,
+            MDB_TRAILER_NAME,
+            MDB_TRAILER_SITE
+    };
 
     /**
-     * Converts a raw String of review JSON data into its appropriate content values
-     * @param reviewJson the raw String of JSON data.
-     * @return the ContentValues of the review
-     * @throws JSONException on Json parese error
+     * Reads an appended response object such as reviews or videos, adding the string fields of
+     * every complete entry of its results array.
+     *
+     * @param reader the reader positioned at the appended response object
+     * @param rows the list that receives the field values of each result
+     * @param fields the names of the string fields to read from each result
+     * @throws IOException on stream read or Json parse error
      */
-    private static ContentValues reviewContentValuesFromJson(JSONObject reviewJson)
-            throws JSONException {
-
-        ContentValues reviewValues = new ContentValues();
-
-        String id = reviewJson.getString(MDB_REVIEW_ID);
-        String reviewContent = reviewJson.getString(MDB_REVIEW_CONTENT);
-        String reviewAuthor = reviewJson.getString(MDB_REVIEW_AUTHOR);
-        String url = reviewJson.getString(MDB_REVIEW_URL);
-
-        reviewValues.put(ReviewEntry.COLUMN_REVIEW_ID, id);
-        reviewValues.put(ReviewEntry.COLUMN_REVIEW_CONTENT, reviewContent);
-        reviewValues.put(ReviewEntry.COLUMN_REVIEW_AUTHOR, reviewAuthor);
-        reviewValues.put(ReviewEntry.COLUMN_REVIEW_URL, url);
-
-        return reviewValues;
+    private static void readResultsArray(JsonReader reader, List<String[]> rows, String[] fields)
+            throws IOException {
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (MDB_RESULTS.equals(reader.nextName()) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    String[] row = readResultFields(reader, fields);
+                    if (row != null) {
+                        rows.add(row);
+                    }
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
     }
 
     /**
-     * Converts a raw String of JSON data representing a trailer into the appropriate ContentValue
-     * @param trailerJson the raw String of JSON data
-     * @return the ContentValues for the trailer
-     * @throws JSONException on json parese error
+     * Reads the requested string fields of a single result object.
+     *
+     * @param reader the reader positioned at the result object
+     * @param fields the names of the fields to read
+     * @return the field values in the order of the names or null if any are missing
+     * @throws IOException on stream read or Json parse error
      */
-    private static ContentValues trailerContentValuesFromJson(JSONObject trailerJson)
-            throws JSONException {
+    private static String[] readResultFields(JsonReader reader, String[] fields)
+            throws IOException {
+
+        String[] values = new String[fields.length];
+        int found = 0;
 
-        ContentValues trailerContent = new ContentValues();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
 
-        String id = trailerJson.getString(MDB_TRAILER_ID);
-        String key = trailerJson.getString(MDB_TRAILER_KEY);
-        String site = trailerJson.getString(MDB_TRAILER_SITE);
-        String name = trailerJson.getString(MDB_TRAILER_NAME);
+            int index = -1;
+            for (int i = 0; i < fields.length; i++) {
+                if (fields[i].equals(name)) index = i;
+            }
 
-        trailerContent.put(TrailerEntry.COLUMN_TRAILER_ID, id);
-        trailerContent.put(TrailerEntry.COLUMN_TRAILER_KEY, key);
-        trailerContent.put(TrailerEntry.COLUMN_TRAILER_SITE, site);
-        trailerContent.put(TrailerEntry.COLUMN_TRAILER_NAME, name);
+            if (index >= 0 && reader.peek() != JsonToken.NULL) {
+                if (values[index] == null) found++;
+                values[index] = reader.nextString();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
 
-        return trailerContent;
+        return found == fields.length ? values : null;
     }
 }
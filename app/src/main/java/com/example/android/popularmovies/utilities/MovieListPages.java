@@ -0,0 +1,96 @@
+package com.example.android.popularmovies.utilities;
+
+import android.support.annotation.NonNull;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Fetches the ordered movie ids of a movie db list, such as popular or top rated, over several
+ * pages. Only the ids are held, so memory grows linearly with the number of pages.
+ */
+public final class MovieListPages {
+
+    /* The page query parameter of the list api - pages are numbered from 1 */
+    private static final String API_QUERY_PAGE = "page";
+
+    /* The movie db serves at most this many pages of a list */
+    public static final int MAX_PAGE_COUNT = 500;
+
+    private MovieListPages() {
+    }
+
+    /**
+     * Build the URL of a single page of a list.
+     *
+     * @param listUrl the URL of the list, which already has a query
+     * @param page the page number, starting at 1
+     * @return the URL of the page
+     * @throws MalformedURLException if the URL can't be built
+     */
+    static URL buildPageUrl(@NonNull URL listUrl, int page) throws MalformedURLException {
+        String separator = listUrl.getQuery() == null ? "?" : "&";
+        return new URL(listUrl.toString() + separator + API_QUERY_PAGE + "=" + page);
+    }
+
+    /**
+     * Fetch the movie ids of the first pages of a list with the fetcher's bounded concurrency
+     * and join them in global rank order.
+     *
+     * The list can shift while it is being paged, so a movie that appears on two pages is only
+     * kept at its first position. The list ends at the first empty page. A page before that
+     * which fails fails the whole fetch, so a transient error never passes for a shorter list.
+     *
+     * @param fetcher the fetcher used to retrieve the pages
+     * @param listUrl the URL of the list
+     * @param pageCount the number of pages to fetch
+     * @param pageLoader the loader that reads the movie ids of a page in page order
+     * @return the movie ids in rank order, or null if a page before the end of the list could
+     *         not be read
+     * @throws MalformedURLException if the page URLs can't be built
+     */
+    public static long[] fetchMovieIds(@NonNull ConcurrentFetcher fetcher, @NonNull URL listUrl,
+                                       int pageCount,
+                                       @NonNull ConcurrentFetcher.UrlLoader<long[]> pageLoader)
+            throws MalformedURLException {
+
+        pageCount = Math.max(1, Math.min(pageCount, MAX_PAGE_COUNT));
+
+        List<URL> pageUrls = new ArrayList<>(pageCount);
+        for (int page = 1; page <= pageCount; page++) {
+            pageUrls.add(buildPageUrl(listUrl, page));
+        }
+
+        List<long[]> pages = fetcher.fetchAll(pageUrls, pageLoader);
+
+        int totalCount = 0;
+        for (long[] page : pages) {
+            if (page == null) return null;
+            if (page.length == 0) break;
+            totalCount += page.length;
+        }
+
+        if (totalCount == 0) return null;
+
+        long[] movieIds = new long[totalCount];
+        Set<Long> seenMovieIds = new HashSet<>(totalCount * 2);
+        int movieCount = 0;
+
+        for (long[] page : pages) {
+            if (page.length == 0) break;
+
+            for (long movieId : page) {
+                if (seenMovieIds.add(movieId)) {
+                    movieIds[movieCount++] = movieId;
+                }
+            }
+        }
+
+        return movieCount == totalCount ? movieIds : Arrays.copyOf(movieIds, movieCount);
+    }
+}
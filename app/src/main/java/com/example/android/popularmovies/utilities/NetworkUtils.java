@@ -1,14 +1,17 @@
 package com.example.android.popularmovies.utilities;
 
+import android.content.Context;
 import android.net.Uri;
+import android.net.http.HttpResponseCache;
 import android.support.annotation.NonNull;
+import android.util.Log;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.util.Scanner;
 
 /**
  * These utility methods are used to form queries and communicate with the movies api service
@@ -16,14 +19,16 @@ import java.util.Scanner;
 
 public final class NetworkUtils {
 
-    /* The URL of the move db api root.*/
-    private static final String MOVIE_DB_BASE_URL = "https://api.themoviedb.org";
+    private static final String TAG = NetworkUtils.class.getSimpleName();
 
-    /* The URL of the image root */
-    private static final String MOVIE_IMAGE_BASE = "http://image.tmdb.org";
+    /* The directory, below the app cache directory, of the HTTP response cache */
+    private static final String HTTP_CACHE_DIRECTORY = "http";
 
-    /* The path to images at movies db */
-    private static final String MOVIE_DB_IMAGE_PATH = "t/p/w185";
+    /* The maximum size of the HTTP response cache - the least recently used entries are evicted */
+    private static final long HTTP_CACHE_SIZE_BYTES = 10 * 1024 * 1024;
+
+    /* The URL of the move db api root.*/
+    private static final String MOVIE_DB_BASE_URL = "https://api.themoviedb.org";
 
     /* This is the api key from MovieDB. Must be replaced with a valid key to function.*/
     private static final String MOVIE_DB_KEY = REPLACE_WITH_VALID_API_KEY_TO_BUILD;
@@ -120,51 +125,131 @@ public final class NetworkUtils {
     }
 
     /**
-     * Get the response from a URL as a single String.
+     * Install the on disk HTTP response cache used by every request made through this class, if
+     * it is not already installed. The cache honours the Cache-Control headers of the movie db
+     * and revalidates stale entries with conditional requests, so an unchanged response costs a
+     * 304 rather than the full body.
+     *
+     * The cache is process wide, so it is installed once when the application starts and every
+     * other connection - the poster downloads - opts out of it. Opens the cache on disk, so
+     * should not be called on the main thread.
+     *
+     * @param context the current context
+     */
+    public static synchronized void installResponseCache(@NonNull final Context context) {
+        if (HttpResponseCache.getInstalled() != null) return;
+
+        File cacheDirectory = new File(context.getCacheDir(), HTTP_CACHE_DIRECTORY);
+        try {
+            HttpResponseCache.install(cacheDirectory, HTTP_CACHE_SIZE_BYTES);
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to install the HTTP response cache: " + e.toString());
+        }
+    }
+
+    /**
+     * Write the HTTP response cache index to disk so entries survive the process being killed.
+     */
+    public static void flushResponseCache() {
+        HttpResponseCache cache = HttpResponseCache.getInstalled();
+        if (cache != null) {
+            cache.flush();
+        }
+    }
+
+    /**
+     * Get the current counters of the HTTP response cache.
+     *
+     * @return the counters, or null if the cache is not installed
+     */
+    public static ResponseCacheStats getResponseCacheStats() {
+        HttpResponseCache cache = HttpResponseCache.getInstalled();
+        if (cache == null) return null;
+
+        return new ResponseCacheStats(cache.getRequestCount(), cache.getHitCount(),
+                cache.getNetworkCount());
+    }
+
+    /**
+     * A snapshot of the HTTP response cache counters since the cache was installed.
+     */
+    public static final class ResponseCacheStats {
+
+        /* Responses served from the cache without touching the network */
+        public final int hits;
+
+        /* Responses that were not cached, or were stale and had changed, and were fetched in full */
+        public final int misses;
+
+        /* Stale responses revalidated by a conditional request that returned 304 */
+        public final int revalidations;
+
+        ResponseCacheStats(int requestCount, int hitCount, int networkCount) {
+            /*
+             * A revalidated response is counted both as a network request and as a hit, so the
+             * overlap between the two is the number of revalidations.
+             */
+            revalidations = Math.max(hitCount + networkCount - requestCount, 0);
+            hits = hitCount - revalidations;
+            misses = networkCount - revalidations;
+        }
+
+        @Override
+        public String toString() {
+            return "hits=" + hits + " misses=" + misses + " revalidations=" + revalidations;
+        }
+    }
+
+    /**
+     * Get the response from a URL and pass the response stream directly to a handler, so the
+     * body never has to be held in memory as a whole.
      *
      * @param urlToFetch The URL to fetch a HTTP response from.
-     * @return The contents of the HTTP response or null if no response.
+     * @param timeoutMillis The connect and read timeout in milliseconds, 0 for no timeout.
+     * @param handler The handler that consumes the response stream.
+     * @param <T> The type of the handled result.
+     * @return The result of the handler.
      * @throws IOException Related to network and stream reading.
      */
-    public static String getResponseFromHttpUrl(URL urlToFetch) throws IOException {
+    public static <T> T getResponseFromHttpUrl(URL urlToFetch, int timeoutMillis,
+                                               @NonNull ResponseHandler<T> handler)
+            throws IOException {
         HttpURLConnection urlConnection = (HttpURLConnection) urlToFetch.openConnection();
+        urlConnection.setConnectTimeout(timeoutMillis);
+        urlConnection.setReadTimeout(timeoutMillis);
         try {
             InputStream inputStream = urlConnection.getInputStream();
+            try {
+                T response = handler.handleResponse(inputStream);
 
-            Scanner scanner = new Scanner(inputStream);
-            scanner.useDelimiter("\\A");
+                /* A response is only committed to the cache once its body is read to the end */
+                drain(inputStream);
 
-            boolean hasInput = scanner.hasNext();
-            String response = null;
-            if (hasInput) {
-                response = scanner.next();
+                return response;
+            } finally {
+                inputStream.close();
             }
-            scanner.close();
-            return response;
         } finally {
             urlConnection.disconnect();
         }
     }
 
     /**
-     * Converts a relative movie db image URL to an absolute one.
-     * For example: http://image.tmdb.org/t/p/w185/nBNZadXqJSdt05SHLqgT0HuC5Gm.jpg
-     *
-     * @param relativePath The relative image path to convert.
-     * @return The absolute path of the image.
+     * Read and discard whatever is left of a stream.
      */
-    public static URL convertRelativeImagePathToAbsolute(@NonNull final String relativePath){
-
-        Uri imageUri = Uri.parse(MOVIE_IMAGE_BASE).buildUpon()
-                .appendEncodedPath(MOVIE_DB_IMAGE_PATH)
-                .appendEncodedPath(relativePath)
-                .build();
-
-        try {
-            return new URL(imageUri.toString());
-        } catch (MalformedURLException e) {
-            e.printStackTrace();
-            return null;
+    private static void drain(InputStream inputStream) throws IOException {
+        byte[] buffer = new byte[1024];
+        while (inputStream.read(buffer) != -1) {
+            /* Discard */
         }
     }
+
+    /**
+     * Consumes a HTTP response stream.
+     *
+     * @param <T> The type of the handled result.
+     */
+    public interface ResponseHandler<T> {
+        T handleResponse(InputStream inputStream) throws IOException;
+    }
 }
@@ -0,0 +1,362 @@
+package com.example.android.popularmovies.utilities;
+
+import android.content.Context;
+import android.graphics.BitmapFactory;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import com.example.android.popularmovies.R;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * A bounded on-disk store of poster images, filled during a background sync so posters can be
+ * shown offline. Each poster is stored under a hash of its movie db poster path - the movie db
+ * never reuses a poster path for different image content, so the path addresses the content.
+ *
+ * Reading a poster marks it as recently used, and once the store is over its size the least
+ * recently used posters are evicted, apart from the pinned ones such as the favorites.
+ *
+ * Posters downloaded as they are displayed are kept apart in a smaller cache, under a hash of
+ * their whole url so each size of a poster is its own entry. The cache trims itself as it fills.
+ */
+public final class PosterStore {
+
+    private static final String TAG = PosterStore.class.getSimpleName();
+
+    /* The directory, below the app files directory, of the store */
+    private static final String POSTER_DIRECTORY = "posters";
+
+    /* The store is trimmed back to this size after every sync */
+    private static final long MAX_STORE_BYTES = 25 * 1024 * 1024;
+
+    /* The directory, below the app cache directory, of the cache of displayed posters */
+    private static final String CACHE_DIRECTORY = "posters";
+
+    /* The cache of displayed posters is trimmed back to this size whenever it grows past it */
+    private static final long MAX_CACHE_BYTES = 10 * 1024 * 1024;
+
+    /* Suffix of a poster that is still being written */
+    private static final String PARTIAL_SUFFIX = ".partial";
+
+    /* Guards the size of the cache of displayed posters */
+    private static final Object sCacheLock = new Object();
+
+    /* The size of the cache of displayed posters, or -1 until it has been measured */
+    private static long sCacheBytes = -1;
+
+    private PosterStore() {}
+
+    private static File storeDirectory(@NonNull final Context context) {
+        return new File(context.getFilesDir(), POSTER_DIRECTORY);
+    }
+
+    private static File cacheDirectory(@NonNull final Context context) {
+        return new File(context.getCacheDir(), CACHE_DIRECTORY);
+    }
+
+    /**
+     * Get the name a poster is stored under.
+     *
+     * @param posterPath the movie db poster path, e.g. /nBNZadXqJSdt05SHLqgT0HuC5Gm.jpg
+     * @return the hex SHA-1 of the poster path
+     */
+    static String keyFor(@NonNull final String posterPath) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1")
+                    .digest(posterPath.getBytes("UTF-8"));
+
+            StringBuilder key = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                key.append(Character.forDigit((b >> 4) & 0xf, 16))
+                        .append(Character.forDigit(b & 0xf, 16));
+            }
+            return key.toString();
+        } catch (NoSuchAlgorithmException | IOException e) {
+            throw new IllegalStateException("SHA-1 unavailable", e);
+        }
+    }
+
+    /**
+     * The width posters are stored at - the width of a cell of the poster grid on this device.
+     *
+     * @param context the current context
+     * @return the width in pixels
+     */
+    public static int gridPosterWidth(@NonNull final Context context) {
+        int columns = context.getResources().getInteger(R.integer.movie_list_columns);
+        return context.getResources().getDisplayMetrics().widthPixels / columns;
+    }
+
+    /**
+     * Find a stored poster and mark it as recently used. Does disk IO, so must not be called
+     * on the main thread.
+     *
+     * @param context the current context
+     * @param posterPath the movie db poster path
+     * @return the poster file, or null if it isn't stored
+     */
+    @Nullable
+    public static File find(@NonNull final Context context, @NonNull final String posterPath) {
+        return find(storeDirectory(context), keyFor(posterPath));
+    }
+
+    /**
+     * Get the width of a stored or cached poster image without decoding it.
+     *
+     * @param poster the poster file
+     * @return the width in pixels, or -1 if the file can't be read as an image
+     */
+    public static int widthOf(@NonNull final File poster) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(poster.getPath(), options);
+        return options.outWidth;
+    }
+
+    /**
+     * Download a poster into the store, unless it is already stored. The poster is stored under
+     * its movie db poster path, the last segment of the url, whatever size the url is for.
+     *
+     * @param context the current context
+     * @param posterUrl the absolute url of the poster
+     * @param timeoutMillis the connect and read timeout
+     * @return true if the poster is stored
+     * @throws IOException if the download fails
+     */
+    public static boolean download(@NonNull final Context context,
+                                   @NonNull final URL posterUrl,
+                                   int timeoutMillis) throws IOException {
+        String urlPath = posterUrl.getPath();
+        String posterPath = urlPath.substring(urlPath.lastIndexOf('/'));
+
+        File directory = storeDirectory(context);
+        File poster = new File(directory, keyFor(posterPath));
+
+        if (poster.isFile()) return true;
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create " + directory);
+        }
+
+        HttpURLConnection connection = (HttpURLConnection) posterUrl.openConnection();
+        connection.setConnectTimeout(timeoutMillis);
+        connection.setReadTimeout(timeoutMillis);
+
+        /* Posters are kept in the store, not in the HTTP response cache of the api responses */
+        connection.setUseCaches(false);
+
+        try {
+            write(connection.getInputStream(), directory, poster);
+            return true;
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    /**
+     * Find a poster in the cache of displayed posters and mark it as recently used. Does disk
+     * IO, so must not be called on the main thread.
+     *
+     * @param context the current context
+     * @param posterUrl the absolute url of the poster
+     * @return the poster file, or null if it isn't cached
+     */
+    @Nullable
+    public static File findCached(@NonNull final Context context,
+                                  @NonNull final String posterUrl) {
+        return find(cacheDirectory(context), keyFor(posterUrl));
+    }
+
+    /**
+     * Write a downloaded poster into the cache of displayed posters, trimming the cache if it
+     * has grown past its size.
+     *
+     * @param context the current context
+     * @param posterUrl the absolute url of the poster
+     * @param inputStream the poster image, which is read to the end and closed
+     * @return the cached poster file
+     * @throws IOException if the poster can't be read or written
+     */
+    public static File cache(@NonNull final Context context, @NonNull final String posterUrl,
+                             @NonNull final InputStream inputStream) throws IOException {
+        File directory = cacheDirectory(context);
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            inputStream.close();
+            throw new IOException("Unable to create " + directory);
+        }
+
+        File poster = new File(directory, keyFor(posterUrl));
+        write(inputStream, directory, poster);
+
+        synchronized (sCacheLock) {
+            sCacheBytes = sCacheBytes < 0 ? directorySize(directory) :
+                    sCacheBytes + poster.length();
+
+            if (sCacheBytes > MAX_CACHE_BYTES) {
+                sCacheBytes = trimDirectory(directory, MAX_CACHE_BYTES,
+                        Collections.<String>emptySet());
+            }
+        }
+        return poster;
+    }
+
+    private static File find(@NonNull final File directory, @NonNull final String key) {
+        File poster = new File(directory, key);
+
+        if (!poster.isFile()) return null;
+
+        //noinspection ResultOfMethodCallIgnored
+        poster.setLastModified(System.currentTimeMillis());
+        return poster;
+    }
+
+    /**
+     * Write a poster image to a file of a directory, replacing the file. The image is written
+     * to a partial file first so a failed download is never read as a poster. The partial file
+     * is unique, so concurrent downloads of the same poster don't collide.
+     *
+     * @param inputStream the poster image, which is read to the end and closed
+     * @param directory the directory of the file
+     * @param poster the file to write
+     * @throws IOException if the poster can't be read or written
+     */
+    private static void write(@NonNull final InputStream inputStream,
+                              @NonNull final File directory,
+                              @NonNull final File poster) throws IOException {
+        File partial;
+        try {
+            partial = File.createTempFile(poster.getName(), PARTIAL_SUFFIX, directory);
+        } catch (IOException e) {
+            inputStream.close();
+            throw e;
+        }
+
+        try {
+            OutputStream outputStream = new FileOutputStream(partial);
+            try {
+                byte[] buffer = new byte[8192];
+                int count;
+                while ((count = inputStream.read(buffer)) != -1) {
+                    outputStream.write(buffer, 0, count);
+                }
+            } finally {
+                outputStream.close();
+                inputStream.close();
+            }
+
+            if (!partial.renameTo(poster)) {
+                throw new IOException("Unable to store " + poster);
+            }
+        } finally {
+            //noinspection ResultOfMethodCallIgnored
+            partial.delete();
+        }
+    }
+
+    /**
+     * Evict the least recently used posters until the store is back within its size. Pinned
+     * posters are never evicted.
+     *
+     * @param context the current context
+     * @param pinnedPosterPaths the poster paths to keep whatever their age
+     */
+    public static void trim(@NonNull final Context context,
+                            @NonNull final Set<String> pinnedPosterPaths) {
+        Set<String> pinnedKeys = new HashSet<>();
+        for (String posterPath : pinnedPosterPaths) {
+            pinnedKeys.add(keyFor(posterPath));
+        }
+
+        long storeBytes = trimDirectory(storeDirectory(context), MAX_STORE_BYTES, pinnedKeys);
+
+        Log.d(TAG, "Poster store holds " + (storeBytes / 1024) + " KiB");
+    }
+
+    private static long directorySize(@NonNull final File directory) {
+        File[] posters = directory.listFiles();
+        if (posters == null) return 0;
+
+        long bytes = 0;
+        for (File poster : posters) {
+            bytes += poster.length();
+        }
+        return bytes;
+    }
+
+    /**
+     * Evict the least recently used posters of a directory until it is back within a size.
+     *
+     * @param directory the directory of the posters
+     * @param maxBytes the size to trim the directory to
+     * @param pinnedKeys the names of the posters to keep whatever their age
+     * @return the size of the directory after the trim
+     */
+    private static long trimDirectory(@NonNull final File directory, long maxBytes,
+                                      @NonNull final Set<String> pinnedKeys) {
+        File[] posters = directory.listFiles();
+        if (posters == null) return 0;
+
+        long storeBytes = 0;
+        for (File poster : posters) {
+            storeBytes += poster.length();
+        }
+
+        /* Oldest first */
+        Arrays.sort(posters, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                long aModified = a.lastModified();
+                long bModified = b.lastModified();
+                return aModified < bModified ? -1 : (aModified == bModified ? 0 : 1);
+            }
+        });
+
+        for (File poster : posters) {
+            if (storeBytes <= maxBytes) break;
+            if (pinnedKeys.contains(poster.getName())) continue;
+
+            /* Another download may still be writing a partial file */
+            if (poster.getName().endsWith(PARTIAL_SUFFIX)) continue;
+
+            long length = poster.length();
+            if (poster.delete()) {
+                storeBytes -= length;
+            }
+        }
+        return storeBytes;
+    }
+
+    /**
+     * Check whether the active network is unmetered, so posters can be downloaded without
+     * costing the user data.
+     *
+     * @param context the current context
+     * @return true if connected to an unmetered network
+     */
+    public static boolean isOnUnmeteredNetwork(@NonNull final Context context) {
+        ConnectivityManager connectivityManager =
+                (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+
+        NetworkInfo activeNetwork = connectivityManager.getActiveNetworkInfo();
+
+        return activeNetwork != null && activeNetwork.isConnected() &&
+                !connectivityManager.isActiveNetworkMetered();
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.android.popularmovies.utilities;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Builds the absolute URLs of movie db poster images. The movie db serves each poster in a set
+ * of fixed widths, so the smallest width that covers the view is chosen rather than always
+ * downloading the same size. Built URLs are remembered, by width bucket and poster path, so
+ * binding a poster doesn't build a new string each time.
+ */
+public final class PosterUrls {
+
+    /* The URL of the image root, followed by the size bucket and the poster path */
+    private static final String MOVIE_IMAGE_BASE = "http://image.tmdb.org/t/p/";
+
+    /* The poster widths served by the movie db, in pixels, smallest first */
+    static final int[] BUCKET_WIDTHS = {92, 185, 342, 500};
+
+    /* The path segment of each size bucket */
+    private static final String[] BUCKET_NAMES = {"w92", "w185", "w342", "w500"};
+
+    /* The width used when the view has not been measured yet */
+    static final int DEFAULT_WIDTH = 185;
+
+    /* The most URLs remembered for each size bucket - the least recently used are dropped */
+    static final int MAX_CACHED_URLS = 256;
+
+    /* A least recently used map of poster path to absolute URL */
+    private static class UrlCache extends LinkedHashMap<String, String> {
+        UrlCache() {
+            super(MAX_CACHED_URLS, 0.75f, true);
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > MAX_CACHED_URLS;
+        }
+    }
+
+    private static final UrlCache[] sUrlCaches = new UrlCache[BUCKET_WIDTHS.length];
+
+    static {
+        for (int i = 0; i < sUrlCaches.length; i++) {
+            sUrlCaches[i] = new UrlCache();
+        }
+    }
+
+    private PosterUrls() {}
+
+    /**
+     * Find the size bucket for a view width: the smallest bucket at least as wide, or the
+     * largest bucket for views wider than every bucket.
+     *
+     * @param widthPixels the width of the view, or 0 or less if it is not known
+     * @return the index of the bucket
+     */
+    static int bucketFor(int widthPixels) {
+        if (widthPixels <= 0) widthPixels = DEFAULT_WIDTH;
+
+        for (int i = 0; i < BUCKET_WIDTHS.length; i++) {
+            if (BUCKET_WIDTHS[i] >= widthPixels) return i;
+        }
+        return BUCKET_WIDTHS.length - 1;
+    }
+
+    /**
+     * Get the absolute URL of a poster for a view of the given width.
+     * For example: http://image.tmdb.org/t/p/w185/nBNZadXqJSdt05SHLqgT0HuC5Gm.jpg
+     *
+     * Safe to call from any thread. Once a URL is remembered it is returned without allocating.
+     *
+     * @param posterPath the relative poster path from the movie db, or null or empty if the
+     *                   movie has none
+     * @param widthPixels the width of the view the poster is shown in, or 0 if not known
+     * @return the absolute URL of the poster, or null if the movie has no poster
+     */
+    public static String posterUrl(String posterPath, int widthPixels) {
+        if (posterPath == null || posterPath.isEmpty()) return null;
+
+        int bucket = bucketFor(widthPixels);
+        UrlCache cache = sUrlCaches[bucket];
+
+        synchronized (cache) {
+            String url = cache.get(posterPath);
+            if (url == null) {
+                url = MOVIE_IMAGE_BASE + BUCKET_NAMES[bucket] +
+                        (posterPath.startsWith("/") ? "" : "/") + posterPath;
+                cache.put(posterPath, url);
+            }
+            return url;
+        }
+    }
+
+    /**
+     * Get the width of the size bucket a poster URL was built for.
+     *
+     * @param posterUrl an absolute poster URL, as built by posterUrl
+     * @return the width in pixels, or -1 if the URL isn't for one of the buckets
+     */
+    public static int widthOfUrl(String posterUrl) {
+        int end = posterUrl.lastIndexOf('/');
+        if (end <= 0) return -1;
+
+        String bucketName = posterUrl.substring(posterUrl.lastIndexOf('/', end - 1) + 1, end);
+        for (int i = 0; i < BUCKET_NAMES.length; i++) {
+            if (BUCKET_NAMES[i].equals(bucketName)) return BUCKET_WIDTHS[i];
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,148 @@
+package com.example.android.popularmovies;
+
+import android.support.v7.util.DiffUtil;
+import android.support.v7.util.ListUpdateCallback;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the adapter diffs only touch the rows that changed. Every change operation
+ * dispatched to a RecyclerView adapter rebinds its rows and every insert binds a new row, so
+ * counting the operations counts the binds a change causes.
+ */
+public class AdapterDiffTest {
+
+    private static final int MOVIE_COUNT = 100;
+    private static final int TRAILER_COUNT = 3;
+    private static final int REVIEW_COUNT = 10;
+
+    /* Counts the operations dispatched by a diff */
+    private static class CountingCallback implements ListUpdateCallback {
+        int inserted;
+        int removed;
+        int moved;
+        int changed;
+        int lastChangedPosition = -1;
+
+        @Override
+        public void onInserted(int position, int count) {
+            inserted += count;
+        }
+
+        @Override
+        public void onRemoved(int position, int count) {
+            removed += count;
+        }
+
+        @Override
+        public void onMoved(int fromPosition, int toPosition) {
+            moved++;
+        }
+
+        @Override
+        public void onChanged(int position, int count, Object payload) {
+            changed += count;
+            lastChangedPosition = position;
+        }
+
+        int binds() {
+            return inserted + changed;
+        }
+    }
+
+    private static CountingCallback dispatch(DiffUtil.Callback diffCallback) {
+        CountingCallback counter = new CountingCallback();
+        DiffUtil.calculateDiff(diffCallback).dispatchUpdatesTo(counter);
+        return counter;
+    }
+
+    private static long[] movieIds() {
+        long[] movieIds = new long[MOVIE_COUNT];
+        for (int i = 0; i < MOVIE_COUNT; i++) {
+            movieIds[i] = 1000 + i;
+        }
+        return movieIds;
+    }
+
+    private static DetailRows detailRows(String changedReviewContent) {
+        DetailRows.Movie movie = new DetailRows.Movie(42, "title", "/poster.jpg", "overview",
+                "8/10", "120 mins", "2017", false);
+
+        String[] trailerIds = new String[TRAILER_COUNT];
+        String[] trailerNames = new String[TRAILER_COUNT];
+        for (int i = 0; i < TRAILER_COUNT; i++) {
+            trailerIds[i] = "trailer" + i;
+            trailerNames[i] = "name" + i;
+        }
+
+        String[] reviewIds = new String[REVIEW_COUNT];
+        String[] reviewAuthors = new String[REVIEW_COUNT];
+        String[] reviewContents = new String[REVIEW_COUNT];
+        for (int i = 0; i < REVIEW_COUNT; i++) {
+            reviewIds[i] = "review" + i;
+            reviewAuthors[i] = "author" + i;
+            reviewContents[i] = "content" + i;
+        }
+        if (changedReviewContent != null) {
+            reviewContents[5] = changedReviewContent;
+        }
+
+        return new DetailRows(movie,
+                new DetailRows.Trailers(trailerIds, trailerNames, trailerNames, trailerNames),
+                new DetailRows.Reviews(reviewIds, reviewAuthors, reviewContents,
+                        new boolean[REVIEW_COUNT], REVIEW_COUNT));
+    }
+
+    @Test
+    public void detailRows_oneReviewChanged_rebindsOnlyThatReview() {
+        CountingCallback counter = dispatch(new DetailRows.DiffCallback(
+                detailRows(null), detailRows("edited")));
+
+        assertEquals(1, counter.binds());
+        assertEquals(1 + TRAILER_COUNT + 5, counter.lastChangedPosition);
+        assertEquals(0, counter.removed);
+        assertEquals(0, counter.moved);
+    }
+
+    @Test
+    public void detailRows_unchanged_rebindsNothing() {
+        CountingCallback counter = dispatch(new DetailRows.DiffCallback(
+                detailRows(null), detailRows(null)));
+
+        assertEquals(0, counter.binds());
+        assertEquals(0, counter.removed);
+        assertEquals(0, counter.moved);
+    }
+
+    @Test
+    public void movieIds_oneMovieReplaced_bindsOnlyTheNewMovie() {
+        long[] oldMovieIds = movieIds();
+        long[] newMovieIds = movieIds();
+        newMovieIds[37] = 1;
+
+        CountingCallback counter = dispatch(
+                new MovieListAdapter.MovieIdDiffCallback(oldMovieIds, newMovieIds));
+
+        assertEquals(1, counter.binds());
+        assertEquals(1, counter.removed);
+    }
+
+    @Test
+    public void movieIds_oneMovieMoved_rebindsNothing() {
+        long[] oldMovieIds = movieIds();
+        long[] newMovieIds = movieIds();
+
+        /* Move the movie at rank 10 down to rank 50 */
+        long movedMovieId = newMovieIds[10];
+        System.arraycopy(newMovieIds, 11, newMovieIds, 10, 40);
+        newMovieIds[50] = movedMovieId;
+
+        CountingCallback counter = dispatch(
+                new MovieListAdapter.MovieIdDiffCallback(oldMovieIds, newMovieIds));
+
+        assertEquals(0, counter.binds());
+        assertEquals(1, counter.moved);
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.android.popularmovies.sync;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that concurrent syncs split the movie details between them and wait for each other's
+ * movies only until they are released.
+ */
+public class SyncCoordinatorTest {
+
+    @Test
+    public void overlappingClaims_leaveSharedMoviesToTheFirstSync() {
+        SyncCoordinator.Claim first = SyncCoordinator.claim(new long[]{1, 2, 3});
+        SyncCoordinator.Claim second = SyncCoordinator.claim(new long[]{3, 4, 2, 4});
+
+        try {
+            assertArrayEquals(new long[]{1, 2, 3}, first.getMovieIds());
+            assertFalse(first.hasOtherClaims());
+
+            assertArrayEquals(new long[]{4}, second.getMovieIds());
+            assertTrue(second.hasOtherClaims());
+        } finally {
+            first.release();
+            second.release();
+        }
+    }
+
+    @Test
+    public void releasedMovies_canBeClaimedAgain() {
+        SyncCoordinator.claim(new long[]{10, 11}).release();
+
+        SyncCoordinator.Claim claim = SyncCoordinator.claim(new long[]{10, 11});
+        try {
+            assertArrayEquals(new long[]{10, 11}, claim.getMovieIds());
+            assertFalse(claim.hasOtherClaims());
+        } finally {
+            claim.release();
+        }
+    }
+
+    @Test
+    public void awaitOtherClaims_returnsOnceTheOtherSyncReleases() throws Exception {
+        final SyncCoordinator.Claim first = SyncCoordinator.claim(new long[]{20});
+        final SyncCoordinator.Claim second = SyncCoordinator.claim(new long[]{20, 21});
+        final CountDownLatch waited = new CountDownLatch(1);
+
+        Thread waiter = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    second.awaitOtherClaims(new SyncCancellationToken());
+                    waited.countDown();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        waiter.start();
+
+        assertFalse(waited.await(100, TimeUnit.MILLISECONDS));
+
+        first.release();
+
+        assertTrue(waited.await(5, TimeUnit.SECONDS));
+        second.release();
+        waiter.join();
+    }
+}
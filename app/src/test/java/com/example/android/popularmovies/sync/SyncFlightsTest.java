@@ -0,0 +1,181 @@
+package com.example.android.popularmovies.sync;
+
+import org.junit.Test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that syncs of the same target are coalesced into one, and that a fresh target isn't
+ * synced again.
+ */
+public class SyncFlightsTest {
+
+    /**
+     * Wait until a thread is parked, as a thread joining a running sync is while it waits for
+     * the sync's result.
+     */
+    private static void awaitWaiting(Thread thread) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (thread.getState() != Thread.State.WAITING) {
+            assertTrue("Thread never waited", System.currentTimeMillis() < deadline);
+            Thread.sleep(1);
+        }
+    }
+
+    @Test
+    public void concurrentSyncs_joinTheRunningSync() throws Exception {
+        final String target = "content://test/joined";
+        final AtomicInteger syncCount = new AtomicInteger();
+        final CountDownLatch syncStarted = new CountDownLatch(1);
+        final CountDownLatch finishSync = new CountDownLatch(1);
+
+        final Callable<Boolean> sync = new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                syncCount.incrementAndGet();
+                syncStarted.countDown();
+                finishSync.await();
+                return true;
+            }
+        };
+
+        final boolean[] results = new boolean[2];
+        Thread[] threads = new Thread[2];
+        for (int i = 0; i < threads.length; i++) {
+            final int index = i;
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        results[index] = SyncFlights.run(target, sync);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+        }
+
+        threads[0].start();
+        assertTrue(syncStarted.await(5, TimeUnit.SECONDS));
+        threads[1].start();
+        awaitWaiting(threads[1]);
+
+        /* Requests made while the sync runs don't start another */
+        assertFalse(SyncFlights.request(target));
+
+        finishSync.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(1, syncCount.get());
+        assertTrue(results[0]);
+        assertTrue(results[1]);
+    }
+
+    @Test
+    public void freshTarget_isNotSyncedAgain() throws Exception {
+        String target = "content://test/fresh";
+        final AtomicInteger syncCount = new AtomicInteger();
+
+        Callable<Boolean> sync = new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                syncCount.incrementAndGet();
+                return true;
+            }
+        };
+
+        assertTrue(SyncFlights.run(target, sync));
+        assertTrue(SyncFlights.run(target, sync));
+        assertFalse(SyncFlights.request(target));
+
+        assertEquals(1, syncCount.get());
+    }
+
+    @Test
+    public void failedSync_isRetried() throws Exception {
+        String target = "content://test/failed";
+        final AtomicInteger syncCount = new AtomicInteger();
+
+        Callable<Boolean> sync = new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return syncCount.incrementAndGet() > 1;
+            }
+        };
+
+        assertTrue(SyncFlights.request(target));
+        assertFalse(SyncFlights.request(target));
+
+        assertFalse(SyncFlights.run(target, sync));
+        assertTrue(SyncFlights.request(target));
+        assertTrue(SyncFlights.run(target, sync));
+
+        assertEquals(2, syncCount.get());
+    }
+
+    @Test
+    public void cancelledSync_isRunAgainByTheSyncsThatJoinedIt() throws Exception {
+        final String target = "content://test/cancelled";
+        final CountDownLatch syncStarted = new CountDownLatch(1);
+        final CountDownLatch cancelSync = new CountDownLatch(1);
+        final AtomicInteger joinedSyncCount = new AtomicInteger();
+
+        final boolean[] ownerResult = new boolean[1];
+        Thread owner = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    ownerResult[0] = SyncFlights.run(target, new Callable<Boolean>() {
+                        @Override
+                        public Boolean call() throws Exception {
+                            syncStarted.countDown();
+                            cancelSync.await();
+                            throw new CancellationException("Sync cancelled");
+                        }
+                    });
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+
+        final boolean[] joinedResult = new boolean[1];
+        Thread joined = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    joinedResult[0] = SyncFlights.run(target, new Callable<Boolean>() {
+                        @Override
+                        public Boolean call() {
+                            joinedSyncCount.incrementAndGet();
+                            return true;
+                        }
+                    });
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+
+        owner.start();
+        assertTrue(syncStarted.await(5, TimeUnit.SECONDS));
+        joined.start();
+        awaitWaiting(joined);
+
+        cancelSync.countDown();
+        owner.join();
+        joined.join();
+
+        assertFalse(ownerResult[0]);
+        assertTrue(joinedResult[0]);
+        assertEquals(1, joinedSyncCount.get());
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.android.popularmovies.sync;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that sync intervals follow how often a target's list changes, and back off when its
+ * syncs fail.
+ */
+public class SyncSchedulerTest {
+
+    private static final long NOW = TimeUnit.DAYS.toMillis(1000);
+
+    private static final long[] LIST = {11, 22, 33};
+
+    @Test
+    public void neverSynced_isDueNow() {
+        assertEquals(0, SyncScheduler.delayMillis(SyncState.NEVER_SYNCED, NOW));
+    }
+
+    @Test
+    public void changingList_syncsAtTheShortestInterval() {
+        SyncState state = SyncState.NEVER_SYNCED
+                .succeeded(NOW, SyncState.hashMovieIds(LIST), true);
+
+        assertEquals(SyncScheduler.MIN_INTERVAL_MILLIS, SyncScheduler.intervalMillis(state));
+        assertEquals(SyncScheduler.MIN_INTERVAL_MILLIS, SyncScheduler.delayMillis(state, NOW));
+    }
+
+    @Test
+    public void stableList_syncsLessOften() {
+        long changed = NOW - TimeUnit.DAYS.toMillis(2);
+        SyncState state = new SyncState(changed, changed, SyncState.hashMovieIds(LIST), 0)
+                .succeeded(NOW, SyncState.hashMovieIds(LIST), false);
+
+        assertEquals(changed, state.lastChangeMillis);
+        assertEquals(TimeUnit.DAYS.toMillis(2), SyncScheduler.intervalMillis(state));
+
+        /* However long the list is stable it's still synced every few days */
+        SyncState longStable = new SyncState(NOW, 0, state.responseHash, 0);
+        assertEquals(SyncScheduler.MAX_INTERVAL_MILLIS, SyncScheduler.intervalMillis(longStable));
+    }
+
+    @Test
+    public void delay_countsFromTheLastSuccess() {
+        SyncState state = new SyncState(NOW, NOW, 0, 0);
+        long later = NOW + TimeUnit.HOURS.toMillis(4);
+
+        assertEquals(SyncScheduler.MIN_INTERVAL_MILLIS - TimeUnit.HOURS.toMillis(4),
+                SyncScheduler.delayMillis(state, later));
+        assertEquals(0, SyncScheduler.delayMillis(state, NOW + TimeUnit.DAYS.toMillis(1)));
+    }
+
+    @Test
+    public void failures_backOffExponentially() {
+        SyncState state = new SyncState(NOW, NOW, 0, 0).failed();
+        assertEquals(SyncScheduler.FIRST_RETRY_MILLIS, SyncScheduler.delayMillis(state, NOW));
+
+        state = state.failed();
+        assertEquals(2 * SyncScheduler.FIRST_RETRY_MILLIS, SyncScheduler.intervalMillis(state));
+
+        state = state.failed();
+        assertEquals(4 * SyncScheduler.FIRST_RETRY_MILLIS, SyncScheduler.intervalMillis(state));
+
+        for (int i = 0; i < 100; i++) state = state.failed();
+        assertEquals(SyncScheduler.MAX_INTERVAL_MILLIS, SyncScheduler.intervalMillis(state));
+
+        /* A success clears the failures */
+        state = state.succeeded(NOW, 0, false);
+        assertEquals(0, state.failureCount);
+        assertEquals(SyncScheduler.MIN_INTERVAL_MILLIS, SyncScheduler.intervalMillis(state));
+    }
+
+    @Test
+    public void listHash_followsMembershipAndOrder() {
+        assertEquals(SyncState.hashMovieIds(LIST), SyncState.hashMovieIds(new long[]{11, 22, 33}));
+        assertTrue(SyncState.hashMovieIds(LIST) != SyncState.hashMovieIds(new long[]{22, 11, 33}));
+        assertTrue(SyncState.hashMovieIds(LIST) != SyncState.hashMovieIds(new long[]{11, 22}));
+    }
+}
@@ -0,0 +1,235 @@
+package com.example.android.popularmovies.utilities;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Scanner;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the concurrent fetcher against a local HTTP server that stands in for the movie db.
+ * Every response is delayed so that the wall clock time is dominated by the round trips.
+ */
+public class ConcurrentFetcherTest {
+
+    private static final int RESPONSE_DELAY_MILLIS = 200;
+    private static final int REQUEST_COUNT = 8;
+    private static final int TIMEOUT_MILLIS = 5000;
+
+    private HttpServer mServer;
+
+    /* Reads the response directly so the test doesn't depend on the android Uri stubs */
+    private static final ConcurrentFetcher.UrlLoader<String> TEST_LOADER =
+            new ConcurrentFetcher.UrlLoader<String>() {
+        @Override
+        public String load(URL url, int timeoutMillis) throws IOException {
+            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+            connection.setConnectTimeout(timeoutMillis);
+            connection.setReadTimeout(timeoutMillis);
+            try {
+                InputStream inputStream = connection.getInputStream();
+                Scanner scanner = new Scanner(inputStream).useDelimiter("\\A");
+                String response = scanner.hasNext() ? scanner.next() : null;
+                scanner.close();
+                return response;
+            } finally {
+                connection.disconnect();
+            }
+        }
+    };
+
+    @Before
+    public void startServer() throws Exception {
+        mServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        mServer.setExecutor(Executors.newCachedThreadPool());
+        mServer.createContext("/movie/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    Thread.sleep(RESPONSE_DELAY_MILLIS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+
+                /* Echo the movie id back so the ordering can be checked */
+                String path = exchange.getRequestURI().getPath();
+                byte[] body = path.substring(path.lastIndexOf('/') + 1).getBytes("UTF-8");
+
+                exchange.sendResponseHeaders(HttpURLConnection.HTTP_OK, body.length);
+                OutputStream outputStream = exchange.getResponseBody();
+                outputStream.write(body);
+                outputStream.close();
+            }
+        });
+        mServer.createContext("/missing/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                exchange.sendResponseHeaders(HttpURLConnection.HTTP_NOT_FOUND, -1);
+                exchange.close();
+            }
+        });
+        mServer.start();
+    }
+
+    @After
+    public void stopServer() {
+        mServer.stop(0);
+    }
+
+    private List<URL> movieUrls() throws Exception {
+        List<URL> urls = new ArrayList<>();
+        for (int i = 0; i < REQUEST_COUNT; i++) {
+            urls.add(new URL("http://127.0.0.1:" + mServer.getAddress().getPort() + "/movie/" + i));
+        }
+        return urls;
+    }
+
+    private long timeFetch(int workerCount, List<String> resultsOut) throws Exception {
+        ConcurrentFetcher fetcher = new ConcurrentFetcher(workerCount, TIMEOUT_MILLIS);
+        try {
+            long start = System.nanoTime();
+            resultsOut.addAll(fetcher.fetchAll(movieUrls(), TEST_LOADER));
+            return (System.nanoTime() - start) / 1000000;
+        } finally {
+            fetcher.shutdown();
+        }
+    }
+
+    @Test
+    public void results_areInRequestOrder() throws Exception {
+        List<String> results = new ArrayList<>();
+        timeFetch(4, results);
+
+        assertEquals(REQUEST_COUNT, results.size());
+        for (int i = 0; i < REQUEST_COUNT; i++) {
+            assertEquals(String.valueOf(i), results.get(i));
+        }
+    }
+
+    @Test
+    public void wallClockTime_dropsWithWorkerCount() throws Exception {
+        long serialMillis = timeFetch(1, new ArrayList<String>());
+        long parallelMillis = timeFetch(4, new ArrayList<String>());
+
+        /* Serial is at least one delay per request */
+        assertTrue(serialMillis >= REQUEST_COUNT * RESPONSE_DELAY_MILLIS);
+
+        /* Four workers should be close to a quarter of the serial time - allow generous slack
+         * for slow build machines but still require a clear drop */
+        assertTrue("serial " + serialMillis + "ms, parallel " + parallelMillis + "ms",
+                parallelMillis < serialMillis / 2);
+    }
+
+    /* Records the failures a fetcher reports */
+    private static class RecordingFailureListener implements ConcurrentFetcher.FailureListener {
+        final List<URL> urls = new ArrayList<>();
+        final List<Throwable> causes = new ArrayList<>();
+
+        @Override
+        public void onFailure(URL url, Throwable cause) {
+            urls.add(url);
+            causes.add(cause);
+        }
+    }
+
+    @Test
+    public void failedRequests_haveNullResults() throws Exception {
+        List<URL> urls = new ArrayList<>(movieUrls().subList(0, 2));
+        URL missingUrl = new URL("http://127.0.0.1:" + mServer.getAddress().getPort() +
+                "/missing/1");
+        urls.add(1, missingUrl);
+
+        RecordingFailureListener failures = new RecordingFailureListener();
+        ConcurrentFetcher fetcher = new ConcurrentFetcher(2, TIMEOUT_MILLIS, failures);
+        try {
+            List<String> results = fetcher.fetchAll(urls, TEST_LOADER);
+
+            assertEquals(3, results.size());
+            assertEquals("0", results.get(0));
+            assertNull(results.get(1));
+            assertEquals("1", results.get(2));
+
+            assertEquals(1, failures.urls.size());
+            assertEquals(missingUrl, failures.urls.get(0));
+            assertTrue(failures.causes.get(0) instanceof IOException);
+        } finally {
+            fetcher.shutdown();
+        }
+    }
+
+    /**
+     * A loader that takes as long as the number at the end of the URL, ignoring the timeout, as
+     * a response trickling in just fast enough to never trip the read timeout would.
+     */
+    private static final ConcurrentFetcher.UrlLoader<String> SLEEPING_LOADER =
+            new ConcurrentFetcher.UrlLoader<String>() {
+        @Override
+        public String load(URL url, int timeoutMillis) throws IOException {
+            String path = url.getPath();
+            long sleepMillis = Long.parseLong(path.substring(path.lastIndexOf('/') + 1));
+            try {
+                Thread.sleep(sleepMillis);
+            } catch (InterruptedException e) {
+                throw new IOException("Interrupted");
+            }
+            return String.valueOf(sleepMillis);
+        }
+    };
+
+    @Test
+    public void slowButHealthyRequests_areNotCancelled() throws Exception {
+        /* Longer than the timeout, but within a connect and a read timeout */
+        List<URL> urls = new ArrayList<>();
+        urls.add(new URL("http://127.0.0.1/sleep/150"));
+
+        ConcurrentFetcher fetcher = new ConcurrentFetcher(1, 100);
+        try {
+            assertEquals("150", fetcher.fetchAll(urls, SLEEPING_LOADER).get(0));
+        } finally {
+            fetcher.shutdown();
+        }
+    }
+
+    @Test
+    public void requestsPastTheBatchDeadline_haveNullResults() throws Exception {
+        List<URL> urls = new ArrayList<>();
+        urls.add(new URL("http://127.0.0.1/sleep/10"));
+        urls.add(new URL("http://127.0.0.1/sleep/10000"));
+
+        RecordingFailureListener failures = new RecordingFailureListener();
+        ConcurrentFetcher fetcher = new ConcurrentFetcher(2, 100, failures);
+        try {
+            long start = System.nanoTime();
+            List<String> results = fetcher.fetchAll(urls, SLEEPING_LOADER);
+            long elapsedMillis = (System.nanoTime() - start) / 1000000;
+
+            assertEquals("10", results.get(0));
+            assertNull(results.get(1));
+
+            assertEquals(1, failures.urls.size());
+            assertEquals(urls.get(1), failures.urls.get(0));
+            assertTrue(failures.causes.get(0) instanceof CancellationException);
+
+            /* One round of two workers is given a connect and a read timeout */
+            assertTrue("took " + elapsedMillis + "ms", elapsedMillis < 2000);
+        } finally {
+            fetcher.shutdown();
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.android.popularmovies.utilities;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the primitive long set behind the favorite cache.
+ */
+public class LongHashSetTest {
+
+    @Test
+    public void of_holdsEveryValueOnce() {
+        LongHashSet set = LongHashSet.of(new long[]{5, 17, 5, 0, -3});
+
+        assertEquals(4, set.size());
+        assertTrue(set.contains(5));
+        assertTrue(set.contains(17));
+        assertTrue(set.contains(0));
+        assertTrue(set.contains(-3));
+        assertFalse(set.contains(6));
+        assertFalse(set.contains(Long.MIN_VALUE));
+    }
+
+    @Test
+    public void manySequentialIds_areAllFound() {
+        long[] ids = new long[10000];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = 100000 + i;
+        }
+
+        LongHashSet set = LongHashSet.of(ids);
+
+        for (long id : ids) {
+            assertTrue(set.contains(id));
+        }
+        assertFalse(set.contains(100000 + ids.length));
+    }
+
+    @Test
+    public void withAndWithout_leaveTheOriginalUnchanged() {
+        LongHashSet set = LongHashSet.of(new long[]{1, 2, 3});
+
+        LongHashSet added = set.with(4);
+        LongHashSet removed = set.without(2);
+
+        assertFalse(set.contains(4));
+        assertTrue(set.contains(2));
+        assertTrue(added.contains(4));
+        assertEquals(4, added.size());
+        assertFalse(removed.contains(2));
+        assertEquals(2, removed.size());
+        assertSame(set, set.with(1));
+        assertSame(set, set.without(9));
+    }
+
+    @Test
+    public void toArray_returnsTheValues() {
+        long[] values = LongHashSet.of(new long[]{30, 10, 20}).toArray();
+        Arrays.sort(values);
+
+        assertArrayEquals(new long[]{10, 20, 30}, values);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void of_rejectsTheEmptyMarker() {
+        LongHashSet.of(new long[]{Long.MIN_VALUE});
+    }
+}
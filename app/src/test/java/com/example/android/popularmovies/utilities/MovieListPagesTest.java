@@ -0,0 +1,185 @@
+package com.example.android.popularmovies.utilities;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Scanner;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks multi page list fetching against a local HTTP server that stands in for the movie db.
+ * Each page holds 20 movies and, as happens when the real list shifts while it is paged, the
+ * first movie of every page after the first repeats the last movie of the page before.
+ */
+public class MovieListPagesTest {
+
+    private static final int PAGE_SIZE = 20;
+    private static final int TOTAL_PAGES = 50;
+    private static final int WORKER_COUNT = 4;
+    private static final int TIMEOUT_MILLIS = 5000;
+
+    private static final Pattern ID_PATTERN = Pattern.compile("\"id\":(\\d+)");
+
+    private HttpServer mServer;
+    private URL mListUrl;
+    private ConcurrentFetcher mFetcher;
+    private final AtomicInteger mRequestCount = new AtomicInteger();
+
+    /* A page the server fails with an error, or 0 for none */
+    private volatile int mFailingPage;
+
+    /* Reads the page ids directly so the test doesn't depend on the android Json stubs. The
+     * streaming parser of the real page loader is checked on device by MovieDbJsonUtilsTest */
+    private static final ConcurrentFetcher.UrlLoader<long[]> TEST_PAGE_LOADER =
+            new ConcurrentFetcher.UrlLoader<long[]>() {
+        @Override
+        public long[] load(URL url, int timeoutMillis) throws IOException {
+            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+            connection.setConnectTimeout(timeoutMillis);
+            connection.setReadTimeout(timeoutMillis);
+            try {
+                InputStream inputStream = connection.getInputStream();
+                Scanner scanner = new Scanner(inputStream).useDelimiter("\\A");
+                String response = scanner.hasNext() ? scanner.next() : "";
+                scanner.close();
+
+                long[] ids = new long[PAGE_SIZE];
+                int count = 0;
+                Matcher matcher = ID_PATTERN.matcher(response);
+                while (matcher.find()) {
+                    ids[count++] = Long.parseLong(matcher.group(1));
+                }
+                return Arrays.copyOf(ids, count);
+            } finally {
+                connection.disconnect();
+            }
+        }
+    };
+
+    /**
+     * The movie id at a position of a page, both counted from 1.
+     */
+    private static long movieIdAt(int page, int position) {
+        return (page - 1) * (PAGE_SIZE - 1) + position;
+    }
+
+    @Before
+    public void startServer() throws Exception {
+        mServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        mServer.setExecutor(Executors.newCachedThreadPool());
+        mServer.createContext("/3/movie/popular", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                mRequestCount.incrementAndGet();
+
+                String query = exchange.getRequestURI().getQuery();
+                int page = Integer.parseInt(query.substring(query.indexOf("page=") + 5));
+
+                if (page == mFailingPage) {
+                    exchange.sendResponseHeaders(HttpURLConnection.HTTP_UNAVAILABLE, -1);
+                    exchange.close();
+                    return;
+                }
+
+                /* Pages past the end of the list are empty, as with the real service */
+                StringBuilder json = new StringBuilder("{\"page\":" + page + ",\"results\":[");
+                if (page <= TOTAL_PAGES) {
+                    for (int position = 1; position <= PAGE_SIZE; position++) {
+                        if (position > 1) json.append(',');
+                        json.append("{\"id\":").append(movieIdAt(page, position))
+                                .append(",\"title\":\"movie\"}");
+                    }
+                }
+                json.append("]}");
+
+                byte[] body = json.toString().getBytes("UTF-8");
+                exchange.sendResponseHeaders(HttpURLConnection.HTTP_OK, body.length);
+                OutputStream outputStream = exchange.getResponseBody();
+                outputStream.write(body);
+                outputStream.close();
+            }
+        });
+        mServer.start();
+
+        mListUrl = new URL("http://127.0.0.1:" + mServer.getAddress().getPort() +
+                "/3/movie/popular?api_key=test");
+        mFetcher = new ConcurrentFetcher(WORKER_COUNT, TIMEOUT_MILLIS);
+    }
+
+    @After
+    public void stopServer() {
+        mFetcher.shutdown();
+        mServer.stop(0);
+    }
+
+    private void assertPagesInRankOrder(int pageCount) throws Exception {
+        long[] movieIds = MovieListPages.fetchMovieIds(mFetcher, mListUrl, pageCount,
+                TEST_PAGE_LOADER);
+
+        assertEquals(pageCount, mRequestCount.get());
+
+        /* Every repeated movie is only kept at its first position */
+        assertEquals(PAGE_SIZE + (pageCount - 1) * (PAGE_SIZE - 1), movieIds.length);
+
+        for (int rank = 0; rank < movieIds.length; rank++) {
+            assertEquals(rank + 1, movieIds[rank]);
+        }
+    }
+
+    @Test
+    public void onePage() throws Exception {
+        assertPagesInRankOrder(1);
+    }
+
+    @Test
+    public void tenPages() throws Exception {
+        assertPagesInRankOrder(10);
+    }
+
+    @Test
+    public void fiftyPages() throws Exception {
+        assertPagesInRankOrder(50);
+    }
+
+    @Test
+    public void pagesPastTheEnd_areLeftOut() throws Exception {
+        long[] movieIds = MovieListPages.fetchMovieIds(mFetcher, mListUrl, TOTAL_PAGES + 10,
+                TEST_PAGE_LOADER);
+
+        assertEquals(movieIdAt(TOTAL_PAGES, PAGE_SIZE), movieIds[movieIds.length - 1]);
+    }
+
+    @Test
+    public void failedPage_failsTheWholeList() throws Exception {
+        mFailingPage = 6;
+
+        assertNull(MovieListPages.fetchMovieIds(mFetcher, mListUrl, 10, TEST_PAGE_LOADER));
+    }
+
+    @Test
+    public void failedPagePastTheEnd_isLeftOut() throws Exception {
+        mFailingPage = TOTAL_PAGES + 5;
+
+        long[] movieIds = MovieListPages.fetchMovieIds(mFetcher, mListUrl, TOTAL_PAGES + 10,
+                TEST_PAGE_LOADER);
+
+        assertEquals(movieIdAt(TOTAL_PAGES, PAGE_SIZE), movieIds[movieIds.length - 1]);
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.android.popularmovies.utilities;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the poster size bucket chosen for a view width and the remembered poster URLs.
+ */
+public class PosterUrlsTest {
+
+    @Test
+    public void bucketFor_picksSmallestBucketCoveringTheView() {
+        assertEquals("w92", bucketName(1));
+        assertEquals("w92", bucketName(92));
+        assertEquals("w185", bucketName(93));
+        assertEquals("w342", bucketName(300));
+        assertEquals("w500", bucketName(500));
+    }
+
+    @Test
+    public void bucketFor_widerThanEveryBucket_usesLargest() {
+        assertEquals("w500", bucketName(1440));
+    }
+
+    @Test
+    public void bucketFor_unmeasuredView_usesDefault() {
+        assertEquals("w" + PosterUrls.DEFAULT_WIDTH, bucketName(0));
+    }
+
+    @Test
+    public void posterUrl_isRememberedPerBucket() {
+        String url = PosterUrls.posterUrl("/poster.jpg", 300);
+
+        assertEquals("http://image.tmdb.org/t/p/w342/poster.jpg", url);
+        assertSame(url, PosterUrls.posterUrl("/poster.jpg", 300));
+        assertEquals("http://image.tmdb.org/t/p/w92/poster.jpg",
+                PosterUrls.posterUrl("/poster.jpg", 80));
+    }
+
+    @Test
+    public void posterUrl_noPoster_isNull() {
+        assertNull(PosterUrls.posterUrl(null, 300));
+        assertNull(PosterUrls.posterUrl("", 300));
+    }
+
+    private static String bucketName(int widthPixels) {
+        return "w" + PosterUrls.BUCKET_WIDTHS[PosterUrls.bucketFor(widthPixels)];
+    }
+
+    @Test
+    public void widthOfUrl_isTheBucketWidth() {
+        assertEquals(342, PosterUrls.widthOfUrl(PosterUrls.posterUrl("/a.jpg", 300)));
+        assertEquals(92, PosterUrls.widthOfUrl(PosterUrls.posterUrl("/a.jpg", 50)));
+        assertEquals(-1, PosterUrls.widthOfUrl("http://image.tmdb.org/t/p/original/a.jpg"));
+        assertEquals(-1, PosterUrls.widthOfUrl("a.jpg"));
+    }
+}